@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning;
+
+import com.github.tuupertunut.fanning.core.FanCurve;
+import com.github.tuupertunut.fanning.core.Mapping;
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds mock hardware trees of a given size for benchmarks.
+ *
+ * @author Tuupertunut
+ */
+public class SyntheticHardware {
+
+    /* How many devices are grouped under one controller board. This keeps
+     * the tree a few levels deep, like real hardware. */
+    private static final int DEVICES_PER_BOARD = 16;
+
+    private SyntheticHardware() {
+    }
+
+    /**
+     * Creates a hardware tree with the given number of sensors. Every device
+     * has a temperature sensor and a fan with its own speed sensor, so half of
+     * the sensors belong to fan controllers.
+     *
+     * @param sensorCount the number of sensors, at least 2.
+     * @return a mock hardware manager for the tree.
+     */
+    public static MockHardwareManager createHardware(int sensorCount) {
+        int deviceCount = sensorCount / 2;
+
+        List<HardwareItem> boards = new ArrayList<>();
+        List<HardwareItem> devices = new ArrayList<>();
+        for (int i = 0; i < deviceCount; i++) {
+            MockSensor temp = new MockSensor("temp " + i, "st" + i, "Temperature", "°C");
+            MockSensor fanPercent = new MockSensor("fan percent " + i, "sp" + i, "Control", "%");
+            MockFanController fan = new MockFanController(fanPercent, "f" + i, 0, 100);
+            devices.add(new MockHardwareItem(Arrays.asList(), Arrays.asList(temp, fanPercent), Arrays.asList(fan), "device " + i, "h" + i));
+
+            if (devices.size() == DEVICES_PER_BOARD || i == deviceCount - 1) {
+                boards.add(new MockHardwareItem(devices, Arrays.asList(), Arrays.asList(), "board " + boards.size(), "b" + boards.size()));
+                devices = new ArrayList<>();
+            }
+        }
+
+        return new MockHardwareManager(new MockHardwareItem(boards, Arrays.asList(), Arrays.asList(), "computer", "c"));
+    }
+
+    /**
+     * Creates a fan curve for every fan in the hardware, controlled by the
+     * temperature sensor of the same device.
+     *
+     * @param hwManager hardware created by {@link #createHardware(int)}.
+     * @param changePointCount the number of change points in each curve.
+     * @return a list of fan curves.
+     */
+    public static List<FanCurve> createFanCurves(MockHardwareManager hwManager, int changePointCount) {
+        List<FanCurve> fanCurves = new ArrayList<>();
+        for (FanController fan : hwManager.getAllFanControllers()) {
+            String deviceNumber = fan.getId().substring(1);
+            Sensor temp = hwManager.findSensorById("st" + deviceNumber).get();
+            fanCurves.add(new FanCurve(temp, fan, createChangePoints(changePointCount)));
+        }
+        return fanCurves;
+    }
+
+    /**
+     * Creates change points spread evenly over the temperatures 20-80.
+     *
+     * @param changePointCount the number of change points.
+     * @return a list of change points.
+     */
+    public static List<Mapping> createChangePoints(int changePointCount) {
+        List<Mapping> changePoints = new ArrayList<>();
+        for (int i = 0; i < changePointCount; i++) {
+            double key = 20 + 60.0 * i / changePointCount;
+            changePoints.add(new Mapping(key, 100.0 * i / changePointCount));
+        }
+        return changePoints;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.SyntheticHardware;
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks fan value lookups on curves of different sizes.
+ *
+ * @author Tuupertunut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanCurveBenchmark {
+
+    @Param({"2", "16", "256", "4096"})
+    int changePointCount;
+
+    FanCurve fanCurve;
+
+    /* Sensor values cycle through the whole curve, so the lookup cannot be
+     * optimized for one value. */
+    double[] sensorValues;
+    int next;
+
+    @Setup
+    public void setUp() {
+        MockHardwareManager hwManager = SyntheticHardware.createHardware(2);
+        Sensor sensor = hwManager.getAllSensors().get(0);
+        FanController fan = hwManager.getAllFanControllers().get(0);
+        fanCurve = new FanCurve(sensor, fan, SyntheticHardware.createChangePoints(changePointCount));
+
+        sensorValues = new double[1024];
+        for (int i = 0; i < sensorValues.length; i++) {
+            sensorValues[i] = 10 + 80.0 * i / sensorValues.length;
+        }
+    }
+
+    private double nextSensorValue() {
+        next = (next + 1) & (sensorValues.length - 1);
+        return sensorValues[next];
+    }
+
+    @Benchmark
+    public OptionalDouble getFanValueAt() {
+        return fanCurve.getFanValueAt(nextSensorValue());
+    }
+
+    @Benchmark
+    public double getFanValueAtOrElse() {
+        return fanCurve.getFanValueAtOrElse(nextSensorValue(), Double.NaN);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwinterface;
+
+import com.github.tuupertunut.fanning.SyntheticHardware;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the hardware tree helpers of HardwareManager, both with the
+ * cached index and when the index is built from scratch.
+ *
+ * @author Tuupertunut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HardwareManagerBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int sensorCount;
+
+    MockHardwareManager hwManager;
+    String lastSensorId;
+
+    @Setup
+    public void setUp() {
+        hwManager = SyntheticHardware.createHardware(sensorCount);
+        List<Sensor> sensors = hwManager.getAllSensors();
+        lastSensorId = sensors.get(sensors.size() - 1).getId();
+    }
+
+    @Benchmark
+    public List<Sensor> getAllSensors() {
+        return hwManager.getAllSensors();
+    }
+
+    @Benchmark
+    public Optional<Sensor> findSensorById() {
+        return hwManager.findSensorById(lastSensorId);
+    }
+
+    @Benchmark
+    public HardwareIndex buildHardwareIndex() {
+        return new HardwareIndex(hwManager.getHardwareRoot());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Polls sensors from the hardware, each on its own adaptive schedule. A sensor
+ * whose value changes is polled again after the minimum interval. Every time a
+ * sensor is polled without its value changing, its interval is doubled, up to
+ * the maximum interval. Fast-moving sensors are therefore polled often and
+ * stable sensors rarely.
+ *
+ * The schedule is kept in a priority queue ordered by the next poll time, and
+ * all sensors that are due at the same time are polled in one batch.
+ *
+ * @author Tuupertunut
+ */
+class AdaptivePoller {
+
+    private final HardwareManager hardwareManager;
+    private final ReportedValues reportedValues;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+
+    private final PriorityQueue<PollEntry> schedule;
+    private final Map<Sensor, PollEntry> entries;
+
+    /**
+     * Creates a new AdaptivePoller with no sensors.
+     *
+     * @param hardwareManager the hardware to poll.
+     * @param reportedValues the last reported values, which the polled values
+     * are compared with.
+     * @param minIntervalNanos the interval for sensors that are changing.
+     * @param maxIntervalNanos the interval for sensors that are stable.
+     */
+    AdaptivePoller(HardwareManager hardwareManager, ReportedValues reportedValues, long minIntervalNanos, long maxIntervalNanos) {
+        this.hardwareManager = hardwareManager;
+        this.reportedValues = reportedValues;
+        this.minIntervalNanos = minIntervalNanos;
+        this.maxIntervalNanos = maxIntervalNanos;
+
+        schedule = new PriorityQueue<>(Comparator.comparingLong((PollEntry entry) -> entry.nextPollNanos));
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Sets which sensors are polled. New sensors are due immediately. Sensors
+     * that were already polled keep their schedule.
+     *
+     * @param sensors the sensors to poll.
+     * @param nowNanos the current time in nanoseconds.
+     */
+    synchronized void setSensors(Collection<Sensor> sensors, long nowNanos) {
+        Set<Sensor> sensorSet = new HashSet<>(sensors);
+
+        schedule.removeIf((PollEntry entry) -> !sensorSet.contains(entry.sensor));
+        entries.keySet().retainAll(sensorSet);
+
+        for (Sensor sensor : sensorSet) {
+            if (!entries.containsKey(sensor)) {
+                PollEntry entry = new PollEntry(sensor, minIntervalNanos, nowNanos);
+                entries.put(sensor, entry);
+                schedule.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Polls all sensors that are due, and schedules their next polls. The
+     * lock is not held while the hardware is read, so the sensors can be
+     * changed meanwhile.
+     *
+     * @param nowNanos the current time in nanoseconds.
+     * @param deadband how much a value must change to count as a change.
+     * @return the sensors whose value changed.
+     */
+    Set<Sensor> pollDue(long nowNanos, double deadband) {
+        List<PollEntry> due = takeDue(nowNanos);
+        if (due.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        List<Sensor> dueSensors = new ArrayList<>(due.size());
+        for (PollEntry entry : due) {
+            dueSensors.add(entry.sensor);
+        }
+        hardwareManager.updateSensors(dueSensors, deadband);
+        Set<Sensor> changed = reportedValues.report(dueSensors, deadband);
+
+        reschedule(due, changed, nowNanos);
+        return changed;
+    }
+
+    /* The due entries are taken out of the schedule, so they are not polled
+     * twice. */
+    private synchronized List<PollEntry> takeDue(long nowNanos) {
+        List<PollEntry> due = new ArrayList<>();
+        while (!schedule.isEmpty() && schedule.peek().nextPollNanos - nowNanos <= 0) {
+            due.add(schedule.poll());
+        }
+        return due;
+    }
+
+    private synchronized void reschedule(List<PollEntry> due, Set<Sensor> changed, long nowNanos) {
+        for (PollEntry entry : due) {
+            /* The sensor was removed while it was being polled. */
+            if (entries.get(entry.sensor) != entry) {
+                continue;
+            }
+
+            if (changed.contains(entry.sensor)) {
+                entry.intervalNanos = minIntervalNanos;
+            } else {
+                entry.intervalNanos = Math.min(entry.intervalNanos * 2, maxIntervalNanos);
+            }
+            entry.nextPollNanos = nowNanos + entry.intervalNanos;
+            schedule.add(entry);
+        }
+    }
+
+    /**
+     * Returns how long it is until the next sensor is due. If there are no
+     * sensors, the maximum interval is returned.
+     *
+     * @param nowNanos the current time in nanoseconds.
+     * @return nanoseconds until the next poll, or 0 if some sensor is due.
+     */
+    synchronized long nanosUntilNextPoll(long nowNanos) {
+        if (schedule.isEmpty()) {
+            return maxIntervalNanos;
+        } else {
+            return Math.max(schedule.peek().nextPollNanos - nowNanos, 0);
+        }
+    }
+
+    /**
+     * Returns the current polling interval of the sensor.
+     *
+     * @param sensor
+     * @return the interval in nanoseconds, or -1 if the sensor is not polled.
+     */
+    synchronized long getIntervalNanos(Sensor sensor) {
+        PollEntry entry = entries.get(sensor);
+        return entry != null ? entry.intervalNanos : -1;
+    }
+
+    private static class PollEntry {
+
+        final Sensor sensor;
+        long intervalNanos;
+        long nextPollNanos;
+
+        PollEntry(Sensor sensor, long intervalNanos, long nextPollNanos) {
+            this.sensor = sensor;
+            this.intervalNanos = intervalNanos;
+            this.nextPollNanos = nextPollNanos;
+        }
+    }
+}
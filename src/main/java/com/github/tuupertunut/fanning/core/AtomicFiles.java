@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helper for replacing files so that a crash or a power cut never leaves a
+ * half-written file behind. The content is written to a temporary file in
+ * the same directory, forced to disk and then moved over the target file.
+ * After a crash the target file has either its old or its new content.
+ *
+ * @author Tuupertunut
+ */
+class AtomicFiles {
+
+    /**
+     * Writes text content into a file.
+     */
+    @FunctionalInterface
+    interface Content {
+
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /**
+     * Writes content directly into a file channel.
+     */
+    @FunctionalInterface
+    private interface ChannelContent {
+
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Atomically replaces the content of a file with UTF-8 text. Creates the
+     * parent directories if they don't exist.
+     *
+     * @param filePath the file to replace.
+     * @param content writes the new content of the file.
+     * @throws IOException if there was IOException writing the file. The old
+     * content of the file is left untouched.
+     */
+    static void write(Path filePath, Content content) throws IOException {
+        replace(filePath, (FileChannel channel) -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            content.writeTo(out);
+            out.flush();
+        });
+    }
+
+    /**
+     * Atomically replaces the content of a file with the remaining bytes of a
+     * buffer. Creates the parent directories if they don't exist.
+     *
+     * @param filePath the file to replace.
+     * @param content the new content of the file.
+     * @throws IOException if there was IOException writing the file. The old
+     * content of the file is left untouched.
+     */
+    static void write(Path filePath, ByteBuffer content) throws IOException {
+        replace(filePath, (FileChannel channel) -> {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        });
+    }
+
+    private static void replace(Path filePath, ChannelContent content) throws IOException {
+        Path dir = filePath.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+
+        Path tempPath = Files.createTempFile(dir, filePath.getFileName().toString(), ".tmp");
+        try {
+            copyPermissions(filePath, tempPath);
+
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.writeTo(channel);
+
+                /* The data must be on disk before the rename, otherwise the
+                 * rename may survive a crash while the data does not. */
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        forceDirectory(dir);
+    }
+
+    /* Temporary files are created readable only by the owner. The replaced
+     * file keeps the permissions it had, for example when it is shared with
+     * other users. */
+    private static void copyPermissions(Path filePath, Path tempPath) throws IOException {
+        if (Files.exists(filePath)) {
+            try {
+                Files.setPosixFilePermissions(tempPath, Files.getPosixFilePermissions(filePath));
+            } catch (UnsupportedOperationException ex) {
+                /* Not a POSIX file system (Windows). */
+            }
+        }
+    }
+
+    /* Makes the rename itself durable. Directories can't be opened on all
+     * platforms (Windows), in which case the rename is left to the OS. */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            /* Not supported on this platform. */
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A storage that stores fan curves into a compact binary file. The file is
+ * loaded by reading it into one buffer and scanning it once, without any
+ * parsing garbage.
+ *
+ * All numbers are big-endian. The layout of version 1 is:
+ * <pre>
+ * int    magic "FANB"
+ * int    version
+ * int    id count
+ * id count times:
+ *   short  byte length of the id
+ *   byte[] the id in UTF-8
+ * int    fan curve count
+ * fan curve count times:
+ *   int    index of the sensor id
+ *   int    index of the fan controller id
+ *   int    change point count
+ *   change point count times:
+ *     double key
+ *     double value
+ * </pre>
+ * Every id is stored only once in the id table, no matter how many fan curves
+ * refer to it.
+ *
+ * @author Tuupertunut
+ */
+public class BinaryStorage implements Storage {
+
+    static final int MAGIC = 0x46414E42;
+    static final int VERSION = 1;
+
+    private final HardwareManager hwManager;
+    private final Path filePath;
+
+    /* Fan curves whose hardware was not present when they were loaded. They
+     * are kept so that they are not lost when the fan curves are stored. */
+    private List<UnboundFanCurve> unboundFanCurves;
+
+    /**
+     * Creates a new BinaryStorage.
+     *
+     * @param hwManager the hardware manager for finding the hardware described
+     * in the file.
+     * @param filePath the file path where the binary file should be.
+     */
+    public BinaryStorage(HardwareManager hwManager, Path filePath) {
+        this.hwManager = hwManager;
+        this.filePath = filePath;
+        this.unboundFanCurves = new ArrayList<>();
+    }
+
+    List<FanCurve> fromBinary(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary fan curve file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary fan curve file version " + version);
+            }
+
+            String[] ids = new String[checkCount(buffer.getInt(), buffer, 2)];
+            for (int i = 0; i < ids.length; i++) {
+                byte[] idBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(idBytes);
+                ids[i] = new String(idBytes, StandardCharsets.UTF_8);
+            }
+
+            /* Every id is resolved only once, against one index. */
+            HardwareIndex index = hwManager.getHardwareIndex();
+            Sensor[] sensors = new Sensor[ids.length];
+            FanController[] fanControllers = new FanController[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                sensors[i] = index.findSensorById(ids[i]).orElse(null);
+                fanControllers[i] = index.findFanControllerById(ids[i]).orElse(null);
+            }
+
+            int fanCurveCount = checkCount(buffer.getInt(), buffer, 12);
+            List<FanCurve> fanCurves = new ArrayList<>(fanCurveCount);
+            List<UnboundFanCurve> stillUnbound = new ArrayList<>();
+            for (int i = 0; i < fanCurveCount; i++) {
+                int sensorIndex = buffer.getInt();
+                int fanControllerIndex = buffer.getInt();
+
+                int changePointCount = checkCount(buffer.getInt(), buffer, 16);
+                List<Mapping> changePoints = new ArrayList<>(changePointCount);
+                for (int j = 0; j < changePointCount; j++) {
+                    double key = buffer.getDouble();
+                    double value = buffer.getDouble();
+                    changePoints.add(new Mapping(key, value));
+                }
+
+                Sensor sensor = sensors[sensorIndex];
+                FanController fanController = fanControllers[fanControllerIndex];
+                if (sensor != null && fanController != null) {
+                    fanCurves.add(new FanCurve(sensor, fanController, changePoints));
+                } else {
+                    stillUnbound.add(new UnboundFanCurve(ids[sensorIndex], ids[fanControllerIndex], changePoints));
+                }
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new IOException("Trailing data in binary fan curve file");
+            }
+
+            synchronized (this) {
+                unboundFanCurves = stillUnbound;
+            }
+            return fanCurves;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("Truncated or corrupted binary fan curve file", ex);
+        }
+    }
+
+    /* Rejects counts that can't fit in the rest of the buffer, so that a
+     * corrupted count never causes a huge allocation. */
+    private static int checkCount(int count, ByteBuffer buffer, int minBytesPerItem) throws IOException {
+        if (count < 0 || (long) count * minBytesPerItem > buffer.remaining()) {
+            throw new IOException("Truncated or corrupted binary fan curve file");
+        }
+        return count;
+    }
+
+    /**
+     * Returns the fan curves that were loaded but whose hardware was not
+     * present. They are stored along with the bound fan curves until a fan
+     * curve for the same fan controller is stored.
+     *
+     * @return a list of unbound fan curves.
+     */
+    @Override
+    public synchronized List<UnboundFanCurve> getUnboundFanCurves() {
+        return new ArrayList<>(unboundFanCurves);
+    }
+
+    @Override
+    public synchronized void setUnboundFanCurves(List<UnboundFanCurve> unboundFanCurves) {
+        this.unboundFanCurves = new ArrayList<>(unboundFanCurves);
+    }
+
+    ByteBuffer toBinary(List<FanCurve> fanCurves) {
+        List<UnboundFanCurve> unbound;
+        synchronized (this) {
+            unbound = UnboundFanCurve.notReplacedBy(unboundFanCurves, fanCurves);
+            unboundFanCurves = unbound;
+        }
+
+        /* Interning the ids. */
+        Map<String, Integer> idIndices = new LinkedHashMap<>();
+        for (FanCurve fanCurve : fanCurves) {
+            idIndices.putIfAbsent(fanCurve.getSensor().getId(), idIndices.size());
+            idIndices.putIfAbsent(fanCurve.getFanController().getId(), idIndices.size());
+        }
+        for (UnboundFanCurve fanCurve : unbound) {
+            idIndices.putIfAbsent(fanCurve.getSensorId(), idIndices.size());
+            idIndices.putIfAbsent(fanCurve.getFanControllerId(), idIndices.size());
+        }
+
+        List<byte[]> encodedIds = new ArrayList<>(idIndices.size());
+        int size = 12;
+        for (String id : idIndices.keySet()) {
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            if (idBytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Id is too long: " + id);
+            }
+            encodedIds.add(idBytes);
+            size += 2 + idBytes.length;
+        }
+        size += 4;
+        for (FanCurve fanCurve : fanCurves) {
+            size += 12 + 16 * fanCurve.getChangePoints().size();
+        }
+        for (UnboundFanCurve fanCurve : unbound) {
+            size += 12 + 16 * fanCurve.getChangePoints().size();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+
+        buffer.putInt(encodedIds.size());
+        for (byte[] idBytes : encodedIds) {
+            buffer.putShort((short) idBytes.length);
+            buffer.put(idBytes);
+        }
+
+        buffer.putInt(fanCurves.size() + unbound.size());
+        for (FanCurve fanCurve : fanCurves) {
+            putFanCurve(buffer, idIndices.get(fanCurve.getSensor().getId()), idIndices.get(fanCurve.getFanController().getId()), fanCurve.getChangePoints());
+        }
+        for (UnboundFanCurve fanCurve : unbound) {
+            putFanCurve(buffer, idIndices.get(fanCurve.getSensorId()), idIndices.get(fanCurve.getFanControllerId()), fanCurve.getChangePoints());
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void putFanCurve(ByteBuffer buffer, int sensorIndex, int fanControllerIndex, List<Mapping> changePoints) {
+        buffer.putInt(sensorIndex);
+        buffer.putInt(fanControllerIndex);
+        buffer.putInt(changePoints.size());
+        for (Mapping mapping : changePoints) {
+            buffer.putDouble(mapping.key);
+            buffer.putDouble(mapping.value);
+        }
+    }
+
+    /**
+     * Loads fan curves from the binary file. If the file doesn't exist yet,
+     * returns an empty list.
+     *
+     * @return a list of fan curves.
+     * @throws IOException if there was IOException reading the file or the
+     * file was not a valid binary fan curve file.
+     */
+    @Override
+    public List<FanCurve> load() throws IOException {
+        if (Files.notExists(filePath)) {
+            return Arrays.asList();
+        }
+
+        /* The file is not memory-mapped, because on Windows a mapped file
+         * can't be replaced until the mapping is garbage collected. The file
+         * is small, so reading it costs only one copy. */
+        return fromBinary(ByteBuffer.wrap(Files.readAllBytes(filePath)));
+    }
+
+    /**
+     * Stores fan curves into the binary file. This will overwrite any previous
+     * content in the file. The file is replaced atomically, so it is never
+     * left half-written.
+     *
+     * @param fanCurves a list of fan curves.
+     * @throws IOException if there was IOException writing the file.
+     */
+    @Override
+    public void store(List<FanCurve> fanCurves) throws IOException {
+        AtomicFiles.write(filePath, toBinary(fanCurves));
+    }
+}
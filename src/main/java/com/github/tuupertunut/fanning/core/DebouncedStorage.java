@@ -0,0 +1,250 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A storage that delays and coalesces stores to another storage. Storing
+ * only takes a copy of the fan curves and schedules a write. All stores made
+ * before the write happens are written at once, and only the latest fan
+ * curves are written. This bounds the disk I/O when fan curves are saved many
+ * times in a short period.
+ *
+ * Writes happen in a background thread. If a write fails, the failure is
+ * thrown from the next call to {@link #store(List)} or {@link #flush()}.
+ * Pending writes should be flushed before the application exits.
+ *
+ * @author Tuupertunut
+ */
+public class DebouncedStorage implements Storage {
+
+    private final Storage storage;
+    private final long delayNanos;
+    private final ScheduledExecutorService writer;
+
+    /* Guarded by this. The pending fan curves are null when no write is
+     * scheduled. Changes from several calls to storeChanges are merged, and a
+     * call to store makes the next write a full store. A failed write is
+     * scheduled again as a full store, so that no edits are lost. */
+    private List<FanCurve> pendingFanCurves;
+    private boolean pendingFullStore;
+    private final Set<String> pendingChangedIds;
+    private final Set<String> pendingRemovedIds;
+    private IOException failure;
+
+    /**
+     * Creates a new DebouncedStorage.
+     *
+     * @param storage the storage where the fan curves are written.
+     * @param delay how long to wait for more stores before writing.
+     */
+    public DebouncedStorage(Storage storage, Duration delay) {
+        this.storage = storage;
+        this.delayNanos = delay.toNanos();
+        this.pendingFanCurves = null;
+        this.pendingFullStore = false;
+        this.pendingChangedIds = new HashSet<>();
+        this.pendingRemovedIds = new LinkedHashSet<>();
+        this.failure = null;
+
+        /* Making a daemon thread, so it will automatically die when the main
+         * thread dies. */
+        this.writer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads fan curves from the underlying storage. Pending stores are
+     * written first, so that the loaded fan curves are up to date.
+     *
+     * @return a list of fan curves.
+     * @throws IOException
+     * @throws JsonException
+     */
+    @Override
+    public List<FanCurve> load() throws IOException, JsonException {
+        flush();
+        return storage.load();
+    }
+
+    @Override
+    public List<UnboundFanCurve> getUnboundFanCurves() {
+        return storage.getUnboundFanCurves();
+    }
+
+    @Override
+    public void setUnboundFanCurves(List<UnboundFanCurve> unboundFanCurves) {
+        storage.setUnboundFanCurves(unboundFanCurves);
+    }
+
+    /**
+     * Schedules the fan curves to be stored. The fan curves are copied, so
+     * they can be edited right after this method returns.
+     *
+     * @param fanCurves a list of fan curves.
+     * @throws IOException if a previous write failed. The fan curves are
+     * scheduled anyway.
+     */
+    @Override
+    public synchronized void store(List<FanCurve> fanCurves) throws IOException {
+        pendingFullStore = true;
+        schedule(fanCurves);
+
+        throwFailure();
+    }
+
+    /**
+     * Schedules the changed fan curves to be stored. Changes are merged with
+     * other pending changes and forwarded to the underlying storage in one
+     * call. The fan curves are copied, so they can be edited right after this
+     * method returns.
+     *
+     * @param fanCurves the whole list of fan curves.
+     * @param changedFanCurves the fan curves that have been added or edited.
+     * @param removedFanControllerIds the fan controller ids of the removed fan
+     * curves.
+     * @throws IOException if a previous write failed. The changes are
+     * scheduled anyway.
+     */
+    @Override
+    public synchronized void storeChanges(List<FanCurve> fanCurves, List<FanCurve> changedFanCurves, Set<String> removedFanControllerIds) throws IOException {
+        for (String fanControllerId : removedFanControllerIds) {
+            pendingChangedIds.remove(fanControllerId);
+            pendingRemovedIds.add(fanControllerId);
+        }
+        for (FanCurve fanCurve : changedFanCurves) {
+            pendingChangedIds.add(fanCurve.getFanController().getId());
+        }
+        schedule(fanCurves);
+
+        throwFailure();
+    }
+
+    private void schedule(List<FanCurve> fanCurves) {
+        boolean writeScheduled = pendingFanCurves != null;
+        pendingFanCurves = copy(fanCurves);
+        if (!writeScheduled) {
+            writer.schedule(this::writePending, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Writes all pending stores immediately and waits for them to finish.
+     *
+     * @throws IOException if a write failed.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(this::writePending).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+
+        synchronized (this) {
+            throwFailure();
+        }
+    }
+
+    private void writePending() {
+        List<FanCurve> fanCurves;
+        boolean fullStore;
+        List<FanCurve> changedFanCurves = new ArrayList<>();
+        Set<String> removedFanControllerIds;
+        synchronized (this) {
+            fanCurves = pendingFanCurves;
+            fullStore = pendingFullStore;
+            if (fanCurves == null) {
+                return;
+            }
+            for (FanCurve fanCurve : fanCurves) {
+                if (pendingChangedIds.contains(fanCurve.getFanController().getId())) {
+                    changedFanCurves.add(fanCurve);
+                }
+            }
+            removedFanControllerIds = new LinkedHashSet<>(pendingRemovedIds);
+
+            pendingFanCurves = null;
+            pendingFullStore = false;
+            pendingChangedIds.clear();
+            pendingRemovedIds.clear();
+        }
+
+        try {
+            if (fullStore) {
+                storage.store(fanCurves);
+            } else {
+                storage.storeChanges(fanCurves, changedFanCurves, removedFanControllerIds);
+            }
+        } catch (IOException ex) {
+            synchronized (this) {
+                failure = ex;
+
+                /* A full store of the newest fan curves contains every change
+                 * of the failed batch, and it is tried again after the delay.
+                 * If newer fan curves are already pending, a write has already
+                 * been scheduled for them. */
+                pendingFullStore = true;
+                if (pendingFanCurves == null) {
+                    pendingFanCurves = fanCurves;
+                    writer.schedule(this::writePending, delayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private void throwFailure() throws IOException {
+        if (failure != null) {
+            IOException ex = failure;
+            failure = null;
+            throw ex;
+        }
+    }
+
+    private static List<FanCurve> copy(List<FanCurve> fanCurves) {
+        List<FanCurve> copies = new ArrayList<>(fanCurves.size());
+        for (FanCurve fanCurve : fanCurves) {
+            copies.add(new FanCurve(fanCurve.getSensor(), fanCurve.getFanController(), new ArrayList<>(fanCurve.getChangePoints())));
+        }
+        return copies;
+    }
+}
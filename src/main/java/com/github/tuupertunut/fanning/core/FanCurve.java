@@ -25,11 +25,12 @@ package com.github.tuupertunut.fanning.core;
 
 import com.github.tuupertunut.fanning.hwinterface.FanController;
 import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.util.ListenableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.OptionalDouble;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
-import javafx.collections.FXCollections;
 
 /**
  * A set of mappings from sensor values to fan controller values. This can be
@@ -41,7 +42,12 @@ public class FanCurve {
 
     private final Sensor sensor;
     private final FanController fanController;
-    private final ListProperty<Mapping> changePoints;
+    private final ListenableList<Mapping> changePoints;
+
+    /* An immutable sorted copy of the change points. It is replaced whenever
+     * the change points change, so the fan value can be calculated without
+     * going through the observable list. */
+    private volatile CompiledCurve compiledCurve;
 
     /**
      * Creates a new FanCurve.
@@ -53,7 +59,12 @@ public class FanCurve {
     public FanCurve(Sensor sensor, FanController fanController, List<Mapping> changePoints) {
         this.sensor = sensor;
         this.fanController = fanController;
-        this.changePoints = new SimpleListProperty<>(FXCollections.observableArrayList(changePoints));
+        this.changePoints = new ListenableList<>(changePoints);
+
+        compiledCurve = new CompiledCurve(this.changePoints);
+        this.changePoints.addListener((int from, List<? extends Mapping> removed, List<? extends Mapping> added) -> {
+            compiledCurve = new CompiledCurve(this.changePoints);
+        });
     }
 
     public Sensor getSensor() {
@@ -64,7 +75,7 @@ public class FanCurve {
         return fanController;
     }
 
-    public ListProperty<Mapping> changePointsProperty() {
+    public ListenableList<Mapping> getChangePoints() {
         return changePoints;
     }
 
@@ -81,22 +92,91 @@ public class FanCurve {
      * @return the calculated fan value.
      */
     public OptionalDouble getFanValueAt(double sensorValue) {
-        Mapping closestBelow = null;
-        Mapping smallest = null;
-        for (Mapping m : changePoints) {
-            if (m.key <= sensorValue && (closestBelow == null || m.key > closestBelow.key)) {
-                closestBelow = m;
-            }
-            if (smallest == null || m.key < smallest.key) {
-                smallest = m;
-            }
+        CompiledCurve curve = compiledCurve;
+        if (curve.isEmpty()) {
+            return OptionalDouble.empty();
+        } else {
+            return OptionalDouble.of(curve.valueAt(sensorValue));
         }
-        if (closestBelow != null) {
-            return OptionalDouble.of(closestBelow.value);
-        } else if (smallest != null) {
-            return OptionalDouble.of(smallest.value);
+    }
+
+    /**
+     * Gets the fan value that the sensor value maps to in the mappings, or
+     * the given default value if there are no mappings. This works like
+     * {@link #getFanValueAt(double)}, but does not allocate anything, so it is
+     * suitable for the update loop.
+     *
+     * @param sensorValue the value used to calculate the fan value.
+     * @param other the value to return if there are no mappings.
+     * @return the calculated fan value, or {@code other}.
+     */
+    public double getFanValueAtOrElse(double sensorValue, double other) {
+        CompiledCurve curve = compiledCurve;
+        if (curve.isEmpty()) {
+            return other;
         } else {
-            return OptionalDouble.empty();
+            return curve.valueAt(sensorValue);
+        }
+    }
+
+    /**
+     * The change points sorted by key in primitive arrays. Lookups are done
+     * with binary search. Objects are immutable.
+     */
+    private static class CompiledCurve {
+
+        private final double[] keys;
+        private final double[] values;
+
+        CompiledCurve(List<Mapping> changePoints) {
+            /* Stable sort, so that with duplicate keys the mapping that is
+             * first in the list is kept. */
+            List<Mapping> sorted = new ArrayList<>(changePoints);
+            sorted.sort(Comparator.comparingDouble((Mapping m) -> m.key));
+
+            double[] sortedKeys = new double[sorted.size()];
+            double[] sortedValues = new double[sorted.size()];
+            int size = 0;
+            for (Mapping m : sorted) {
+                if (size == 0 || m.key != sortedKeys[size - 1]) {
+                    sortedKeys[size] = m.key;
+                    sortedValues[size] = m.value;
+                    size++;
+                }
+            }
+
+            keys = Arrays.copyOf(sortedKeys, size);
+            values = Arrays.copyOf(sortedValues, size);
+        }
+
+        boolean isEmpty() {
+            return keys.length == 0;
+        }
+
+        /* Must not be called on an empty curve. */
+        double valueAt(double sensorValue) {
+
+            /* Binary search for the last key that is lower than or equal to the
+             * sensor value. */
+            int low = 0;
+            int high = keys.length - 1;
+            int closestBelow = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= sensorValue) {
+                    closestBelow = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            /* If all keys are higher, the first mapping is used. */
+            if (closestBelow >= 0) {
+                return values[closestBelow];
+            } else {
+                return values[0];
+            }
         }
     }
 }
@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
+import com.github.tuupertunut.fanning.util.HistogramSummary;
+import com.github.tuupertunut.fanning.util.LatencyHistogram;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Measurements of the update loop of a {@link FanningService}: how long the
+ * updates take, how long reading the hardware and writing every fan takes,
+ * how many updates are missed or run over their budget, and how much the
+ * updater thread allocates per update.
+ *
+ * Everything is recorded into {@link LatencyHistogram}s, so recording is
+ * cheap and does not allocate after the first update of every device. The
+ * metrics can be published over JMX with {@link #register()}.
+ *
+ * @author Tuupertunut
+ */
+public class FanningMetrics implements FanningMetricsMXBean {
+
+    /**
+     * The name under which the metrics are registered in the platform MBean
+     * server.
+     */
+    public static final String OBJECT_NAME = "com.github.tuupertunut.fanning:type=FanningMetrics";
+
+    private final LatencyHistogram tickTimes;
+    private final LatencyHistogram hardwareReadTimes;
+    private final LatencyHistogram tickAllocations;
+    private final Map<String, LatencyHistogram> deviceReadTimes;
+    private final Map<String, LatencyHistogram> fanWriteTimes;
+
+    private final AtomicLong tickCount;
+    private final AtomicLong skippedTicks;
+    private final AtomicLong overrunTicks;
+
+    /* The longest time an update may take, and the longest time between the
+     * starts of two updates. 0 if not known. */
+    private volatile long tickBudgetNanos;
+    private volatile long maxTickIntervalNanos;
+
+    /* Only accessed from the updater thread. */
+    private long lastTickStartNanos;
+
+    /* Null if the JVM can't measure the allocations of a thread. */
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    /**
+     * Creates new empty FanningMetrics.
+     */
+    public FanningMetrics() {
+        this.tickTimes = new LatencyHistogram();
+        this.hardwareReadTimes = new LatencyHistogram();
+        this.tickAllocations = new LatencyHistogram();
+        this.deviceReadTimes = new ConcurrentHashMap<>();
+        this.fanWriteTimes = new ConcurrentHashMap<>();
+        this.tickCount = new AtomicLong();
+        this.skippedTicks = new AtomicLong();
+        this.overrunTicks = new AtomicLong();
+        this.tickBudgetNanos = 0;
+        this.maxTickIntervalNanos = 0;
+        this.lastTickStartNanos = 0;
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled()) {
+            this.allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        } else {
+            this.allocationBean = null;
+        }
+    }
+
+    /**
+     * Sets the schedule that the updates are measured against. An update is
+     * an overrun if it takes longer than the budget, and updates are skipped
+     * when there is more than the maximum interval between them.
+     *
+     * @param tickBudgetNanos the longest time an update may take.
+     * @param maxTickIntervalNanos the longest time between two updates.
+     */
+    void setTickSchedule(long tickBudgetNanos, long maxTickIntervalNanos) {
+        this.tickBudgetNanos = tickBudgetNanos;
+        this.maxTickIntervalNanos = maxTickIntervalNanos;
+    }
+
+    /**
+     * Returns how many bytes the current thread has allocated in total, or -1
+     * if it can't be measured.
+     *
+     * @return the allocated bytes of the current thread.
+     */
+    long currentThreadAllocatedBytes() {
+        if (allocationBean == null) {
+            return -1;
+        }
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Records an update. Must be called from the updater thread.
+     *
+     * @param startNanos when the update started.
+     * @param endNanos when the update ended.
+     * @param allocatedBytesAtStart the allocated bytes of the thread when the
+     * update started, or -1 if not known.
+     */
+    void recordTick(long startNanos, long endNanos, long allocatedBytesAtStart) {
+        long duration = endNanos - startNanos;
+        tickTimes.record(duration);
+        tickCount.incrementAndGet();
+
+        long budget = tickBudgetNanos;
+        if (budget > 0 && duration > budget) {
+            overrunTicks.incrementAndGet();
+        }
+
+        /* Every whole interval that passed without an update is one skipped
+         * update. */
+        long maxInterval = maxTickIntervalNanos;
+        if (maxInterval > 0 && lastTickStartNanos != 0) {
+            long missed = (startNanos - lastTickStartNanos) / maxInterval - 1;
+            if (missed > 0) {
+                skippedTicks.addAndGet(missed);
+            }
+        }
+        lastTickStartNanos = startNanos;
+
+        if (allocatedBytesAtStart >= 0) {
+            tickAllocations.record(currentThreadAllocatedBytes() - allocatedBytesAtStart);
+        }
+    }
+
+    /**
+     * Records how long fetching the sensor values took in an update.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordHardwareRead(long nanos) {
+        hardwareReadTimes.record(nanos);
+    }
+
+    /**
+     * Records how long updating the sensors of a hardware item took. This
+     * can be called from any thread, and it can be used as an
+     * {@link com.github.tuupertunut.fanning.hwinterface.UpdateTimeListener}.
+     *
+     * @param item the hardware item.
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordDeviceRead(HardwareItem item, long nanos) {
+        histogramOf(deviceReadTimes, item.getId()).record(nanos);
+    }
+
+    /**
+     * Records how long setting the value of a fan took.
+     *
+     * @param fan the fan controller.
+     * @param nanos the duration in nanoseconds.
+     */
+    void recordFanWrite(FanController fan, long nanos) {
+        histogramOf(fanWriteTimes, fan.getId()).record(nanos);
+    }
+
+    private static LatencyHistogram histogramOf(Map<String, LatencyHistogram> histograms, String id) {
+        LatencyHistogram histogram = histograms.get(id);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(id, (String key) -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    private static Map<String, HistogramSummary> summarize(Map<String, LatencyHistogram> histograms) {
+        Map<String, HistogramSummary> summaries = new TreeMap<>();
+        histograms.forEach((String id, LatencyHistogram histogram) -> summaries.put(id, histogram.getSummary()));
+        return summaries;
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    @Override
+    public long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+
+    @Override
+    public long getOverrunTicks() {
+        return overrunTicks.get();
+    }
+
+    @Override
+    public HistogramSummary getTickTimes() {
+        return tickTimes.getSummary();
+    }
+
+    @Override
+    public HistogramSummary getHardwareReadTimes() {
+        return hardwareReadTimes.getSummary();
+    }
+
+    @Override
+    public HistogramSummary getTickAllocations() {
+        return tickAllocations.getSummary();
+    }
+
+    @Override
+    public Map<String, HistogramSummary> getDeviceReadTimes() {
+        return summarize(deviceReadTimes);
+    }
+
+    @Override
+    public Map<String, HistogramSummary> getFanWriteTimes() {
+        return summarize(fanWriteTimes);
+    }
+
+    private static ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName(OBJECT_NAME);
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, so they can be
+     * read with any JMX client.
+     *
+     * @throws JMException if the metrics could not be registered, for example
+     * because other metrics are already registered.
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server.
+     *
+     * @throws JMException if the metrics were not registered.
+     */
+    public void unregister() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.util.HistogramSummary;
+import java.util.Map;
+
+/**
+ * The management interface of {@link FanningMetrics}. All times are in
+ * nanoseconds.
+ *
+ * @author Tuupertunut
+ */
+public interface FanningMetricsMXBean {
+
+    /**
+     * @return how many updates have run.
+     */
+    long getTickCount();
+
+    /**
+     * @return how many times an update did not run at least once in the
+     * longest allowed interval between updates.
+     */
+    long getSkippedTicks();
+
+    /**
+     * @return how many updates took longer than their time budget.
+     */
+    long getOverrunTicks();
+
+    /**
+     * @return the durations of whole updates.
+     */
+    HistogramSummary getTickTimes();
+
+    /**
+     * @return the durations of fetching the sensor values in the updates.
+     */
+    HistogramSummary getHardwareReadTimes();
+
+    /**
+     * @return the bytes allocated by the updater thread per update. Empty if
+     * the JVM can't measure it.
+     */
+    HistogramSummary getTickAllocations();
+
+    /**
+     * @return the durations of reading each hardware item, by hardware item
+     * id. Empty if the hardware manager does not report them.
+     */
+    Map<String, HistogramSummary> getDeviceReadTimes();
+
+    /**
+     * @return the durations of setting the value of each fan, by fan
+     * controller id.
+     */
+    Map<String, HistogramSummary> getFanWriteTimes();
+}
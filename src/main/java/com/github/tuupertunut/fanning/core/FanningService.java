@@ -26,15 +26,38 @@ package com.github.tuupertunut.fanning.core;
 import com.github.cliftonlabs.json_simple.JsonException;
 import com.github.tuupertunut.fanning.hwinterface.FanController;
 import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.hwinterface.StructureListener;
+import com.github.tuupertunut.fanning.hwinterface.ValueListener;
+import com.github.tuupertunut.fanning.jfr.CurveEvaluationEvent;
+import com.github.tuupertunut.fanning.jfr.FanActuationEvent;
+import com.github.tuupertunut.fanning.jfr.FlightRecorderEvents;
+import com.github.tuupertunut.fanning.jfr.TickEvent;
+import com.github.tuupertunut.fanning.util.ListListener;
+import com.github.tuupertunut.fanning.util.ListenableList;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
-import javafx.collections.FXCollections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * The entry point to the software. Controls fans based on the fan curves.
@@ -45,7 +68,71 @@ public class FanningService {
 
     private final HardwareManager hardwareManager;
     private final Storage storage;
-    private final ListProperty<FanCurve> fanCurves;
+    private final ListenableList<FanCurve> fanCurves;
+
+    /* Index from fan controllers to the fan curves controlling them. This is
+     * kept in sync with the fan curve list. It is read from the updater
+     * thread, so it must be concurrent. */
+    private final Map<FanController, FanCurve> curvesByFan;
+
+    /* Set when the fan curves or their change points change, so that the next
+     * update recalculates every fan even if no sensor value has changed. */
+    private final AtomicBoolean curvesChanged;
+    private final Map<FanCurve, ListListener<Mapping>> changePointsListeners;
+
+    /* The fan curves that have been added or edited, and the fan controllers
+     * whose fan curves have been removed, since the last store. Only these
+     * are written on the next store. These are only accessed from the thread
+     * that edits the fan curves. */
+    private final Set<FanCurve> dirtyCurves;
+    private final Set<String> removedFanIds;
+
+    /* Loaded fan curves whose hardware is not present. They are bound
+     * whenever the structure of the hardware tree changes. The list is only
+     * accessed from the thread that edits the fan curves, which is the thread
+     * of the fan curve executor. */
+    private final List<UnboundFanCurve> unboundCurves;
+    private volatile boolean hasUnboundCurves;
+    private volatile Executor fanCurveExecutor;
+    private final StructureListener structureListener;
+
+    /* Held by the updater thread while it controls the fans. */
+    private final Object tickLock;
+
+    /* The sensors that are fetched from the hardware on every update. These
+     * are the sensors of the fan curves and the monitored sensors. */
+    private volatile Set<Sensor> monitoredSensors;
+    private volatile Set<Sensor> polledSensors;
+    private volatile double sensorDeadband;
+
+    /* Sensor values are compared with the values that were last reported as
+     * changes, so that slow drift is reported too. Only accessed from the
+     * updater thread. */
+    private final ReportedValues reportedValues;
+
+    /* The single thread that controls the fans. */
+    private final ScheduledExecutorService updater;
+
+    /* State of the event-driven updater. Sensors whose value has changed are
+     * collected into a set, and one recalculation is scheduled for all of
+     * them. */
+    private volatile boolean eventDriven;
+    private final Set<Sensor> pendingSensors;
+    private final AtomicBoolean recalculationScheduled;
+    private final Map<Sensor, ValueListener> sensorListeners;
+
+    /* State of the adaptive updater. These are only accessed from the updater
+     * thread, except for the poller which is thread safe. */
+    private volatile AdaptivePoller adaptivePoller;
+    private ScheduledFuture<?> nextAdaptivePoll;
+
+    /* The latest values of the hardware. The updater thread publishes a new
+     * snapshot after every update that changed something, so other threads
+     * never have to read the hardware tree directly. */
+    private volatile HardwareSnapshot snapshot;
+    private final List<Consumer<HardwareSnapshot>> snapshotListeners;
+
+    private final FanningMetrics metrics;
 
     /**
      * Creates a new FanningService.
@@ -56,7 +143,183 @@ public class FanningService {
     public FanningService(HardwareManager hardwareManager, Storage storage) {
         this.hardwareManager = hardwareManager;
         this.storage = storage;
-        this.fanCurves = new SimpleListProperty<>(FXCollections.observableArrayList());
+        this.fanCurves = new ListenableList<>();
+        this.curvesByFan = new ConcurrentHashMap<>();
+        this.curvesChanged = new AtomicBoolean(true);
+        this.changePointsListeners = new IdentityHashMap<>();
+        this.dirtyCurves = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.removedFanIds = new HashSet<>();
+        this.unboundCurves = new ArrayList<>();
+        this.hasUnboundCurves = false;
+        this.tickLock = new Object();
+        this.monitoredSensors = Collections.emptySet();
+        this.polledSensors = Collections.emptySet();
+        this.sensorDeadband = 0;
+        this.reportedValues = new ReportedValues(hardwareManager);
+
+        /* Making a daemon thread, so it will automatically die when the main
+         * thread dies. */
+        this.updater = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fanCurveExecutor = updater;
+        this.eventDriven = false;
+        this.pendingSensors = ConcurrentHashMap.newKeySet();
+        this.recalculationScheduled = new AtomicBoolean(false);
+        this.sensorListeners = new HashMap<>();
+        this.snapshot = HardwareSnapshot.of(hardwareManager.getHardwareIndex(), 0);
+        this.snapshotListeners = new CopyOnWriteArrayList<>();
+        this.metrics = new FanningMetrics();
+
+        this.structureListener = () -> {
+            if (hasUnboundCurves) {
+                editFanCurves(this::bindPendingCurves);
+            }
+        };
+        hardwareManager.addStructureListener(structureListener);
+
+        fanCurves.addListener((int from, List<? extends FanCurve> removedCurves, List<? extends FanCurve> addedCurves) -> {
+            for (FanCurve removed : removedCurves) {
+                removed.getChangePoints().removeListener(changePointsListeners.remove(removed));
+                unindexCurve(removed);
+                dirtyCurves.remove(removed);
+                removedFanIds.add(removed.getFanController().getId());
+            }
+            for (FanCurve added : addedCurves) {
+                ListListener<Mapping> listener = (int pointFrom, List<? extends Mapping> removedPoints, List<? extends Mapping> addedPoints) -> {
+                    dirtyCurves.add(added);
+                    markCurvesChanged();
+                };
+                changePointsListeners.put(added, listener);
+                added.getChangePoints().addListener(listener);
+                indexCurve(added);
+                dirtyCurves.add(added);
+            }
+            updatePolledSensors();
+            markCurvesChanged();
+        });
+    }
+
+    private void indexCurve(FanCurve curve) {
+        FanController fan = curve.getFanController();
+        FanCurve existing = curvesByFan.putIfAbsent(fan, curve);
+
+        /* If the fan already has a curve, the one that is first in the list
+         * controls the fan. */
+        if (existing != null && existing != curve && fanCurves.indexOf(curve) < fanCurves.indexOf(existing)) {
+            curvesByFan.put(fan, curve);
+        }
+    }
+
+    private void unindexCurve(FanCurve curve) {
+        FanController fan = curve.getFanController();
+        if (curvesByFan.remove(fan, curve)) {
+
+            /* Another curve for the same fan may still be in the list. */
+            for (FanCurve other : fanCurves) {
+                if (other.getFanController().equals(fan)) {
+                    curvesByFan.put(fan, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void updatePolledSensors() {
+        Set<Sensor> sensors = new HashSet<>(monitoredSensors);
+        for (FanCurve curve : curvesByFan.values()) {
+            sensors.add(curve.getSensor());
+        }
+        polledSensors = Collections.unmodifiableSet(sensors);
+
+        if (eventDriven) {
+            updateSensorListeners();
+        }
+
+        AdaptivePoller poller = adaptivePoller;
+        if (poller != null) {
+            poller.setSensors(polledSensors, System.nanoTime());
+
+            /* New sensors are due immediately. */
+            updater.execute(this::rescheduleAdaptivePoll);
+        }
+    }
+
+    /* Listens to the sensors of the fan curves, so that their fans can be
+     * recalculated as soon as the sensor value changes. */
+    private synchronized void updateSensorListeners() {
+        Set<Sensor> curveSensors = new HashSet<>();
+        for (FanCurve curve : curvesByFan.values()) {
+            curveSensors.add(curve.getSensor());
+        }
+
+        sensorListeners.entrySet().removeIf((Map.Entry<Sensor, ValueListener> entry) -> {
+            if (!curveSensors.contains(entry.getKey())) {
+                entry.getKey().removeValueListener(entry.getValue());
+                return true;
+            } else {
+                return false;
+            }
+        });
+        for (Sensor sensor : curveSensors) {
+            if (!sensorListeners.containsKey(sensor)) {
+                /* The deadband is applied by the recalculation, which knows
+                 * the last reported value. */
+                ValueListener listener = (double oldValue, double newValue) -> {
+                    pendingSensors.add(sensor);
+                    scheduleRecalculation();
+                };
+                sensor.addValueListener(listener);
+                sensorListeners.put(sensor, listener);
+            }
+        }
+    }
+
+    private void markCurvesChanged() {
+        curvesChanged.set(true);
+        if (eventDriven) {
+            scheduleRecalculation();
+        }
+    }
+
+    private void scheduleRecalculation() {
+        if (recalculationScheduled.compareAndSet(false, true)) {
+            updater.execute(this::recalculate);
+        }
+    }
+
+    /* Recalculates the fans whose sensors have changed since the last
+     * recalculation, without fetching anything from the hardware. */
+    private void recalculate() {
+        recalculationScheduled.set(false);
+
+        /* Sensor changes during a poll schedule a recalculation, but the poll
+         * handles them itself. Nothing is left to do then, and it is not
+         * counted as a tick. */
+        if (pendingSensors.isEmpty() && !curvesChanged.get()) {
+            return;
+        }
+
+        TickEvent tickEvent = beginTickEvent();
+        long start = System.nanoTime();
+        long allocatedAtStart = metrics.currentThreadAllocatedBytes();
+
+        Set<Sensor> pending = new HashSet<>();
+        for (Sensor sensor : pendingSensors) {
+            pendingSensors.remove(sensor);
+            pending.add(sensor);
+        }
+
+        /* The values may have changed by less than the deadband. */
+        Set<Sensor> changed = reportedValues.report(pending, sensorDeadband);
+        if (changed.isEmpty() && !curvesChanged.get()) {
+            return;
+        }
+        controlFans(changed);
+        metrics.recordTick(start, System.nanoTime(), allocatedAtStart);
+        commitTickEvent(tickEvent, "recalculation", changed.size());
     }
 
     /**
@@ -67,15 +330,157 @@ public class FanningService {
      */
     public void loadFromStorage() throws IOException, JsonException {
         fanCurves.setAll(storage.load());
+
+        /* The loaded fan curves are already in the storage. */
+        dirtyCurves.clear();
+        removedFanIds.clear();
+
+        unboundCurves.clear();
+        unboundCurves.addAll(storage.getUnboundFanCurves());
+        hasUnboundCurves = !unboundCurves.isEmpty();
     }
 
     /**
-     * Stores the fan curves into the storage.
+     * Binds the loaded fan curves whose hardware has appeared and adds them
+     * to the list of fan curves. This is called automatically when the
+     * structure of the hardware tree changes, through the fan curve executor.
+     * A fan curve is dropped if another fan curve has been created for its fan
+     * controller in the meantime.
+     */
+    public void bindPendingCurves() {
+        if (unboundCurves.isEmpty()) {
+            return;
+        }
+
+        List<UnboundFanCurve> stillUnbound = new ArrayList<>();
+        List<FanCurve> bound = UnboundFanCurve.bindAll(unboundCurves, hardwareManager.getHardwareIndex(), stillUnbound);
+        bound.removeIf((FanCurve fanCurve) -> curvesByFan.containsKey(fanCurve.getFanController()));
+
+        unboundCurves.clear();
+        unboundCurves.addAll(stillUnbound);
+        hasUnboundCurves = !unboundCurves.isEmpty();
+
+        fanCurves.addAll(bound);
+
+        /* The bound fan curves are already in the storage. */
+        dirtyCurves.removeAll(bound);
+    }
+
+    /**
+     * Replaces the fan curves with a newly loaded profile, changing only the
+     * fan curves that differ. Fan curves are matched by their fan controllers.
+     * A fan curve with the same sensor is edited in place, otherwise it is
+     * replaced. Fan curves with unsaved local edits, and fan controllers whose
+     * fan curves have been removed without saving, are left as they are. The
+     * changes are applied between two updates, so the updater never sees a
+     * partially applied profile. This must be called from the thread that
+     * edits the fan curves.
+     *
+     * @param loadedFanCurves the fan curves of the new profile.
+     * @param loadedUnboundFanCurves the unbound fan curves of the new profile.
+     */
+    public void applyProfile(List<FanCurve> loadedFanCurves, List<UnboundFanCurve> loadedUnboundFanCurves) {
+        Map<String, FanCurve> loadedByFanId = new LinkedHashMap<>();
+        for (FanCurve fanCurve : loadedFanCurves) {
+            loadedByFanId.putIfAbsent(fanCurve.getFanController().getId(), fanCurve);
+        }
+
+        Set<FanCurve> locallyEdited = Collections.newSetFromMap(new IdentityHashMap<>());
+        locallyEdited.addAll(dirtyCurves);
+        Set<String> locallyRemoved = new HashSet<>(removedFanIds);
+        loadedByFanId.keySet().removeAll(locallyRemoved);
+
+        synchronized (tickLock) {
+            for (int i = fanCurves.size() - 1; i >= 0; i--) {
+                FanCurve fanCurve = fanCurves.get(i);
+                FanCurve loaded = loadedByFanId.remove(fanCurve.getFanController().getId());
+                if (locallyEdited.contains(fanCurve)) {
+                    continue;
+                }
+
+                if (loaded == null) {
+                    fanCurves.remove(i);
+                } else if (!loaded.getSensor().equals(fanCurve.getSensor())) {
+                    fanCurves.set(i, loaded);
+                } else if (!sameChangePoints(fanCurve.getChangePoints(), loaded.getChangePoints())) {
+                    fanCurve.getChangePoints().setAll(loaded.getChangePoints());
+                }
+            }
+            fanCurves.addAll(loadedByFanId.values());
+        }
+
+        /* The new fan curves are already in the storage. */
+        dirtyCurves.retainAll(locallyEdited);
+        removedFanIds.retainAll(locallyRemoved);
+
+        unboundCurves.clear();
+        unboundCurves.addAll(UnboundFanCurve.notReplacedBy(loadedUnboundFanCurves, fanCurves));
+        hasUnboundCurves = !unboundCurves.isEmpty();
+    }
+
+    private static boolean sameChangePoints(List<Mapping> a, List<Mapping> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (Double.compare(a.get(i).key, b.get(i).key) != 0 || Double.compare(a.get(i).value, b.get(i).value) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Runs an edit of the fan curves on the fan curve executor. */
+    void editFanCurves(Runnable edit) {
+        try {
+            fanCurveExecutor.execute(edit);
+        } catch (RejectedExecutionException ex) {
+            /* The updater has been stopped, so nothing uses the fan curves
+             * anymore. */
+        }
+    }
+
+    /**
+     * Returns the loaded fan curves whose hardware is not present.
+     *
+     * @return an unmodifiable list of unbound fan curves.
+     */
+    public List<UnboundFanCurve> getUnboundCurves() {
+        return Collections.unmodifiableList(new ArrayList<>(unboundCurves));
+    }
+
+    /**
+     * Sets the executor that edits the list of fan curves when the service
+     * does it by itself, for example when binding fan curves whose hardware
+     * has appeared, or when a ProfileWatcher applies a reloaded profile. A GUI
+     * should set this to run on its own thread. By default edits are queued
+     * to the updater thread, so they never run at the same time as an
+     * update.
+     *
+     * @param fanCurveExecutor the executor for editing the fan curves.
+     */
+    public void setFanCurveExecutor(Executor fanCurveExecutor) {
+        this.fanCurveExecutor = fanCurveExecutor;
+    }
+
+    /**
+     * Stores the fan curves into the storage. Only the fan curves that have
+     * changed since the last store are written, if the storage supports it.
      *
      * @throws IOException
      */
     public void storeToStorage() throws IOException {
-        storage.store(fanCurves);
+        List<FanCurve> changedCurves = new ArrayList<>();
+        for (FanCurve fanCurve : fanCurves) {
+            if (dirtyCurves.contains(fanCurve)) {
+                changedCurves.add(fanCurve);
+            }
+        }
+
+        storage.storeChanges(fanCurves, changedCurves, new HashSet<>(removedFanIds));
+
+        dirtyCurves.clear();
+        removedFanIds.clear();
     }
 
     /**
@@ -85,34 +490,266 @@ public class FanningService {
      * @param updateRate how often to update.
      */
     public void initUpdater(Duration updateRate) {
-        /* Making a daemon thread, so it will automatically die when the main
-         * thread dies. */
-        Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
-            Thread thread = Executors.defaultThreadFactory().newThread(r);
-            thread.setDaemon(true);
-            return thread;
-        }).scheduleAtFixedRate(this::update, 0, updateRate.toNanos(), TimeUnit.NANOSECONDS);
+        metrics.setTickSchedule(updateRate.toNanos(), updateRate.toNanos());
+        updater.scheduleAtFixedRate(this::update, 0, updateRate.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the update loop and waits for a running update to finish. The
+     * update loop can't be started again after this.
+     *
+     * @throws InterruptedException
+     */
+    public void stopUpdater() throws InterruptedException {
+        hardwareManager.removeStructureListener(structureListener);
+        updater.shutdownNow();
+        updater.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Starts the update loop in event-driven mode. A fan is recalculated only
+     * when the value of its fan curve's sensor changes or when the fan curves
+     * change. The hardware is still queried at the given interval as a
+     * fallback, so this works also with hardware that only updates sensor
+     * values when asked to.
+     *
+     * @param maxInterval the longest time between two hardware queries.
+     */
+    public void initEventDrivenUpdater(Duration maxInterval) {
+        metrics.setTickSchedule(maxInterval.toNanos(), maxInterval.toNanos());
+        eventDriven = true;
+        updateSensorListeners();
+        updater.scheduleWithFixedDelay(this::update, 0, maxInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts the update loop in adaptive mode. Every sensor is polled on its
+     * own schedule: sensors whose value changes are polled at the minimum
+     * interval, and sensors that stay stable are polled less and less often,
+     * down to the maximum interval. Fans are recalculated when their sensor
+     * value or fan curve changes, like in event-driven mode.
+     *
+     * @param minInterval the polling interval of changing sensors.
+     * @param maxInterval the polling interval of stable sensors.
+     */
+    public void initAdaptiveUpdater(Duration minInterval, Duration maxInterval) {
+        AdaptivePoller poller = new AdaptivePoller(hardwareManager, reportedValues, minInterval.toNanos(), maxInterval.toNanos());
+        poller.setSensors(polledSensors, System.nanoTime());
+        adaptivePoller = poller;
+        metrics.setTickSchedule(minInterval.toNanos(), maxInterval.toNanos());
+
+        eventDriven = true;
+        updateSensorListeners();
+        updater.execute(this::rescheduleAdaptivePoll);
+    }
+
+    private void adaptivePoll() {
+        TickEvent tickEvent = beginTickEvent();
+        long start = System.nanoTime();
+        long allocatedAtStart = metrics.currentThreadAllocatedBytes();
+        Set<Sensor> changed = adaptivePoller.pollDue(start, sensorDeadband);
+        metrics.recordHardwareRead(System.nanoTime() - start);
+
+        /* These changes are handled now, no need to recalculate them again. */
+        pendingSensors.removeAll(changed);
+
+        controlFans(changed);
+        metrics.recordTick(start, System.nanoTime(), allocatedAtStart);
+        commitTickEvent(tickEvent, "adaptive poll", changed.size());
+        scheduleAdaptivePoll();
+    }
+
+    private void scheduleAdaptivePoll() {
+        long delay = adaptivePoller.nanosUntilNextPoll(System.nanoTime());
+        nextAdaptivePoll = updater.schedule(this::adaptivePoll, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /* Moves the next poll earlier if a new sensor has become due. Runs on the
+     * updater thread, so it cannot race with a poll. */
+    private void rescheduleAdaptivePoll() {
+        if (nextAdaptivePoll == null || nextAdaptivePoll.cancel(false)) {
+            scheduleAdaptivePoll();
+        }
     }
 
     void update() {
-        hardwareManager.updateHardwareTree();
-        for (FanController fan : hardwareManager.getAllFanControllers()) {
-            Optional<FanCurve> optFanCurve = findCurveOfFan(fan);
-            if (optFanCurve.isPresent()) {
-                FanCurve fanCurve = optFanCurve.get();
-                double sensorValue = fanCurve.getSensor().valueProperty().get();
-                fan.controlledValueProperty().set(fanCurve.getFanValueAt(sensorValue));
-            } else {
-                fan.controlledValueProperty().set(OptionalDouble.empty());
+        TickEvent tickEvent = beginTickEvent();
+        long start = System.nanoTime();
+        long allocatedAtStart = metrics.currentThreadAllocatedBytes();
+        Set<Sensor> sensors = polledSensors;
+        hardwareManager.updateSensors(sensors, sensorDeadband);
+        metrics.recordHardwareRead(System.nanoTime() - start);
+
+        /* Not every manager compares with the last reported value, so the
+         * changes are decided here. */
+        Set<Sensor> changed = reportedValues.report(sensors, sensorDeadband);
+
+        /* These changes are handled now, no need to recalculate them again. */
+        pendingSensors.removeAll(changed);
+
+        controlFans(changed);
+        metrics.recordTick(start, System.nanoTime(), allocatedAtStart);
+        commitTickEvent(tickEvent, "poll", changed.size());
+    }
+
+    /* The flight recorder events are null when the JVM or the build does not
+     * have the event API. */
+    private static TickEvent beginTickEvent() {
+        TickEvent event = FlightRecorderEvents.newTickEvent();
+        if (event != null) {
+            event.begin();
+        }
+        return event;
+    }
+
+    private static void commitTickEvent(TickEvent event, String trigger, int changedSensors) {
+        if (event != null) {
+            event.end();
+            event.commit(trigger, changedSensors);
+        }
+    }
+
+    private static double evaluateCurve(FanCurve fanCurve, double sensorValue) {
+        CurveEvaluationEvent event = FlightRecorderEvents.newCurveEvaluationEvent();
+        if (event != null) {
+            event.begin();
+        }
+
+        double fanValue = fanCurve.getFanValueAtOrElse(sensorValue, Double.NaN);
+
+        if (event != null) {
+            event.end();
+            event.commit(fanCurve.getSensor().getId(), sensorValue, fanCurve.getFanController().getId(), fanValue);
+        }
+        return fanValue;
+    }
+
+    private void controlFans(Set<Sensor> changedSensors) {
+        /* Profile reloads are applied under this lock, so every tick sees
+         * either the old or the new fan curves, never a mix of them. */
+        synchronized (tickLock) {
+            boolean allChanged = curvesChanged.getAndSet(false);
+
+            /* If no fan curve or sensor value has changed, all fans already have
+             * the right value. */
+            if (!allChanged && changedSensors.isEmpty()) {
+                return;
             }
+
+            for (FanController fan : hardwareManager.getAllFanControllers()) {
+                FanCurve fanCurve = curvesByFan.get(fan);
+                if (fanCurve != null) {
+                    if (allChanged || changedSensors.contains(fanCurve.getSensor())) {
+                        double sensorValue = fanCurve.getSensor().getValue();
+                        setFanValue(fan, evaluateCurve(fanCurve, sensorValue));
+                    }
+                } else if (allChanged) {
+                    setFanValue(fan, Double.NaN);
+                }
+            }
+        }
+
+        publishSnapshot();
+    }
+
+    private void setFanValue(FanController fan, double value) {
+        FanActuationEvent event = FlightRecorderEvents.newFanActuationEvent();
+        if (event != null) {
+            event.begin();
+        }
+
+        long start = System.nanoTime();
+        boolean success = fan.setControlledValue(value);
+        metrics.recordFanWrite(fan, System.nanoTime() - start);
+
+        if (event != null) {
+            event.end();
+            event.commit(fan.getId(), value, success);
         }
     }
 
+    private void publishSnapshot() {
+        HardwareSnapshot newSnapshot = HardwareSnapshot.of(hardwareManager.getHardwareIndex(), snapshot.getSequence() + 1);
+        snapshot = newSnapshot;
+        for (Consumer<HardwareSnapshot> listener : snapshotListeners) {
+            listener.accept(newSnapshot);
+        }
+    }
+
+    /**
+     * Returns the latest snapshot of the sensor values and controlled fan
+     * values. This can be called from any thread.
+     *
+     * @return the latest snapshot.
+     */
+    public HardwareSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds a listener that is called on the updater thread every time a new
+     * snapshot is published. The listener must not block, and it must not
+     * touch the GUI directly.
+     *
+     * @param listener the listener to add.
+     */
+    public void addSnapshotListener(Consumer<HardwareSnapshot> listener) {
+        snapshotListeners.add(listener);
+    }
+
+    /**
+     * Removes a snapshot listener.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeSnapshotListener(Consumer<HardwareSnapshot> listener) {
+        snapshotListeners.remove(listener);
+    }
+
     public HardwareManager getHardwareManager() {
         return hardwareManager;
     }
 
-    public ListProperty<FanCurve> fanCurvesProperty() {
+    /**
+     * Returns the measurements of the update loop. They are collected always,
+     * and can be published over JMX with {@link FanningMetrics#register()}.
+     *
+     * @return the metrics of this service.
+     */
+    public FanningMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the sensors that should be fetched from the hardware on every
+     * update, in addition to the sensors used by the fan curves. Sensors that
+     * are neither used nor monitored are not updated at all.
+     *
+     * @param sensors the sensors to monitor.
+     */
+    public void setMonitoredSensors(Collection<Sensor> sensors) {
+        monitoredSensors = Collections.unmodifiableSet(new HashSet<>(sensors));
+        updatePolledSensors();
+    }
+
+    /**
+     * Sets how much a sensor value must change before the fans depending on it
+     * are updated. The default is 0, so any change updates the fans.
+     *
+     * @param deadband the minimum change in sensor values.
+     */
+    public void setSensorDeadband(double deadband) {
+        sensorDeadband = deadband;
+    }
+
+    /**
+     * Returns the fan curves that control the fans. Changes to the list and to
+     * the change points of the fan curves take effect on the next update. The
+     * list must only be modified from the thread of the fan curve executor.
+     *
+     * @return the list of fan curves.
+     */
+    public ListenableList<FanCurve> getFanCurves() {
         return fanCurves;
     }
 
@@ -123,11 +760,6 @@ public class FanningService {
      * @return the fan curve which controls the fan, or empty if there is none.
      */
     public Optional<FanCurve> findCurveOfFan(FanController fan) {
-        for (FanCurve curve : fanCurves) {
-            if (curve.getFanController().equals(fan)) {
-                return Optional.of(curve);
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(curvesByFan.get(fan));
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+
+/**
+ * The sensor values and controlled fan values of the hardware at one point in
+ * time. Snapshots are published by the updater thread and can be read from
+ * any thread. Objects are immutable.
+ *
+ * @author Tuupertunut
+ */
+public class HardwareSnapshot {
+
+    private final HardwareIndex hardwareIndex;
+    private final double[] sensorValues;
+    private final double[] controlledValues;
+    private final long sequence;
+
+    /**
+     * Creates a new snapshot. The arrays must not be modified afterwards.
+     *
+     * @param hardwareIndex the index whose element order the arrays follow.
+     * @param sensorValues the values of all sensors.
+     * @param controlledValues the controlled values of all fan controllers,
+     * NaN if not controlled.
+     * @param sequence a number that grows with every published snapshot.
+     */
+    HardwareSnapshot(HardwareIndex hardwareIndex, double[] sensorValues, double[] controlledValues, long sequence) {
+        this.hardwareIndex = hardwareIndex;
+        this.sensorValues = sensorValues;
+        this.controlledValues = controlledValues;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Takes a snapshot of the current values in the hardware tree.
+     *
+     * @param hardwareIndex the hardware to take the snapshot of.
+     * @param sequence a number that grows with every published snapshot.
+     * @return a new snapshot.
+     */
+    static HardwareSnapshot of(HardwareIndex hardwareIndex, long sequence) {
+        double[] sensorValues = new double[hardwareIndex.getAllSensors().size()];
+        for (int i = 0; i < sensorValues.length; i++) {
+            sensorValues[i] = hardwareIndex.getAllSensors().get(i).getValue();
+        }
+
+        double[] controlledValues = new double[hardwareIndex.getAllFanControllers().size()];
+        for (int i = 0; i < controlledValues.length; i++) {
+            controlledValues[i] = hardwareIndex.getAllFanControllers().get(i).getControlledValue();
+        }
+
+        return new HardwareSnapshot(hardwareIndex, sensorValues, controlledValues, sequence);
+    }
+
+    /**
+     * Returns the index of the hardware tree this snapshot was taken from.
+     *
+     * @return the hardware index.
+     */
+    public HardwareIndex getHardwareIndex() {
+        return hardwareIndex;
+    }
+
+    /**
+     * Returns a number that grows with every published snapshot.
+     *
+     * @return the sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the value of the sensor at the given position in the hardware
+     * index.
+     *
+     * @param position the position of the sensor.
+     * @return the value of the sensor.
+     */
+    public double getSensorValue(int position) {
+        return sensorValues[position];
+    }
+
+    /**
+     * Returns the value of the sensor.
+     *
+     * @param sensor
+     * @return the value of the sensor, or NaN if it is not in the snapshot.
+     */
+    public double getSensorValue(Sensor sensor) {
+        int position = hardwareIndex.indexOfSensor(sensor);
+        return position >= 0 ? sensorValues[position] : Double.NaN;
+    }
+
+    /**
+     * Returns the controlled value of the fan controller at the given position
+     * in the hardware index.
+     *
+     * @param position the position of the fan controller.
+     * @return the controlled value, or NaN if the fan is not controlled.
+     */
+    public double getControlledValue(int position) {
+        return controlledValues[position];
+    }
+
+    /**
+     * Returns the controlled value of the fan controller.
+     *
+     * @param fan
+     * @return the controlled value, or NaN if the fan is not controlled or it
+     * is not in the snapshot.
+     */
+    public double getControlledValue(FanController fan) {
+        int position = hardwareIndex.indexOfFanController(fan);
+        return position >= 0 ? controlledValues[position] : Double.NaN;
+    }
+}
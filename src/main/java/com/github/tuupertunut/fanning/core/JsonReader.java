@@ -0,0 +1,436 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonException.Problems;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A streaming JSON reader that reads one token at a time from a Reader. Only
+ * a small buffer is held in memory, no matter how large the document is.
+ * Numbers are parsed directly into doubles.
+ *
+ * Values are read in document order with {@link #beginArray()},
+ * {@link #hasNext()}, {@link #nextName()}, {@link #nextString()},
+ * {@link #nextDouble()} and so on. Any violation of the JSON syntax or of the
+ * expected structure throws a JsonException.
+ *
+ * @author Tuupertunut
+ */
+class JsonReader {
+
+    private static final int BEFORE_VALUE = 0;
+    private static final int AFTER_VALUE = 1;
+
+    /* Powers of ten that are exactly representable as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    /* Number of characters consumed before the current buffer. */
+    private int bufferStart = 0;
+
+    /* Whether a value has already been read on each nesting level. The
+     * document itself is level 0. */
+    private int[] states = new int[16];
+    private int depth = 0;
+
+    /* Reused for collecting number characters. */
+    private final StringBuilder numberChars = new StringBuilder();
+
+    JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Begins reading a JSON array.
+     */
+    void beginArray() throws IOException, JsonException {
+        beginValue();
+        expect('[');
+        push();
+    }
+
+    /**
+     * Ends reading a JSON array. All elements must have been read.
+     */
+    void endArray() throws IOException, JsonException {
+        expect(']');
+        pop();
+    }
+
+    /**
+     * Begins reading a JSON object.
+     */
+    void beginObject() throws IOException, JsonException {
+        beginValue();
+        expect('{');
+        push();
+    }
+
+    /**
+     * Ends reading a JSON object. All members must have been read.
+     */
+    void endObject() throws IOException, JsonException {
+        expect('}');
+        pop();
+    }
+
+    /**
+     * Checks whether the current array or object has more elements. Consumes
+     * the comma between elements.
+     *
+     * @return true if there is another element.
+     */
+    boolean hasNext() throws IOException, JsonException {
+        int c = peekNonWhitespace();
+        if (c == ']' || c == '}') {
+            return false;
+        }
+        if (states[depth] == AFTER_VALUE) {
+            expect(',');
+            states[depth] = BEFORE_VALUE;
+
+            c = peekNonWhitespace();
+            if (c == ']' || c == '}') {
+                throw unexpectedCharacter(c);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the name of the next object member and the colon after it.
+     *
+     * @return the member name.
+     */
+    String nextName() throws IOException, JsonException {
+        if (!hasNext()) {
+            throw unexpectedCharacter(peekNonWhitespace());
+        }
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads a string value.
+     *
+     * @return the string.
+     */
+    String nextString() throws IOException, JsonException {
+        beginValue();
+        String string = readString();
+        states[depth] = AFTER_VALUE;
+        return string;
+    }
+
+    /**
+     * Reads a number value.
+     *
+     * @return the number as a double.
+     */
+    double nextDouble() throws IOException, JsonException {
+        beginValue();
+        double number = readNumber();
+        states[depth] = AFTER_VALUE;
+        return number;
+    }
+
+    /**
+     * Skips the next value, including any nested arrays and objects.
+     */
+    void skipValue() throws IOException, JsonException {
+        beginValue();
+        int c = peekNonWhitespace();
+        switch (c) {
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                return;
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                return;
+            case '"':
+                readString();
+                break;
+            case 't':
+                readLiteral("true");
+                break;
+            case 'f':
+                readLiteral("false");
+                break;
+            case 'n':
+                readLiteral("null");
+                break;
+            default:
+                readNumber();
+                break;
+        }
+        states[depth] = AFTER_VALUE;
+    }
+
+    /**
+     * Checks that there is nothing but whitespace left in the document.
+     */
+    void endDocument() throws IOException, JsonException {
+        int c = peekNonWhitespace();
+        if (c != -1) {
+            throw unexpectedCharacter(c);
+        }
+    }
+
+    private void beginValue() throws IOException, JsonException {
+        if (depth > 0 && states[depth] == AFTER_VALUE) {
+            throw unexpectedCharacter(peekNonWhitespace());
+        }
+    }
+
+    private void push() {
+        depth++;
+        if (depth == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[depth] = BEFORE_VALUE;
+    }
+
+    private void pop() {
+        depth--;
+        states[depth] = AFTER_VALUE;
+    }
+
+    private String readString() throws IOException, JsonException {
+        expect('"');
+
+        StringBuilder string = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return string.toString();
+            } else if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        string.append((char) escaped);
+                        break;
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'u':
+                        int codeUnit = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int hexChar = read();
+                            int digit = Character.digit(hexChar, 16);
+                            if (digit < 0) {
+                                throw unexpectedCharacter(hexChar);
+                            }
+                            codeUnit = codeUnit * 16 + digit;
+                        }
+                        string.append((char) codeUnit);
+                        break;
+                    default:
+                        throw unexpectedCharacter(escaped);
+                }
+            } else if (c == -1 || c < 0x20) {
+                throw unexpectedCharacter(c);
+            } else {
+                string.append((char) c);
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException, JsonException {
+        for (int i = 0; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                throw unexpectedCharacter(c);
+            }
+        }
+    }
+
+    /* Parses a number without going through BigDecimal. Numbers with at most
+     * 15 significant digits and a small exponent are converted exactly with a
+     * single multiplication or division, others fall back to
+     * Double.parseDouble. */
+    private double readNumber() throws IOException, JsonException {
+        peekNonWhitespace();
+        numberChars.setLength(0);
+
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fastPath = true;
+
+        if (peek() == '-') {
+            negative = true;
+            numberChars.append('-');
+            pos++;
+        }
+
+        int integerDigits = readDigits();
+        if (integerDigits == 0) {
+            throw unexpectedCharacter(peek());
+        }
+        for (int i = negative ? 1 : 0; i < numberChars.length(); i++) {
+            mantissa = mantissa * 10 + (numberChars.charAt(i) - '0');
+        }
+        digits += integerDigits;
+
+        int c = peek();
+        if (c == '.') {
+            numberChars.append('.');
+            pos++;
+            int start = numberChars.length();
+            int fractionDigits = readDigits();
+            if (fractionDigits == 0) {
+                throw unexpectedCharacter(peek());
+            }
+            for (int i = start; i < numberChars.length(); i++) {
+                mantissa = mantissa * 10 + (numberChars.charAt(i) - '0');
+            }
+            digits += fractionDigits;
+            exponent -= fractionDigits;
+            c = peek();
+        }
+
+        if (c == 'e' || c == 'E') {
+            fastPath = false;
+            numberChars.append('e');
+            pos++;
+            c = peek();
+            if (c == '-' || c == '+') {
+                numberChars.append((char) c);
+                pos++;
+            }
+            if (readDigits() == 0) {
+                throw unexpectedCharacter(peek());
+            }
+        }
+
+        /* Leading zeros do not count as significant digits, but they are rare
+         * enough that the digit limit is applied to all of them. */
+        if (fastPath && digits <= 15 && -exponent < POWERS_OF_TEN.length) {
+            double value = (double) mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(numberChars.toString());
+    }
+
+    /* Appends consecutive digits to numberChars and returns their count. */
+    private int readDigits() throws IOException {
+        int count = 0;
+        int c = peek();
+        while (c >= '0' && c <= '9') {
+            numberChars.append((char) c);
+            pos++;
+            count++;
+            c = peek();
+        }
+        return count;
+    }
+
+    private void expect(char expected) throws IOException, JsonException {
+        int c = peekNonWhitespace();
+        if (c != expected) {
+            throw unexpectedCharacter(c);
+        }
+        pos++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            pos++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            pos++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+
+        int count = in.read(buffer);
+        if (count <= 0) {
+            return false;
+        }
+        limit = count;
+        return true;
+    }
+
+    private JsonException unexpectedCharacter(int c) {
+        if (c == -1) {
+            return new JsonException(bufferStart + pos, Problems.UNEXPECTED_TOKEN, "end of input");
+        }
+        return new JsonException(bufferStart + pos, Problems.UNEXPECTED_CHARACTER, (char) c);
+    }
+}
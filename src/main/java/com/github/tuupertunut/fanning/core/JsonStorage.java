@@ -23,31 +23,59 @@
  */
 package com.github.tuupertunut.fanning.core;
 
-import com.github.cliftonlabs.json_simple.JsonArray;
 import com.github.cliftonlabs.json_simple.JsonException;
-import com.github.cliftonlabs.json_simple.JsonObject;
-import com.github.cliftonlabs.json_simple.Jsoner;
-import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.cliftonlabs.json_simple.JsonException.Problems;
 import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
-import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.FilterWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
- * A storage that stores fan curves into a JSON file.
+ * A storage that stores fan curves into a JSON file. Fan curves whose
+ * hardware is not present are kept as unbound fan curves. Changes to single fan
+ * curves are appended to a journal file next to the JSON file, which is
+ * compacted back into the JSON file when it grows large.
  *
  * @author Tuupertunut
  */
 public class JsonStorage implements Storage {
 
+    /* The journal is compacted when it has more entries than this or than
+     * there are fan curves, whichever is larger. */
+    private static final int MIN_COMPACTION_ENTRIES = 32;
+
     private final HardwareManager hwManager;
     private final Path filePath;
 
+    /* Changes made after the JSON file was written are appended to a journal
+     * next to it. The first line of the journal holds the checksum of the
+     * JSON file it applies to. These describe the files on disk and are -1
+     * entries when the files have not been loaded or stored yet. */
+    private final Path journalPath;
+    private long baseChecksum;
+    private int journalEntries;
+
+    /* Fan curves whose hardware was not present when they were loaded. They
+     * are kept so that they are not lost when the fan curves are stored. */
+    private List<UnboundFanCurve> unboundFanCurves;
+
     /**
      * Creates a new JsonStorage.
      *
@@ -58,89 +86,471 @@ public class JsonStorage implements Storage {
     public JsonStorage(HardwareManager hwManager, Path filePath) {
         this.hwManager = hwManager;
         this.filePath = filePath;
+        this.journalPath = filePath == null ? null : filePath.resolveSibling(filePath.getFileName() + ".journal");
+        this.baseChecksum = 0;
+        this.journalEntries = -1;
+        this.unboundFanCurves = new ArrayList<>();
     }
 
     List<FanCurve> fromJson(String json) throws JsonException {
-        JsonArray jsonFanCurves = (JsonArray) Jsoner.deserialize(json);
+        try {
+            return bind(read(new StringReader(json)));
+        } catch (IOException ex) {
+            /* StringReader never throws. */
+            throw new JsonException(0, Problems.IOEXCEPTION, ex);
+        }
+    }
+
+    String toJson(List<FanCurve> fanCurves) {
+        StringWriter json = new StringWriter();
+        try {
+            write(fanCurves, json);
+        } catch (IOException ex) {
+            /* StringWriter never throws. */
+            throw new UncheckedIOException(ex);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Reads fan curves from JSON one token at a time, without building the
+     * whole document in memory. Unknown members are skipped.
+     *
+     * @param in the reader to read the JSON from.
+     * @return a list of unbound fan curves.
+     * @throws IOException if there was IOException reading.
+     * @throws JsonException if the JSON was invalid.
+     */
+    static List<UnboundFanCurve> read(Reader in) throws IOException, JsonException {
+        JsonReader reader = new JsonReader(in);
+
+        List<UnboundFanCurve> fanCurves = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            fanCurves.add(readFanCurve(reader));
+        }
+        reader.endArray();
+        reader.endDocument();
 
-        List<FanCurve> fanCurves = new ArrayList<>();
-        for (Object jsonFanCurveObj : jsonFanCurves) {
-            JsonObject jsonFanCurve = (JsonObject) jsonFanCurveObj;
+        return fanCurves;
+    }
+
+    /* Binds the fan curves to the hardware in one batch. The fan curves whose
+     * hardware is not present are kept as unbound. */
+    private synchronized List<FanCurve> bind(List<UnboundFanCurve> fanCurves) {
+        List<UnboundFanCurve> stillUnbound = new ArrayList<>();
+        List<FanCurve> boundFanCurves = UnboundFanCurve.bindAll(fanCurves, hwManager.getHardwareIndex(), stillUnbound);
+        unboundFanCurves = stillUnbound;
+        return boundFanCurves;
+    }
 
-            Sensor sensor = hwManager.findSensorById((String) jsonFanCurve.get("sensor")).get();
-            FanController fanController = hwManager.findFanControllerById((String) jsonFanCurve.get("fanController")).get();
+    /**
+     * Returns the fan curves that were loaded but whose hardware was not
+     * present. They are stored along with the bound fan curves until a fan
+     * curve for the same fan controller is stored.
+     *
+     * @return a list of unbound fan curves.
+     */
+    @Override
+    public synchronized List<UnboundFanCurve> getUnboundFanCurves() {
+        return new ArrayList<>(unboundFanCurves);
+    }
 
-            List<Mapping> changePoints = new ArrayList<>();
-            for (Object jsonMappingObj : (JsonArray) jsonFanCurve.get("changePoints")) {
-                JsonObject jsonMapping = (JsonObject) jsonMappingObj;
+    @Override
+    public synchronized void setUnboundFanCurves(List<UnboundFanCurve> unboundFanCurves) {
+        this.unboundFanCurves = new ArrayList<>(unboundFanCurves);
+    }
 
-                double key = ((BigDecimal) jsonMapping.get("key")).doubleValue();
-                double value = ((BigDecimal) jsonMapping.get("value")).doubleValue();
+    private static UnboundFanCurve readFanCurve(JsonReader reader) throws IOException, JsonException {
+        String sensorId = null;
+        String fanControllerId = null;
+        List<Mapping> changePoints = new ArrayList<>();
 
-                changePoints.add(new Mapping(key, value));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sensor":
+                    sensorId = reader.nextString();
+                    break;
+                case "fanController":
+                    fanControllerId = reader.nextString();
+                    break;
+                case "changePoints":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        changePoints.add(readMapping(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
+        }
+        reader.endObject();
 
-            fanCurves.add(new FanCurve(sensor, fanController, changePoints));
+        if (sensorId == null || fanControllerId == null) {
+            throw new JsonException(0, Problems.UNEXPECTED_TOKEN, "fan curve without sensor or fan controller");
         }
-        return fanCurves;
+        return new UnboundFanCurve(sensorId, fanControllerId, changePoints);
     }
 
-    String toJson(List<FanCurve> fanCurves) {
-        JsonArray jsonFanCurves = new JsonArray();
+    private static Mapping readMapping(JsonReader reader) throws IOException, JsonException {
+        double key = Double.NaN;
+        double value = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "key":
+                    key = reader.nextDouble();
+                    break;
+                case "value":
+                    value = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return new Mapping(key, value);
+    }
+
+    /**
+     * Writes fan curves as JSON one token at a time.
+     *
+     * @param fanCurves a list of fan curves.
+     * @param out the writer to write the JSON to.
+     * @throws IOException if there was IOException writing.
+     */
+    void write(List<FanCurve> fanCurves, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+
+        /* Members are written in the same order as json-simple writes them, so
+         * that files stay identical to the ones written by earlier versions. */
+        writer.beginArray();
         for (FanCurve fanCurve : fanCurves) {
-            JsonObject jsonFanCurve = new JsonObject();
+            writeFanCurve(writer, fanCurve.getSensor().getId(), fanCurve.getFanController().getId(), fanCurve.getChangePoints());
+        }
+        for (UnboundFanCurve fanCurve : unboundFanCurvesNotIn(fanCurves)) {
+            writeFanCurve(writer, fanCurve.getSensorId(), fanCurve.getFanControllerId(), fanCurve.getChangePoints());
+        }
+        writer.endArray();
+    }
 
-            jsonFanCurve.put("sensor", fanCurve.getSensor().getId());
-            jsonFanCurve.put("fanController", fanCurve.getFanController().getId());
+    private synchronized List<UnboundFanCurve> unboundFanCurvesNotIn(List<FanCurve> fanCurves) {
+        return UnboundFanCurve.notReplacedBy(unboundFanCurves, fanCurves);
+    }
+
+    private static void writeFanCurve(JsonWriter writer, String sensorId, String fanControllerId, List<Mapping> changePoints) throws IOException {
+        writer.beginObject();
 
-            JsonArray jsonChangePoints = new JsonArray();
-            for (Mapping mapping : fanCurve.changePointsProperty()) {
-                JsonObject jsonMapping = new JsonObject();
+        writer.name("changePoints").beginArray();
+        for (Mapping mapping : changePoints) {
+            writer.beginObject();
+            writer.name("value").value(mapping.value);
+            writer.name("key").value(mapping.key);
+            writer.endObject();
+        }
+        writer.endArray();
 
-                jsonMapping.put("key", mapping.key);
-                jsonMapping.put("value", mapping.value);
+        writer.name("fanController").value(fanControllerId);
+        writer.name("sensor").value(sensorId);
 
-                jsonChangePoints.add(jsonMapping);
+        writer.endObject();
+    }
+
+    private static void upsert(List<UnboundFanCurve> fanCurves, UnboundFanCurve fanCurve) {
+        String fanControllerId = fanCurve.getFanControllerId();
+        for (int i = 0; i < fanCurves.size(); i++) {
+            if (fanCurves.get(i).getFanControllerId().equals(fanControllerId)) {
+                fanCurves.set(i, fanCurve);
+                return;
             }
-            jsonFanCurve.put("changePoints", jsonChangePoints);
+        }
+        fanCurves.add(fanCurve);
+    }
+
+    private static void remove(List<UnboundFanCurve> fanCurves, String fanControllerId) {
+        fanCurves.removeIf((UnboundFanCurve fanCurve) -> fanCurve.getFanControllerId().equals(fanControllerId));
+    }
+
+    /* Applies the journal on top of the fan curves loaded from the JSON file.
+     * Returns the number of entries in the journal, or -1 if the journal
+     * ends with an incomplete entry and must not be appended to. */
+    private int replayJournal(List<UnboundFanCurve> fanCurves) throws IOException, JsonException {
+        if (Files.notExists(journalPath)) {
+            return 0;
+        }
+        String journal = new String(Files.readAllBytes(journalPath), StandardCharsets.UTF_8);
 
-            jsonFanCurves.add(jsonFanCurve);
+        /* Only lines ending in a newline are complete. An incomplete last
+         * line is left by a crash in the middle of an append. */
+        int lineEnd = journal.indexOf('\n');
+        if (lineEnd < 0) {
+            return -1;
         }
 
-        return Jsoner.serialize(jsonFanCurves);
+        /* A journal that was written for another version of the JSON file is
+         * left over from a crash in the middle of a compaction. Everything in
+         * it is already in the JSON file. */
+        if (parseJournalHeader(journal.substring(0, lineEnd)) != baseChecksum) {
+            return 0;
+        }
+
+        int entries = 0;
+        int lineStart = lineEnd + 1;
+        while ((lineEnd = journal.indexOf('\n', lineStart)) >= 0) {
+            JsonReader reader = new JsonReader(new StringReader(journal.substring(lineStart, lineEnd)));
+            reader.beginObject();
+            switch (reader.nextName()) {
+                case "put":
+                    upsert(fanCurves, readFanCurve(reader));
+                    break;
+                case "remove":
+                    remove(fanCurves, reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+            reader.endObject();
+            reader.endDocument();
+
+            entries++;
+            lineStart = lineEnd + 1;
+        }
+        return lineStart == journal.length() ? entries : -1;
     }
 
     /**
-     * Loads fan curves from the JSON file. If the file doesn't exist yet,
-     * returns an empty list.
+     * Loads fan curves from the JSON file and applies the changes in the
+     * journal. If the file doesn't exist yet, returns an empty list.
      *
      * @return a list of fan curves.
      * @throws IOException if there was IOException reading the file.
      * @throws JsonException if the JSON was invalid.
      */
     @Override
-    public List<FanCurve> load() throws IOException, JsonException {
-        if (Files.notExists(filePath)) {
-            return Arrays.asList();
+    public synchronized List<FanCurve> load() throws IOException, JsonException {
+        List<UnboundFanCurve> fanCurves;
+        CRC32 checksum = new CRC32();
+        if (Files.exists(filePath)) {
+            try (Reader in = new ChecksumReader(Files.newBufferedReader(filePath), checksum)) {
+                fanCurves = read(in);
+            }
+        } else {
+            fanCurves = new ArrayList<>();
         }
+        baseChecksum = checksum.getValue();
 
-        String json = String.join("\n", Files.readAllLines(filePath));
-
-        return fromJson(json);
+        journalEntries = replayJournal(fanCurves);
+        return bind(fanCurves);
     }
 
     /**
      * Stores fan curves into the JSON file. This will overwrite any previous
-     * content in the file.
+     * content in the file and clear the journal. The file is replaced
+     * atomically, so it is never left half-written.
      *
      * @param fanCurves a list of fan curves.
      * @throws IOException if there was IOException writing the file.
      */
     @Override
-    public void store(List<FanCurve> fanCurves) throws IOException {
-        String json = toJson(fanCurves);
+    public synchronized void store(List<FanCurve> fanCurves) throws IOException {
+        /* A journal left next to the new JSON file is ignored on the next load
+         * because its checksum doesn't match. The only exception is when the
+         * new JSON file has the same content as the one the journal was
+         * written for, so then the journal must be deleted first. */
+        if (Files.exists(journalPath)) {
+            CRC32 checksum = new CRC32();
+            writeWithChecksum(fanCurves, new DiscardingWriter(), checksum);
+            if (readJournalBase() == checksum.getValue()) {
+                Files.delete(journalPath);
+            }
+        }
+
+        CRC32 checksum = new CRC32();
+        AtomicFiles.write(filePath, (Writer out) -> writeWithChecksum(fanCurves, out, checksum));
+        baseChecksum = checksum.getValue();
+
+        Files.deleteIfExists(journalPath);
+        journalEntries = 0;
+        unboundFanCurves = unboundFanCurvesNotIn(fanCurves);
+    }
+
+    private void writeWithChecksum(List<FanCurve> fanCurves, Writer out, CRC32 checksum) throws IOException {
+        Writer checkedOut = new ChecksumWriter(out, checksum);
+        write(fanCurves, checkedOut);
+        checkedOut.write(System.lineSeparator());
+        checkedOut.flush();
+    }
+
+    /* Returns the checksum in the journal header, or -1 if the journal has no
+     * complete header. */
+    private long readJournalBase() throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(journalPath)) {
+            String line = in.readLine();
+            return line == null ? -1 : parseJournalHeader(line);
+        } catch (JsonException ex) {
+            return -1;
+        }
+    }
+
+    private static long parseJournalHeader(String line) throws IOException, JsonException {
+        JsonReader header = new JsonReader(new StringReader(line));
+        header.beginObject();
+        if (!header.nextName().equals("base")) {
+            return -1;
+        }
+        return (long) header.nextDouble();
+    }
+
+    /**
+     * Stores the changed fan curves by appending them to the journal. When the
+     * journal grows larger than the fan curves themselves, it is compacted by
+     * storing all fan curves into the JSON file.
+     *
+     * @param fanCurves the whole list of fan curves.
+     * @param changedFanCurves the fan curves that have been added or edited.
+     * @param removedFanControllerIds the fan controller ids of the removed fan
+     * curves.
+     * @throws IOException if there was IOException writing the files.
+     */
+    @Override
+    public synchronized void storeChanges(List<FanCurve> fanCurves, List<FanCurve> changedFanCurves, Set<String> removedFanControllerIds) throws IOException {
+        int newEntries = changedFanCurves.size() + removedFanControllerIds.size();
+
+        /* The journal must start from a known state, so nothing is appended
+         * before the files have been loaded or stored once. */
+        if (journalEntries < 0 || journalEntries + newEntries > Math.max(MIN_COMPACTION_ENTRIES, fanCurves.size())) {
+            store(fanCurves);
+            return;
+        }
+        if (newEntries == 0) {
+            return;
+        }
+
+        StringWriter lines = new StringWriter();
+        if (journalEntries == 0) {
+            new JsonWriter(lines).beginObject().name("base").value(baseChecksum).endObject();
+            lines.write('\n');
+        }
+        for (String fanControllerId : removedFanControllerIds) {
+            new JsonWriter(lines).beginObject().name("remove").value(fanControllerId).endObject();
+            lines.write('\n');
+        }
+        for (FanCurve fanCurve : changedFanCurves) {
+            JsonWriter writer = new JsonWriter(lines);
+            writer.beginObject().name("put");
+            writeFanCurve(writer, fanCurve.getSensor().getId(), fanCurve.getFanController().getId(), fanCurve.getChangePoints());
+            writer.endObject();
+            lines.write('\n');
+        }
+
+        /* A new journal replaces any journal left over from a crash. */
+        OpenOption mode = journalEntries == 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        Files.createDirectories(journalPath.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            /* The journal may now end with an incomplete entry. */
+            journalEntries = -1;
+            throw ex;
+        }
+        journalEntries += newEntries;
+
+        for (String fanControllerId : removedFanControllerIds) {
+            remove(unboundFanCurves, fanControllerId);
+        }
+        unboundFanCurves = unboundFanCurvesNotIn(changedFanCurves);
+    }
+
+    /* Checksums of the JSON file are computed over its characters while it is
+     * read or written, so the file never has to be read twice. */
+    private static class ChecksumReader extends FilterReader {
+
+        private final CRC32 checksum;
+
+        ChecksumReader(Reader in, CRC32 checksum) {
+            super(in);
+            this.checksum = checksum;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                update(checksum, (char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int count = super.read(cbuf, off, len);
+            for (int i = 0; i < count; i++) {
+                update(checksum, cbuf[off + i]);
+            }
+            return count;
+        }
+    }
+
+    private static class ChecksumWriter extends FilterWriter {
+
+        private final CRC32 checksum;
+
+        ChecksumWriter(Writer out, CRC32 checksum) {
+            super(out);
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            update(checksum, (char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            for (int i = 0; i < len; i++) {
+                update(checksum, cbuf[off + i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            for (int i = 0; i < len; i++) {
+                update(checksum, str.charAt(off + i));
+            }
+        }
+    }
+
+    private static class DiscardingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 
-        Files.createDirectories(filePath.getParent());
-        Files.write(filePath, Arrays.asList(json));
+    private static void update(CRC32 checksum, char c) {
+        checksum.update(c >>> 8);
+        checksum.update(c);
     }
 }
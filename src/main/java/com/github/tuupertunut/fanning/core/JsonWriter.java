@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.Jsoner;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A streaming JSON writer that writes one token at a time to a Writer. The
+ * output is compact and formatted the same way as json-simple formats it.
+ *
+ * @author Tuupertunut
+ */
+class JsonWriter {
+
+    private final Writer out;
+
+    /* Whether the current array or object already has an element, so that
+     * the next one needs a comma. */
+    private boolean[] hasElements = new boolean[16];
+    private int depth = 0;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginArray() throws IOException {
+        beginValue();
+        out.write('[');
+        push();
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        depth--;
+        out.write(']');
+        return this;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        beginValue();
+        out.write('{');
+        push();
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        depth--;
+        out.write('}');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next object member. It must be followed by a
+     * value.
+     */
+    JsonWriter name(String name) throws IOException {
+        beginValue();
+        writeString(name);
+        out.write(':');
+
+        /* The value after the name does not need a comma. */
+        hasElements[depth] = false;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        beginValue();
+        writeString(value);
+        return this;
+    }
+
+    JsonWriter value(double value) throws IOException {
+        beginValue();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    private void beginValue() throws IOException {
+        if (hasElements[depth]) {
+            out.write(',');
+        }
+        hasElements[depth] = true;
+    }
+
+    private void push() {
+        depth++;
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, hasElements.length * 2);
+        }
+        hasElements[depth] = false;
+    }
+
+    private void writeString(String string) throws IOException {
+        out.write('"');
+        out.write(Jsoner.escape(string));
+        out.write('"');
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for the sequence lock of the shared snapshot file. Plain reads
+ * and writes of a mapped buffer are not ordered by the memory model, and a
+ * volatile access only orders them in practice. The fences of VarHandle are
+ * used when the JVM has them, and otherwise the fences of sun.misc.Unsafe,
+ * which are the same intrinsics on Java 8.
+ *
+ * @author Tuupertunut
+ */
+class MemoryFences {
+
+    private static final MethodHandle LOAD_FENCE;
+    private static final MethodHandle STORE_FENCE;
+
+    static {
+        MethodType fenceType = MethodType.methodType(void.class);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle loadFence;
+        MethodHandle storeFence;
+        try {
+            Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+            loadFence = lookup.findStatic(varHandle, "acquireFence", fenceType);
+            storeFence = lookup.findStatic(varHandle, "releaseFence", fenceType);
+        } catch (ReflectiveOperationException ex) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                loadFence = lookup.findVirtual(unsafeClass, "loadFence", fenceType).bindTo(unsafe);
+                storeFence = lookup.findVirtual(unsafeClass, "storeFence", fenceType).bindTo(unsafe);
+            } catch (ReflectiveOperationException | SecurityException unsafeEx) {
+                throw new ExceptionInInitializerError(unsafeEx);
+            }
+        }
+        LOAD_FENCE = loadFence;
+        STORE_FENCE = storeFence;
+    }
+
+    private MemoryFences() {
+    }
+
+    /**
+     * Keeps the reads before the fence from being reordered with the reads and
+     * writes after it.
+     */
+    static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Keeps the reads and writes before the fence from being reordered with
+     * the writes after it.
+     */
+    static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the files of a storage and reloads the fan curves when they change,
+ * so that a profile can be replaced without restarting the software. The new
+ * profile is loaded in a background thread and only the fan curves that
+ * changed are applied to the fanning service, through its fan curve
+ * executor.
+ *
+ * @author Tuupertunut
+ */
+public class ProfileWatcher implements Closeable {
+
+    /* Writing a file causes several events. The profile is loaded only after
+     * no more events have come for this long. */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final FanningService fanningService;
+    private final Storage storage;
+    private final Path filePath;
+    private volatile Consumer<Exception> errorHandler;
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    /**
+     * Creates a new ProfileWatcher.
+     *
+     * @param fanningService the service whose fan curves are replaced.
+     * @param storage the storage to load the fan curves from.
+     * @param filePath the file of the storage. Files next to it whose names
+     * start with the name of the file and a dot, like its journal, are
+     * watched too.
+     */
+    public ProfileWatcher(FanningService fanningService, Storage storage, Path filePath) {
+        this.fanningService = fanningService;
+        this.storage = storage;
+        this.filePath = filePath.toAbsolutePath();
+        this.errorHandler = (Exception ex) -> {
+        };
+    }
+
+    /**
+     * Sets the handler that is called in the watcher thread when a changed
+     * profile can't be loaded. The old fan curves stay in use. By default
+     * errors are ignored.
+     *
+     * @param errorHandler the error handler.
+     */
+    public void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Starts watching the file.
+     *
+     * @throws IOException if the directory of the file can't be watched.
+     */
+    public synchronized void start() throws IOException {
+        Path dir = filePath.getParent();
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        /* Making a daemon thread, so it will automatically die when the main
+         * thread dies. */
+        watcherThread = new Thread(this::watch, "Fanning profile watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Stops watching the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (!hasWatchedChanges(watchService.take())) {
+                    continue;
+                }
+
+                /* Waiting for the writer to finish. */
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    hasWatchedChanges(key);
+                }
+
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            /* Stopped. */
+        }
+    }
+
+    /* Returns whether the events of the key concern the watched files, and
+     * rearms the key. */
+    private boolean hasWatchedChanges(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            /* After an overflow it is unknown which files changed. */
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || isWatchedFile((Path) event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private boolean isWatchedFile(Path fileName) {
+        String name = fileName.toString();
+        String watchedName = filePath.getFileName().toString();
+
+        /* Temporary files of atomic writes end in ".tmp" and are ignored. */
+        return name.equals(watchedName) || (name.startsWith(watchedName + ".") && !name.endsWith(".tmp"));
+    }
+
+    private void reload() {
+        List<FanCurve> loaded;
+        List<UnboundFanCurve> loadedUnbound;
+        try {
+            loaded = storage.load();
+            loadedUnbound = storage.getUnboundFanCurves();
+        } catch (Exception ex) {
+            errorHandler.accept(ex);
+            return;
+        }
+
+        fanningService.editFanCurves(() -> fanningService.applyProfile(loaded, loadedUnbound));
+    }
+}
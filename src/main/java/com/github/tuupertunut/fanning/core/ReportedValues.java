@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The last reported value of every sensor. A sensor value is reported as a
+ * change only when it differs from its last reported value by more than the
+ * deadband. Comparing with the previous value instead would never report a
+ * value that drifts by less than the deadband on every update, however far it
+ * drifts in total.
+ *
+ * This is not thread safe. The fanning service only uses it from the updater
+ * thread.
+ *
+ * @author Tuupertunut
+ */
+class ReportedValues {
+
+    private final HardwareManager hardwareManager;
+
+    /* The values by the position of the sensor in the index. NaN until a
+     * value has been reported. */
+    private HardwareIndex index;
+    private double[] values;
+
+    /**
+     * Creates a new ReportedValues where no value has been reported yet.
+     *
+     * @param hardwareManager the hardware whose sensors are reported.
+     */
+    ReportedValues(HardwareManager hardwareManager) {
+        this.hardwareManager = hardwareManager;
+        this.index = null;
+        this.values = new double[0];
+    }
+
+    /**
+     * Returns the given sensors whose current value differs from their last
+     * reported value by more than the deadband, and records their current
+     * values as reported. Sensors that are not in the hardware tree are never
+     * reported.
+     *
+     * @param sensors the sensors to check.
+     * @param deadband how much a value must change to be reported.
+     * @return the sensors whose value changed.
+     */
+    Set<Sensor> report(Collection<Sensor> sensors, double deadband) {
+        updateIndex();
+
+        Set<Sensor> changed = null;
+        for (Sensor sensor : sensors) {
+            int position = index.indexOfSensor(sensor);
+            if (position < 0) {
+                continue;
+            }
+
+            double value = sensor.getValue();
+            if (HardwareManager.isChange(values[position], value, deadband)) {
+                values[position] = value;
+                if (changed == null) {
+                    changed = new HashSet<>();
+                }
+                changed.add(sensor);
+            }
+        }
+        return changed != null ? changed : Collections.emptySet();
+    }
+
+    /* The reported values of sensors that are still in the tree are kept when
+     * the hardware tree changes. */
+    private void updateIndex() {
+        HardwareIndex newIndex = hardwareManager.getHardwareIndex();
+        if (newIndex == index) {
+            return;
+        }
+
+        List<Sensor> sensors = newIndex.getAllSensors();
+        double[] newValues = new double[sensors.size()];
+        Arrays.fill(newValues, Double.NaN);
+        if (index != null) {
+            for (int i = 0; i < newValues.length; i++) {
+                int oldPosition = index.indexOfSensor(sensors.get(i));
+                if (oldPosition >= 0) {
+                    newValues[i] = values[oldPosition];
+                }
+            }
+        }
+        index = newIndex;
+        values = newValues;
+    }
+}
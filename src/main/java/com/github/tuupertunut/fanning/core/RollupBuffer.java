@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-capacity history of the minimum, maximum and average of the samples
+ * of one sensor in fixed-length time buckets. When the buffer is full, the
+ * oldest bucket is overwritten. The buckets are stored in a direct byte
+ * buffer, or a memory-mapped file so that the history survives restarts, and
+ * adding a sample does not allocate anything.
+ *
+ * A bucket becomes readable when the first sample of a later bucket is added.
+ * One thread adds samples and any thread can read the buckets. Readers never
+ * block the writer; buckets that were overwritten while being read are left
+ * out.
+ *
+ * All numbers are big-endian. The bucket that is being accumulated is stored
+ * in the header, so it is continued after a restart. The layout of version 1
+ * is:
+ * <pre>
+ * int    magic "FANR"
+ * int    version
+ * int    capacity
+ * int    reserved
+ * long   resolution in milliseconds
+ * long   number of buckets ever completed
+ * long   latest sample time in milliseconds since the epoch
+ * long   start time of the current bucket
+ * double minimum of the current bucket
+ * double maximum of the current bucket
+ * double sum of the current bucket
+ * int    number of values in the current bucket
+ * int    reserved
+ * capacity times:
+ *   long   start time in milliseconds since the epoch
+ *   float  minimum
+ *   float  maximum
+ *   float  average
+ *   int    number of values
+ * </pre>
+ *
+ * @author Tuupertunut
+ */
+public class RollupBuffer {
+
+    static final int MAGIC = 0x46414E52;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 80;
+    static final int BUCKET_SIZE = 24;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int RESOLUTION_OFFSET = 16;
+    private static final int WRITE_COUNT_OFFSET = 24;
+    private static final int LATEST_TIMESTAMP_OFFSET = 32;
+    private static final int CURRENT_START_OFFSET = 40;
+    private static final int CURRENT_MIN_OFFSET = 48;
+    private static final int CURRENT_MAX_OFFSET = 56;
+    private static final int CURRENT_SUM_OFFSET = 64;
+    private static final int CURRENT_COUNT_OFFSET = 72;
+
+    private final ByteBuffer buffer;
+    private final long resolution;
+    private final int capacity;
+
+    /* The number of buckets ever completed. The bucket number n is in the
+     * slot n % capacity. Only the writer thread changes these. While a bucket
+     * is being written, writeEnd is one ahead of writeCount. */
+    private volatile long writeCount;
+    private volatile long writeEnd;
+
+    /* The bucket that is being accumulated. Only accessed by the writer
+     * thread. The buffer has a copy of these. */
+    private long latestTimestamp;
+    private long currentStart;
+    private double currentMin;
+    private double currentMax;
+    private double currentSum;
+    private int currentCount;
+
+    private RollupBuffer(ByteBuffer buffer, long resolution, int capacity, long writeCount) {
+        this.buffer = buffer;
+        this.resolution = resolution;
+        this.capacity = capacity;
+        this.writeCount = writeCount;
+        this.writeEnd = writeCount;
+        this.latestTimestamp = buffer.getLong(LATEST_TIMESTAMP_OFFSET);
+        this.currentStart = buffer.getLong(CURRENT_START_OFFSET);
+        this.currentMin = buffer.getDouble(CURRENT_MIN_OFFSET);
+        this.currentMax = buffer.getDouble(CURRENT_MAX_OFFSET);
+        this.currentSum = buffer.getDouble(CURRENT_SUM_OFFSET);
+        this.currentCount = buffer.getInt(CURRENT_COUNT_OFFSET);
+    }
+
+    /**
+     * Creates a new empty buffer in direct memory.
+     *
+     * @param resolution the length of a bucket in milliseconds.
+     * @param capacity the maximum number of buckets.
+     * @return a new buffer.
+     */
+    public static RollupBuffer allocate(long resolution, int capacity) {
+        checkResolution(resolution);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(byteSize(capacity));
+        writeHeader(buffer, resolution, capacity);
+        return new RollupBuffer(buffer, resolution, capacity, 0);
+    }
+
+    /**
+     * Opens a buffer that is memory-mapped to the given file. If the file
+     * already contains a buffer of the same resolution and capacity, its
+     * buckets are kept. Otherwise the file is started over.
+     *
+     * @param filePath the file of the buffer.
+     * @param resolution the length of a bucket in milliseconds.
+     * @param capacity the maximum number of buckets.
+     * @return a buffer backed by the file.
+     * @throws IOException
+     */
+    public static RollupBuffer open(Path filePath, long resolution, int capacity) throws IOException {
+        checkResolution(resolution);
+        int size = byteSize(capacity);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean sameSize = channel.size() == size;
+            if (!sameSize) {
+                channel.truncate(0);
+            }
+
+            /* The mapping stays valid after the channel is closed. */
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            long writeCount = 0;
+            if (sameSize && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                    && buffer.getInt(CAPACITY_OFFSET) == capacity && buffer.getLong(RESOLUTION_OFFSET) == resolution) {
+                writeCount = Math.max(0, buffer.getLong(WRITE_COUNT_OFFSET));
+            } else {
+                writeHeader(buffer, resolution, capacity);
+            }
+            return new RollupBuffer(buffer, resolution, capacity, writeCount);
+        }
+    }
+
+    private static void checkResolution(long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Invalid resolution " + resolution);
+        }
+    }
+
+    private static int byteSize(int capacity) {
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / BUCKET_SIZE) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        return HEADER_SIZE + capacity * BUCKET_SIZE;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, long resolution, int capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(RESOLUTION_OFFSET, resolution);
+        buffer.putLong(WRITE_COUNT_OFFSET, 0);
+        buffer.putLong(LATEST_TIMESTAMP_OFFSET, Long.MIN_VALUE);
+        buffer.putLong(CURRENT_START_OFFSET, Long.MIN_VALUE);
+        buffer.putDouble(CURRENT_MIN_OFFSET, Double.POSITIVE_INFINITY);
+        buffer.putDouble(CURRENT_MAX_OFFSET, Double.NEGATIVE_INFINITY);
+        buffer.putDouble(CURRENT_SUM_OFFSET, 0);
+        buffer.putInt(CURRENT_COUNT_OFFSET, 0);
+    }
+
+    private int slotOffset(long bucketNumber) {
+        return HEADER_SIZE + (int) (bucketNumber % capacity) * BUCKET_SIZE;
+    }
+
+    /**
+     * Adds a sample to the bucket of its timestamp. The samples must be added
+     * in time order; a sample earlier than the current bucket is added to the
+     * current bucket. NaN values are not included in the bucket. This must
+     * only be called from one thread.
+     *
+     * @param timestamp the time of the sample in milliseconds since the epoch.
+     * @param value the value of the sample.
+     */
+    public void add(long timestamp, double value) {
+        latestTimestamp = Math.max(latestTimestamp, timestamp);
+        buffer.putLong(LATEST_TIMESTAMP_OFFSET, latestTimestamp);
+
+        long start = Math.floorDiv(timestamp, resolution) * resolution;
+        if (start > currentStart) {
+            completeBucket();
+            currentStart = start;
+            currentMin = Double.POSITIVE_INFINITY;
+            currentMax = Double.NEGATIVE_INFINITY;
+            currentSum = 0;
+            currentCount = 0;
+            buffer.putLong(CURRENT_START_OFFSET, currentStart);
+        }
+
+        if (!Double.isNaN(value)) {
+            currentMin = Math.min(currentMin, value);
+            currentMax = Math.max(currentMax, value);
+            currentSum += value;
+            currentCount++;
+        }
+        buffer.putDouble(CURRENT_MIN_OFFSET, currentMin);
+        buffer.putDouble(CURRENT_MAX_OFFSET, currentMax);
+        buffer.putDouble(CURRENT_SUM_OFFSET, currentSum);
+        buffer.putInt(CURRENT_COUNT_OFFSET, currentCount);
+    }
+
+    /* Buckets without any values are not stored, so gaps in the samples do
+     * not take space. */
+    private void completeBucket() {
+        if (currentCount == 0) {
+            return;
+        }
+
+        long count = writeCount;
+        writeEnd = count + 1;
+        int offset = slotOffset(count);
+        buffer.putLong(offset, currentStart);
+        buffer.putFloat(offset + 8, (float) currentMin);
+        buffer.putFloat(offset + 12, (float) currentMax);
+        buffer.putFloat(offset + 16, (float) (currentSum / currentCount));
+        buffer.putInt(offset + 20, currentCount);
+        buffer.putLong(WRITE_COUNT_OFFSET, count + 1);
+        writeCount = count + 1;
+    }
+
+    /**
+     * Copies the buckets whose start time is in the given range into the
+     * range, oldest first, up to the capacity of the range.
+     *
+     * @param fromTimestamp the start of the range, inclusive.
+     * @param toTimestamp the end of the range, exclusive.
+     * @param range the range to copy the buckets into.
+     * @return the number of buckets copied.
+     */
+    int read(long fromTimestamp, long toTimestamp, TimeSeriesRange range) {
+        long end = writeCount;
+        long start = Math.max(0, end - capacity);
+        long first = firstAtOrAfter(start, end, fromTimestamp);
+        long last = firstAtOrAfter(first, end, toTimestamp);
+
+        int count = (int) Math.min(last - first, range.timestamps.length);
+        for (int i = 0; i < count; i++) {
+            int offset = slotOffset(first + i);
+            range.timestamps[i] = buffer.getLong(offset);
+            range.mins[i] = buffer.getFloat(offset + 8);
+            range.maxs[i] = buffer.getFloat(offset + 12);
+            range.averages[i] = buffer.getFloat(offset + 16);
+            range.counts[i] = buffer.getInt(offset + 20);
+        }
+
+        /* The writer may have overwritten the oldest copied buckets meanwhile,
+         * including the one it is writing right now. */
+        long oldestIntact = writeEnd - capacity;
+        int overwritten = (int) Math.min(count, Math.max(0, oldestIntact - first));
+        range.removeFirst(overwritten, count);
+        return count - overwritten;
+    }
+
+    /**
+     * Returns the number of buckets whose start time is in the given range.
+     *
+     * @param fromTimestamp the start of the range, inclusive.
+     * @param toTimestamp the end of the range, exclusive.
+     * @return the number of buckets in the range.
+     */
+    public int count(long fromTimestamp, long toTimestamp) {
+        long end = writeCount;
+        long start = Math.max(0, end - capacity);
+        long first = firstAtOrAfter(start, end, fromTimestamp);
+        return (int) (firstAtOrAfter(first, end, toTimestamp) - first);
+    }
+
+    /**
+     * Returns the start time of the oldest bucket in the buffer.
+     *
+     * @return the oldest start time, or {@code Long.MAX_VALUE} if the buffer
+     * is empty.
+     */
+    public long getOldestTimestamp() {
+        long end = writeCount;
+        if (end == 0) {
+            return Long.MAX_VALUE;
+        } else {
+            return buffer.getLong(slotOffset(Math.max(0, end - capacity)));
+        }
+    }
+
+    /**
+     * Returns the time of the latest sample that has been added, including
+     * the samples of the bucket that is being accumulated. This must only be
+     * called from the thread that adds samples.
+     *
+     * @return the latest sample time, or {@code Long.MIN_VALUE} if nothing
+     * has been added.
+     */
+    public long getLatestTimestamp() {
+        return latestTimestamp;
+    }
+
+    /* Binary search for the first bucket number in [from, to) whose start
+     * time is at least the given one, or to if there is none. */
+    private long firstAtOrAfter(long from, long to, long timestamp) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (buffer.getLong(slotOffset(mid)) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the length of a bucket.
+     *
+     * @return the length of a bucket in milliseconds.
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the maximum number of buckets in the buffer.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes the buckets to the file if the buffer is memory-mapped. The
+     * operating system writes them eventually anyway, so this is only needed
+     * to survive a crash of the whole system.
+     */
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+}
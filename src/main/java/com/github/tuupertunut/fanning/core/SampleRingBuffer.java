@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-capacity history of (timestamp, value) samples of one sensor. When
+ * the buffer is full, the oldest sample is overwritten. The samples are
+ * stored in a direct byte buffer, or a memory-mapped file so that the history
+ * survives restarts, and adding a sample does not allocate anything.
+ *
+ * One thread adds samples and any thread can read them. Readers never block
+ * the writer; samples that were overwritten while being read are left out.
+ *
+ * All numbers are big-endian. The layout of version 1 is:
+ * <pre>
+ * int    magic "FANH"
+ * int    version
+ * int    capacity
+ * int    reserved
+ * long   number of samples ever added
+ * long   reserved
+ * capacity times:
+ *   long   timestamp in milliseconds since the epoch
+ *   double value
+ * </pre>
+ *
+ * @author Tuupertunut
+ */
+public class SampleRingBuffer {
+
+    static final int MAGIC = 0x46414E48;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int SAMPLE_SIZE = 16;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int WRITE_COUNT_OFFSET = 16;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    /* The number of samples ever added. The sample number n is in the slot
+     * n % capacity. Only the writer thread changes these. While a sample is
+     * being written, writeEnd is one ahead of writeCount. */
+    private volatile long writeCount;
+    private volatile long writeEnd;
+    private long latestTimestamp;
+
+    private SampleRingBuffer(ByteBuffer buffer, int capacity, long writeCount) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.writeCount = writeCount;
+        this.writeEnd = writeCount;
+        this.latestTimestamp = writeCount > 0 ? buffer.getLong(slotOffset(writeCount - 1)) : Long.MIN_VALUE;
+    }
+
+    /**
+     * Creates a new empty buffer in direct memory.
+     *
+     * @param capacity the maximum number of samples.
+     * @return a new buffer.
+     */
+    public static SampleRingBuffer allocate(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(byteSize(capacity));
+        writeHeader(buffer, capacity);
+        return new SampleRingBuffer(buffer, capacity, 0);
+    }
+
+    /**
+     * Opens a buffer that is memory-mapped to the given file. If the file
+     * already contains a buffer of the same capacity, its samples are kept.
+     * Otherwise the file is started over.
+     *
+     * @param filePath the file of the buffer.
+     * @param capacity the maximum number of samples.
+     * @return a buffer backed by the file.
+     * @throws IOException
+     */
+    public static SampleRingBuffer open(Path filePath, int capacity) throws IOException {
+        int size = byteSize(capacity);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean sameSize = channel.size() == size;
+            if (!sameSize) {
+                channel.truncate(0);
+            }
+
+            /* The mapping stays valid after the channel is closed. */
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            long writeCount = 0;
+            if (sameSize && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(CAPACITY_OFFSET) == capacity) {
+                writeCount = Math.max(0, buffer.getLong(WRITE_COUNT_OFFSET));
+            } else {
+                writeHeader(buffer, capacity);
+            }
+            return new SampleRingBuffer(buffer, capacity, writeCount);
+        }
+    }
+
+    private static int byteSize(int capacity) {
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SAMPLE_SIZE) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        return HEADER_SIZE + capacity * SAMPLE_SIZE;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(WRITE_COUNT_OFFSET, 0);
+    }
+
+    private int slotOffset(long sampleNumber) {
+        return HEADER_SIZE + (int) (sampleNumber % capacity) * SAMPLE_SIZE;
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest one if the buffer is full. The
+     * samples must be added in time order; a timestamp earlier than the latest
+     * sample is replaced with the timestamp of the latest sample. This must
+     * only be called from one thread.
+     *
+     * @param timestamp the time of the sample in milliseconds since the epoch.
+     * @param value the value of the sample.
+     */
+    public void add(long timestamp, double value) {
+        if (timestamp < latestTimestamp) {
+            timestamp = latestTimestamp;
+        }
+        latestTimestamp = timestamp;
+
+        long count = writeCount;
+        writeEnd = count + 1;
+        int offset = slotOffset(count);
+        buffer.putLong(offset, timestamp);
+        buffer.putDouble(offset + 8, value);
+        buffer.putLong(WRITE_COUNT_OFFSET, count + 1);
+        writeCount = count + 1;
+    }
+
+    /**
+     * Copies the samples whose timestamp is in the given range into the
+     * arrays, oldest first. If there are more samples than fit in the arrays,
+     * the oldest ones are copied.
+     *
+     * @param fromTimestamp the start of the range, inclusive.
+     * @param toTimestamp the end of the range, exclusive.
+     * @param timestamps the array to copy the timestamps into.
+     * @param values the array to copy the values into.
+     * @return the number of samples copied.
+     */
+    public int read(long fromTimestamp, long toTimestamp, long[] timestamps, double[] values) {
+        long end = writeCount;
+        long start = Math.max(0, end - capacity);
+        long first = firstAtOrAfter(start, end, fromTimestamp);
+        long last = firstAtOrAfter(first, end, toTimestamp);
+
+        int count = (int) Math.min(last - first, Math.min(timestamps.length, values.length));
+        for (int i = 0; i < count; i++) {
+            int offset = slotOffset(first + i);
+            timestamps[i] = buffer.getLong(offset);
+            values[i] = buffer.getDouble(offset + 8);
+        }
+
+        /* The writer may have overwritten the oldest copied samples meanwhile,
+         * including the one it is writing right now. */
+        long oldestIntact = writeEnd - capacity;
+        int overwritten = (int) Math.min(count, Math.max(0, oldestIntact - first));
+        if (overwritten > 0) {
+            count -= overwritten;
+            System.arraycopy(timestamps, overwritten, timestamps, 0, count);
+            System.arraycopy(values, overwritten, values, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of samples whose timestamp is in the given range.
+     *
+     * @param fromTimestamp the start of the range, inclusive.
+     * @param toTimestamp the end of the range, exclusive.
+     * @return the number of samples in the range.
+     */
+    public int count(long fromTimestamp, long toTimestamp) {
+        long end = writeCount;
+        long start = Math.max(0, end - capacity);
+        long first = firstAtOrAfter(start, end, fromTimestamp);
+        return (int) (firstAtOrAfter(first, end, toTimestamp) - first);
+    }
+
+    /**
+     * Returns the timestamp of the oldest sample in the buffer.
+     *
+     * @return the oldest timestamp, or {@code Long.MAX_VALUE} if the buffer
+     * is empty.
+     */
+    public long getOldestTimestamp() {
+        long end = writeCount;
+        if (end == 0) {
+            return Long.MAX_VALUE;
+        } else {
+            return buffer.getLong(slotOffset(Math.max(0, end - capacity)));
+        }
+    }
+
+    /* Binary search for the first sample number in [from, to) whose timestamp
+     * is at least the given one, or to if there is none. */
+    private long firstAtOrAfter(long from, long to, long timestamp) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (buffer.getLong(slotOffset(mid)) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of samples in the buffer.
+     *
+     * @return the number of samples.
+     */
+    public int size() {
+        return (int) Math.min(writeCount, capacity);
+    }
+
+    /**
+     * Returns the maximum number of samples in the buffer.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes the samples to the file if the buffer is memory-mapped. The
+     * operating system writes them eventually anyway, so this is only needed
+     * to survive a crash of the whole system.
+     */
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Records the values of all sensors at a fixed rate into one
+ * {@link SensorTimeSeries} per sensor. The values are taken from the latest
+ * snapshot of the fanning service, so the hardware is not read again.
+ *
+ * @author Tuupertunut
+ */
+public class SensorHistory implements Closeable {
+
+    /**
+     * Fifteen minutes of full resolution samples at one sample per second.
+     * Older history is kept in the rollups of {@link SensorTimeSeries}, which
+     * survive restarts too.
+     */
+    public static final int DEFAULT_CAPACITY = 15 * 60;
+
+    private final FanningService fanningService;
+    private final int capacity;
+    private final Path directory;
+    private final Map<String, SensorTimeSeries> seriesById;
+    private volatile Consumer<Exception> errorHandler;
+
+    /* The time series in the order of the sensors in the last recorded
+     * hardware index, so that recording does not look anything up. Only
+     * accessed from the recording thread. */
+    private HardwareIndex recordedIndex;
+    private SensorTimeSeries[] recordedSeries;
+
+    private ScheduledExecutorService sampler;
+
+    /**
+     * Creates a new SensorHistory that keeps the samples in memory.
+     *
+     * @param fanningService the service whose snapshots are recorded.
+     * @param capacity the number of full resolution samples kept for each
+     * sensor.
+     */
+    public SensorHistory(FanningService fanningService, int capacity) {
+        this(fanningService, capacity, null);
+    }
+
+    /**
+     * Creates a new SensorHistory that keeps the samples and rollups in
+     * memory-mapped files, three for each sensor, so that the whole history
+     * survives restarts.
+     *
+     * @param fanningService the service whose snapshots are recorded.
+     * @param capacity the number of full resolution samples kept for each
+     * sensor.
+     * @param directory the directory of the files, or null to keep the
+     * samples in memory.
+     */
+    public SensorHistory(FanningService fanningService, int capacity, Path directory) {
+        this.fanningService = fanningService;
+        this.capacity = capacity;
+        this.directory = directory;
+        this.seriesById = new ConcurrentHashMap<>();
+        this.errorHandler = (Exception ex) -> {
+        };
+        this.recordedIndex = null;
+        this.recordedSeries = new SensorTimeSeries[0];
+    }
+
+    /**
+     * Sets the handler that is called in the recording thread when the file
+     * of a sensor can't be opened. The history of that sensor is then kept in
+     * memory. By default errors are ignored.
+     *
+     * @param errorHandler the error handler.
+     */
+    public void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Starts recording the sensor values.
+     *
+     * @param interval the time between samples.
+     */
+    public synchronized void start(Duration interval) {
+        /* Making a daemon thread, so it will automatically die when the main
+         * thread dies. */
+        sampler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "Fanning sensor history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> record(fanningService.getSnapshot(), System.currentTimeMillis()), 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops recording and writes the memory-mapped files.
+     */
+    @Override
+    public synchronized void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            try {
+                sampler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SensorTimeSeries series : seriesById.values()) {
+            series.force();
+        }
+    }
+
+    /**
+     * Adds the values of all sensors in the snapshot to their histories. This
+     * must only be called from one thread at a time.
+     *
+     * @param snapshot the values to record.
+     * @param timestamp the time of the values in milliseconds since the epoch.
+     */
+    void record(HardwareSnapshot snapshot, long timestamp) {
+        HardwareIndex index = snapshot.getHardwareIndex();
+        if (index != recordedIndex) {
+            List<Sensor> sensors = index.getAllSensors();
+            SensorTimeSeries[] series = new SensorTimeSeries[sensors.size()];
+            for (int i = 0; i < series.length; i++) {
+                series[i] = seriesById.computeIfAbsent(sensors.get(i).getId(), this::createSeries);
+            }
+            recordedSeries = series;
+            recordedIndex = index;
+        }
+
+        SensorTimeSeries[] series = recordedSeries;
+        for (int i = 0; i < series.length; i++) {
+            series[i].add(timestamp, snapshot.getSensorValue(i));
+        }
+    }
+
+    private SensorTimeSeries createSeries(String sensorId) {
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                String fileName = fileNameOf(sensorId);
+                return new SensorTimeSeries(
+                        SampleRingBuffer.open(directory.resolve(fileName + ".hist"), capacity),
+                        RollupBuffer.open(directory.resolve(fileName + ".10s.hist"), 10_000, SensorTimeSeries.TEN_SECOND_CAPACITY),
+                        RollupBuffer.open(directory.resolve(fileName + ".1m.hist"), 60_000, SensorTimeSeries.ONE_MINUTE_CAPACITY));
+            } catch (IOException ex) {
+                errorHandler.accept(ex);
+            }
+        }
+        return new SensorTimeSeries(SampleRingBuffer.allocate(capacity));
+    }
+
+    /* Sensor ids may contain slashes, so they are encoded to be usable as
+     * file names. */
+    private static String fileNameOf(String sensorId) {
+        try {
+            return URLEncoder.encode(sensorId, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the recorded history of the sensor, if it has been recorded.
+     *
+     * @param sensor
+     * @return the samples of the sensor.
+     */
+    public Optional<SensorTimeSeries> getHistory(Sensor sensor) {
+        return Optional.ofNullable(seriesById.get(sensor.getId()));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+/**
+ * The history of one sensor at several resolutions. The latest samples are
+ * kept at full resolution in a {@link SampleRingBuffer}, and the same samples
+ * are rolled up into 10 second and 1 minute buckets that are kept for much
+ * longer. Like the samples, the rollups can be kept in memory-mapped files,
+ * so the whole history survives restarts. Queries use the finest resolution
+ * that covers the requested range, so long ranges stay fast and the memory
+ * use stays bounded.
+ *
+ * @author Tuupertunut
+ */
+public class SensorTimeSeries {
+
+    /**
+     * One day of 10 second buckets.
+     */
+    public static final int TEN_SECOND_CAPACITY = 24 * 60 * 6;
+
+    /**
+     * Three days of 1 minute buckets.
+     */
+    public static final int ONE_MINUTE_CAPACITY = 3 * 24 * 60;
+
+    private final SampleRingBuffer samples;
+    private final RollupBuffer tenSecondRollups;
+    private final RollupBuffer oneMinuteRollups;
+
+    /**
+     * Creates a new SensorTimeSeries whose rollups are kept in direct memory.
+     * The samples already in the sample buffer are rolled up too.
+     *
+     * @param samples the buffer for the full resolution samples.
+     */
+    public SensorTimeSeries(SampleRingBuffer samples) {
+        this(samples, RollupBuffer.allocate(10_000, TEN_SECOND_CAPACITY), RollupBuffer.allocate(60_000, ONE_MINUTE_CAPACITY));
+    }
+
+    /**
+     * Creates a new SensorTimeSeries from existing buffers, for example
+     * memory-mapped ones from a previous run. The samples in the sample buffer
+     * that are newer than the latest sample of a rollup buffer are rolled up
+     * into it.
+     *
+     * @param samples the buffer for the full resolution samples.
+     * @param tenSecondRollups the buffer for the 10 second buckets.
+     * @param oneMinuteRollups the buffer for the 1 minute buckets.
+     */
+    public SensorTimeSeries(SampleRingBuffer samples, RollupBuffer tenSecondRollups, RollupBuffer oneMinuteRollups) {
+        this.samples = samples;
+        this.tenSecondRollups = tenSecondRollups;
+        this.oneMinuteRollups = oneMinuteRollups;
+
+        long[] timestamps = new long[samples.size()];
+        double[] values = new double[samples.size()];
+        int count = samples.read(Long.MIN_VALUE, Long.MAX_VALUE, timestamps, values);
+        long tenSecondLatest = tenSecondRollups.getLatestTimestamp();
+        long oneMinuteLatest = oneMinuteRollups.getLatestTimestamp();
+        for (int i = 0; i < count; i++) {
+            if (timestamps[i] > tenSecondLatest) {
+                tenSecondRollups.add(timestamps[i], values[i]);
+            }
+            if (timestamps[i] > oneMinuteLatest) {
+                oneMinuteRollups.add(timestamps[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds a sample at every resolution. This must only be called from one
+     * thread.
+     *
+     * @param timestamp the time of the sample in milliseconds since the epoch.
+     * @param value the value of the sample.
+     */
+    public void add(long timestamp, double value) {
+        samples.add(timestamp, value);
+        tenSecondRollups.add(timestamp, value);
+        oneMinuteRollups.add(timestamp, value);
+    }
+
+    /**
+     * Returns the history in the given time range at the finest resolution
+     * that covers the range with at most the given number of points. If no
+     * resolution has that few points, the coarsest resolution is used.
+     *
+     * @param fromTimestamp the start of the range, inclusive.
+     * @param toTimestamp the end of the range, exclusive.
+     * @param maxPoints the preferred maximum number of points.
+     * @return the history in the range.
+     */
+    public TimeSeriesRange query(long fromTimestamp, long toTimestamp, int maxPoints) {
+        long sampleOldest = samples.getOldestTimestamp();
+        long tenSecondOldest = tenSecondRollups.getOldestTimestamp();
+        long oneMinuteOldest = oneMinuteRollups.getOldestTimestamp();
+
+        /* A resolution covers the range if it reaches back to the start of
+         * the range, or if no coarser resolution reaches back further. */
+        if ((sampleOldest <= fromTimestamp || sampleOldest <= Math.min(tenSecondOldest, oneMinuteOldest))
+                && samples.count(fromTimestamp, toTimestamp) <= maxPoints) {
+            return readSamples(fromTimestamp, toTimestamp);
+        }
+        if ((tenSecondOldest <= fromTimestamp || tenSecondOldest <= oneMinuteOldest)
+                && tenSecondRollups.count(fromTimestamp, toTimestamp) <= maxPoints) {
+            return readRollups(tenSecondRollups, fromTimestamp, toTimestamp);
+        }
+        return readRollups(oneMinuteRollups, fromTimestamp, toTimestamp);
+    }
+
+    private TimeSeriesRange readSamples(long fromTimestamp, long toTimestamp) {
+        int capacity = samples.count(fromTimestamp, toTimestamp);
+        long[] timestamps = new long[capacity];
+        double[] values = new double[capacity];
+        int count = samples.read(fromTimestamp, toTimestamp, timestamps, values);
+        return TimeSeriesRange.ofSamples(timestamps, values, count);
+    }
+
+    private static TimeSeriesRange readRollups(RollupBuffer rollups, long fromTimestamp, long toTimestamp) {
+        TimeSeriesRange range = new TimeSeriesRange(rollups.getResolution(), rollups.count(fromTimestamp, toTimestamp));
+        rollups.read(fromTimestamp, toTimestamp, range);
+        return range;
+    }
+
+    /**
+     * Returns the full resolution samples.
+     *
+     * @return the sample buffer.
+     */
+    public SampleRingBuffer getSamples() {
+        return samples;
+    }
+
+    public RollupBuffer getTenSecondRollups() {
+        return tenSecondRollups;
+    }
+
+    public RollupBuffer getOneMinuteRollups() {
+        return oneMinuteRollups;
+    }
+
+    /**
+     * Writes the buffers to their files if they are memory-mapped.
+     */
+    public void force() {
+        samples.force();
+        tenSecondRollups.force();
+        oneMinuteRollups.force();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.HardwareTreeElement;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Publishes every snapshot of a fanning service into a memory-mapped file, so
+ * that other processes on the same machine can read the sensor values and
+ * controlled fan values without reading the hardware again. This is the same
+ * idea as the shared memory interface of OpenHardwareMonitor. Reading the
+ * file does not need any system calls after it has been mapped.
+ *
+ * The file is protected by a sequence lock. The lock is odd while a snapshot
+ * is being written. A reader reads the lock, reads the values, and reads the
+ * lock again. If the lock was odd or changed, the reader was racing with the
+ * writer and must try again. {@link SharedSnapshotReader} does this for Java
+ * processes.
+ *
+ * All numbers are big-endian. The layout of version 1 is:
+ * <pre>
+ * int    magic "FANS"
+ * int    version
+ * long   sequence lock
+ * long   snapshot sequence number
+ * long   snapshot time in milliseconds since the epoch
+ * int    size of the file in bytes
+ * int    id generation, which changes every time the ids change
+ * int    number of sensors
+ * int    number of fan controllers
+ * int    offset of the id table
+ * int    length of the id table in bytes
+ * long   reserved
+ * number of sensors times:
+ *   double sensor value
+ * number of fan controllers times:
+ *   double controlled value, NaN if not controlled
+ * id table, first the sensors and then the fan controllers:
+ *   unsigned short length in bytes
+ *   UTF-8 bytes of the id
+ * </pre>
+ *
+ * The file only grows. When the hardware changes so that the ids don't fit
+ * anymore, the file is made bigger, and readers must map it again.
+ *
+ * @author Tuupertunut
+ */
+public class SharedSnapshotExport implements Closeable {
+
+    static final int MAGIC = 0x46414E53;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int LOCK_OFFSET = 8;
+    static final int SEQUENCE_OFFSET = 16;
+    static final int TIMESTAMP_OFFSET = 24;
+    static final int FILE_SIZE_OFFSET = 32;
+    static final int ID_GENERATION_OFFSET = 36;
+    static final int SENSOR_COUNT_OFFSET = 40;
+    static final int FAN_COUNT_OFFSET = 44;
+    static final int ID_TABLE_OFFSET_OFFSET = 48;
+    static final int ID_TABLE_LENGTH_OFFSET = 52;
+
+    private final FanningService fanningService;
+    private final FileChannel channel;
+    private final Consumer<HardwareSnapshot> snapshotListener;
+    private volatile Consumer<Exception> errorHandler;
+
+    /* Guarded by this. */
+    private ByteBuffer buffer;
+    private long lock;
+    private int idGeneration;
+    private HardwareIndex exportedIndex;
+
+    /**
+     * Creates a new SharedSnapshotExport. The file is created if it does not
+     * exist. Nothing is published before {@link #start()}.
+     *
+     * @param fanningService the service whose snapshots are published.
+     * @param filePath the file to publish into.
+     * @throws IOException if the file can't be opened.
+     */
+    public SharedSnapshotExport(FanningService fanningService, Path filePath) throws IOException {
+        this.fanningService = fanningService;
+        this.channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.snapshotListener = this::publish;
+        this.errorHandler = (Exception ex) -> {
+        };
+        this.exportedIndex = null;
+
+        /* The file of a previous run is never shrunk, because readers may
+         * still have it mapped. Its lock and id generation are continued, so
+         * that readers notice the new ids. */
+        int fileSize = (int) Math.max(HEADER_SIZE, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        boolean previousRun = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+        this.lock = previousRun ? buffer.getLong(LOCK_OFFSET) | 1 : 1;
+        this.idGeneration = previousRun ? buffer.getInt(ID_GENERATION_OFFSET) + 1 : 0;
+
+        buffer.putLong(LOCK_OFFSET, lock);
+        MemoryFences.storeFence();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(FILE_SIZE_OFFSET, fileSize);
+        buffer.putInt(ID_GENERATION_OFFSET, idGeneration);
+        buffer.putInt(SENSOR_COUNT_OFFSET, 0);
+        buffer.putInt(FAN_COUNT_OFFSET, 0);
+        buffer.putInt(ID_TABLE_OFFSET_OFFSET, HEADER_SIZE);
+        buffer.putInt(ID_TABLE_LENGTH_OFFSET, 0);
+        endWrite();
+    }
+
+    /**
+     * Sets the handler that is called in the updater thread when the ids of
+     * new hardware can't be written. The snapshot is then not published, and
+     * the ids are tried again with the next snapshot. By default errors are
+     * ignored.
+     *
+     * @param errorHandler the error handler.
+     */
+    public void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Publishes the latest snapshot and starts publishing every new snapshot.
+     */
+    public void start() {
+        fanningService.addSnapshotListener(snapshotListener);
+        publish(fanningService.getSnapshot());
+    }
+
+    /**
+     * Stops publishing and closes the file. The last published snapshot stays
+     * in the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        fanningService.removeSnapshotListener(snapshotListener);
+        channel.close();
+    }
+
+    private void publish(HardwareSnapshot snapshot) {
+        try {
+            write(snapshot, System.currentTimeMillis());
+        } catch (IOException ex) {
+            errorHandler.accept(ex);
+        }
+    }
+
+    /**
+     * Writes the snapshot into the file. Nothing is allocated unless the
+     * hardware has changed.
+     *
+     * @param snapshot the snapshot to write.
+     * @param timestamp the time of the snapshot in milliseconds since the
+     * epoch.
+     * @throws IOException if the file could not be made bigger.
+     */
+    synchronized void write(HardwareSnapshot snapshot, long timestamp) throws IOException {
+        HardwareIndex index = snapshot.getHardwareIndex();
+        int sensorCount = index.getAllSensors().size();
+        int fanCount = index.getAllFanControllers().size();
+
+        beginWrite();
+        try {
+            if (index != exportedIndex) {
+                writeIds(index);
+                exportedIndex = index;
+            }
+
+            buffer.putLong(SEQUENCE_OFFSET, snapshot.getSequence());
+            buffer.putLong(TIMESTAMP_OFFSET, timestamp);
+            int offset = HEADER_SIZE;
+            for (int i = 0; i < sensorCount; i++) {
+                buffer.putDouble(offset, snapshot.getSensorValue(i));
+                offset += Double.BYTES;
+            }
+            for (int i = 0; i < fanCount; i++) {
+                buffer.putDouble(offset, snapshot.getControlledValue(i));
+                offset += Double.BYTES;
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /* The lock is always written before and after the values. */
+    private void beginWrite() {
+        lock++;
+        buffer.putLong(LOCK_OFFSET, lock);
+        MemoryFences.storeFence();
+    }
+
+    private void endWrite() {
+        MemoryFences.storeFence();
+        lock++;
+        buffer.putLong(LOCK_OFFSET, lock);
+    }
+
+    /* Writes the counts and the id table, and makes the file bigger if they
+     * don't fit. Called while the lock is odd. Nothing is changed if this
+     * throws. */
+    private void writeIds(HardwareIndex index) throws IOException {
+        List<? extends HardwareTreeElement> sensors = index.getAllSensors();
+        List<? extends HardwareTreeElement> fans = index.getAllFanControllers();
+
+        byte[][] ids = new byte[sensors.size() + fans.size()][];
+        int idTableLength = 0;
+        for (int i = 0; i < ids.length; i++) {
+            HardwareTreeElement element = i < sensors.size() ? sensors.get(i) : fans.get(i - sensors.size());
+            ids[i] = element.getId().getBytes(StandardCharsets.UTF_8);
+            if (ids[i].length > 0xFFFF) {
+                throw new IOException("Id is too long: " + element.getId());
+            }
+            idTableLength += Short.BYTES + ids[i].length;
+        }
+
+        int idTableOffset = HEADER_SIZE + (sensors.size() + fans.size()) * Double.BYTES;
+        int fileSize = idTableOffset + idTableLength;
+        if (fileSize > buffer.capacity()) {
+            /* The new mapping shares the pages of the old one, so the odd lock
+             * is already in it. */
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.putInt(FILE_SIZE_OFFSET, fileSize);
+        }
+
+        idGeneration++;
+        buffer.putInt(ID_GENERATION_OFFSET, idGeneration);
+        buffer.putInt(SENSOR_COUNT_OFFSET, sensors.size());
+        buffer.putInt(FAN_COUNT_OFFSET, fans.size());
+        buffer.putInt(ID_TABLE_OFFSET_OFFSET, idTableOffset);
+        buffer.putInt(ID_TABLE_LENGTH_OFFSET, idTableLength);
+
+        int offset = idTableOffset;
+        for (byte[] id : ids) {
+            buffer.putShort(offset, (short) id.length);
+            offset += Short.BYTES;
+            for (int i = 0; i < id.length; i++) {
+                buffer.put(offset + i, id[i]);
+            }
+            offset += id.length;
+        }
+    }
+}
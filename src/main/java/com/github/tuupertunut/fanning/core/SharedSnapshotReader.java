@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the snapshots that a {@link SharedSnapshotExport} publishes, possibly
+ * in another process. The ids are parsed only when they change, so reading a
+ * snapshot only copies the values out of the mapped file.
+ *
+ * A reader is meant to be used from one thread.
+ *
+ * @author Tuupertunut
+ */
+public class SharedSnapshotReader {
+
+    private final Path filePath;
+    private ByteBuffer buffer;
+
+    private int idGeneration;
+    private List<String> sensorIds;
+    private List<String> fanControllerIds;
+
+    private SharedSnapshotReader(Path filePath) {
+        this.filePath = filePath;
+        this.idGeneration = -1;
+        this.sensorIds = Collections.emptyList();
+        this.fanControllerIds = Collections.emptyList();
+    }
+
+    /**
+     * Maps a file that a {@link SharedSnapshotExport} publishes into.
+     *
+     * @param filePath the file.
+     * @return a reader of the file.
+     * @throws IOException if the file can't be mapped or is not a snapshot
+     * file.
+     */
+    public static SharedSnapshotReader open(Path filePath) throws IOException {
+        SharedSnapshotReader reader = new SharedSnapshotReader(filePath);
+        reader.map();
+        if (reader.buffer.capacity() < SharedSnapshotExport.HEADER_SIZE || reader.buffer.getInt(0) != SharedSnapshotExport.MAGIC || reader.buffer.getInt(4) != SharedSnapshotExport.VERSION) {
+            throw new IOException("Not a snapshot file of version " + SharedSnapshotExport.VERSION + ": " + filePath);
+        }
+        return reader;
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            /* The mapping stays valid after the channel is closed. */
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads the latest published snapshot. If the writer is publishing at the
+     * same time, this waits until it has finished. If the writer died in the
+     * middle of publishing, this waits until a new writer has started.
+     *
+     * @return the snapshot.
+     * @throws IOException if the file has grown and can't be mapped again.
+     */
+    public Snapshot read() throws IOException {
+        while (true) {
+            if (buffer.getInt(SharedSnapshotExport.FILE_SIZE_OFFSET) > buffer.capacity()) {
+                map();
+                continue;
+            }
+
+            long lockBefore = buffer.getLong(SharedSnapshotExport.LOCK_OFFSET);
+            if ((lockBefore & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            /* The values are always read between the two reads of the
+             * lock. */
+            MemoryFences.loadFence();
+
+            long sequence = buffer.getLong(SharedSnapshotExport.SEQUENCE_OFFSET);
+            long timestamp = buffer.getLong(SharedSnapshotExport.TIMESTAMP_OFFSET);
+            int generation = buffer.getInt(SharedSnapshotExport.ID_GENERATION_OFFSET);
+            int sensorCount = buffer.getInt(SharedSnapshotExport.SENSOR_COUNT_OFFSET);
+            int fanCount = buffer.getInt(SharedSnapshotExport.FAN_COUNT_OFFSET);
+            int idTableOffset = buffer.getInt(SharedSnapshotExport.ID_TABLE_OFFSET_OFFSET);
+            int idTableLength = buffer.getInt(SharedSnapshotExport.ID_TABLE_LENGTH_OFFSET);
+
+            /* Values read during a write may be garbage. */
+            boolean valid = sensorCount >= 0 && fanCount >= 0
+                    && (long) SharedSnapshotExport.HEADER_SIZE + ((long) sensorCount + fanCount) * Double.BYTES <= idTableOffset
+                    && idTableLength >= 0 && (long) idTableOffset + idTableLength <= buffer.capacity();
+            if (!valid) {
+                Thread.yield();
+                continue;
+            }
+
+            double[] sensorValues = new double[sensorCount];
+            double[] controlledValues = new double[fanCount];
+            int offset = SharedSnapshotExport.HEADER_SIZE;
+            for (int i = 0; i < sensorCount; i++) {
+                sensorValues[i] = buffer.getDouble(offset);
+                offset += Double.BYTES;
+            }
+            for (int i = 0; i < fanCount; i++) {
+                controlledValues[i] = buffer.getDouble(offset);
+                offset += Double.BYTES;
+            }
+
+            String[] ids = null;
+            if (generation != idGeneration) {
+                ids = readIds(sensorCount + fanCount, idTableOffset, idTableLength);
+            }
+
+            MemoryFences.loadFence();
+            if (buffer.getLong(SharedSnapshotExport.LOCK_OFFSET) != lockBefore || (generation != idGeneration && ids == null)) {
+                continue;
+            }
+
+            if (ids != null) {
+                sensorIds = Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(ids, 0, sensorCount)));
+                fanControllerIds = Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(ids, sensorCount, ids.length)));
+                idGeneration = generation;
+            }
+            return new Snapshot(sequence, timestamp, sensorIds, sensorValues, fanControllerIds, controlledValues);
+        }
+    }
+
+    /* Returns null if the table is not consistent, which can only happen
+     * when it is read during a write. */
+    private String[] readIds(int count, int idTableOffset, int idTableLength) {
+        String[] ids = new String[count];
+        int offset = idTableOffset;
+        int end = idTableOffset + idTableLength;
+        for (int i = 0; i < count; i++) {
+            if (offset + Short.BYTES > end) {
+                return null;
+            }
+            int length = Short.toUnsignedInt(buffer.getShort(offset));
+            offset += Short.BYTES;
+            if (offset + length > end) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bytes[j] = buffer.get(offset + j);
+            }
+            ids[i] = new String(bytes, StandardCharsets.UTF_8);
+            offset += length;
+        }
+        return ids;
+    }
+
+    /**
+     * One consistent snapshot read from the file. Objects are immutable.
+     */
+    public static class Snapshot {
+
+        private final long sequence;
+        private final long timestamp;
+        private final List<String> sensorIds;
+        private final double[] sensorValues;
+        private final List<String> fanControllerIds;
+        private final double[] controlledValues;
+
+        private Snapshot(long sequence, long timestamp, List<String> sensorIds, double[] sensorValues, List<String> fanControllerIds, double[] controlledValues) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.sensorIds = sensorIds;
+            this.sensorValues = sensorValues;
+            this.fanControllerIds = fanControllerIds;
+            this.controlledValues = controlledValues;
+        }
+
+        /**
+         * @return the sequence number of the snapshot in the fanning service.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the time of the snapshot in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the ids of the sensors, in the order of the values.
+         */
+        public List<String> getSensorIds() {
+            return sensorIds;
+        }
+
+        /**
+         * @param position the position of the sensor in the ids.
+         * @return the value of the sensor.
+         */
+        public double getSensorValue(int position) {
+            return sensorValues[position];
+        }
+
+        /**
+         * @return the ids of the fan controllers, in the order of the values.
+         */
+        public List<String> getFanControllerIds() {
+            return fanControllerIds;
+        }
+
+        /**
+         * @param position the position of the fan controller in the ids.
+         * @return the controlled value, or NaN if the fan is not controlled.
+         */
+        public double getControlledValue(int position) {
+            return controlledValues[position];
+        }
+    }
+}
@@ -25,7 +25,9 @@ package com.github.tuupertunut.fanning.core;
 
 import com.github.cliftonlabs.json_simple.JsonException;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A service for permanently storing fan curves.
@@ -43,6 +45,27 @@ public interface Storage {
      */
     List<FanCurve> load() throws IOException, JsonException;
 
+    /**
+     * Returns the fan curves that were loaded from the storage but whose
+     * hardware was not present. Storages that keep such fan curves store them
+     * back until they are replaced.
+     *
+     * @return a list of unbound fan curves.
+     */
+    default List<UnboundFanCurve> getUnboundFanCurves() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Replaces the unbound fan curves of the storage, so that they are stored
+     * along with the next stored fan curves. Storages that don't keep unbound
+     * fan curves ignore this, which is what the default implementation does.
+     *
+     * @param unboundFanCurves the unbound fan curves to keep.
+     */
+    default void setUnboundFanCurves(List<UnboundFanCurve> unboundFanCurves) {
+    }
+
     /**
      * Stores a list of fan curves into the storage.
      *
@@ -50,4 +73,36 @@ public interface Storage {
      * @throws IOException
      */
     void store(List<FanCurve> fanCurves) throws IOException;
+
+    /**
+     * Stores only the changes made to a list of fan curves since the last
+     * store. Fan curves are identified by the ids of their fan controllers.
+     * Removed fan curves are deleted before the changed fan curves are added
+     * or replaced. Implementations that can't update single fan curves store
+     * the whole list, which is what the default implementation does.
+     *
+     * @param fanCurves the whole list of fan curves.
+     * @param changedFanCurves the fan curves that have been added or edited.
+     * @param removedFanControllerIds the fan controller ids of the removed fan
+     * curves.
+     * @throws IOException
+     */
+    default void storeChanges(List<FanCurve> fanCurves, List<FanCurve> changedFanCurves, Set<String> removedFanControllerIds) throws IOException {
+        store(fanCurves);
+    }
+
+    /**
+     * Copies all fan curves from this storage into another storage, including
+     * the unbound fan curves. This can be used for converting between storage
+     * formats, for example from JSON to binary.
+     *
+     * @param target the storage where the fan curves are stored.
+     * @throws IOException
+     * @throws JsonException
+     */
+    default void copyTo(Storage target) throws IOException, JsonException {
+        List<FanCurve> fanCurves = load();
+        target.setUnboundFanCurves(getUnboundFanCurves());
+        target.store(fanCurves);
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+/**
+ * The history of one sensor in a time range at one resolution. Each point has
+ * the minimum, maximum and average of the samples in its time bucket, and the
+ * number of samples. At full resolution every point is one sample. The points
+ * are stored in primitive columns and sorted by time.
+ *
+ * @author Tuupertunut
+ */
+public class TimeSeriesRange {
+
+    private final long resolution;
+    final long[] timestamps;
+    final double[] mins;
+    final double[] maxs;
+    final double[] averages;
+    final int[] counts;
+    private int size;
+
+    /**
+     * Creates a new empty range with room for the given number of points.
+     *
+     * @param resolution the length of a time bucket in milliseconds, or 0 for
+     * full resolution.
+     * @param capacity the maximum number of points.
+     */
+    TimeSeriesRange(long resolution, int capacity) {
+        this(resolution, new long[capacity], new double[capacity], new double[capacity], new double[capacity], new int[capacity], 0);
+    }
+
+    private TimeSeriesRange(long resolution, long[] timestamps, double[] mins, double[] maxs, double[] averages, int[] counts, int size) {
+        this.resolution = resolution;
+        this.timestamps = timestamps;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.averages = averages;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    /* Creates a full resolution range from raw samples, where the minimum,
+     * maximum and average of a point are all the sample value. The arrays are
+     * taken over. */
+    static TimeSeriesRange ofSamples(long[] timestamps, double[] values, int size) {
+        int[] counts = new int[timestamps.length];
+        for (int i = 0; i < size; i++) {
+            counts[i] = Double.isNaN(values[i]) ? 0 : 1;
+        }
+        return new TimeSeriesRange(0, timestamps, values, values, values, counts, size);
+    }
+
+    /* Drops the first points, keeping the next ones up to the given
+     * count. */
+    void removeFirst(int removed, int count) {
+        int kept = count - removed;
+        if (removed > 0) {
+            System.arraycopy(timestamps, removed, timestamps, 0, kept);
+            System.arraycopy(mins, removed, mins, 0, kept);
+            System.arraycopy(maxs, removed, maxs, 0, kept);
+            System.arraycopy(averages, removed, averages, 0, kept);
+            System.arraycopy(counts, removed, counts, 0, kept);
+        }
+        size = kept;
+    }
+
+    /**
+     * Returns the length of the time bucket of one point.
+     *
+     * @return the resolution in milliseconds, or 0 if every point is one
+     * sample.
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the start time of the point.
+     *
+     * @param i the index of the point.
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getTimestamp(int i) {
+        return timestamps[checkIndex(i)];
+    }
+
+    public double getMin(int i) {
+        return mins[checkIndex(i)];
+    }
+
+    public double getMax(int i) {
+        return maxs[checkIndex(i)];
+    }
+
+    public double getAverage(int i) {
+        return averages[checkIndex(i)];
+    }
+
+    /**
+     * Returns the number of samples that the point summarizes. NaN samples
+     * are not counted.
+     *
+     * @param i the index of the point.
+     * @return the number of samples.
+     */
+    public int getCount(int i) {
+        return counts[checkIndex(i)];
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the minimum of all samples in the range.
+     *
+     * @return the minimum, or NaN if there are no samples.
+     */
+    public double getMin() {
+        double min = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 0 && (Double.isNaN(min) || mins[i] < min)) {
+                min = mins[i];
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns the maximum of all samples in the range.
+     *
+     * @return the maximum, or NaN if there are no samples.
+     */
+    public double getMax() {
+        double max = Double.NaN;
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 0 && (Double.isNaN(max) || maxs[i] > max)) {
+                max = maxs[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the average of all samples in the range.
+     *
+     * @return the average, or NaN if there are no samples.
+     */
+    public double getAverage() {
+        double sum = 0;
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 0) {
+                sum += averages[i] * counts[i];
+                count += counts[i];
+            }
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+}
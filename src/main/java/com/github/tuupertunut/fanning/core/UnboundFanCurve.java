@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A fan curve as it is in the storage, referring to its sensor and fan
+ * controller by their ids. A fan curve stays unbound while its hardware is
+ * not present, and is bound into a FanCurve when the hardware appears.
+ * Objects are immutable.
+ *
+ * @author Tuupertunut
+ */
+public class UnboundFanCurve {
+
+    private final String sensorId;
+    private final String fanControllerId;
+    private final List<Mapping> changePoints;
+
+    /**
+     * Creates a new UnboundFanCurve.
+     *
+     * @param sensorId the id of the sensor.
+     * @param fanControllerId the id of the fan controller.
+     * @param changePoints a list of change points.
+     */
+    public UnboundFanCurve(String sensorId, String fanControllerId, List<Mapping> changePoints) {
+        this.sensorId = sensorId;
+        this.fanControllerId = fanControllerId;
+        this.changePoints = Collections.unmodifiableList(new ArrayList<>(changePoints));
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public String getFanControllerId() {
+        return fanControllerId;
+    }
+
+    public List<Mapping> getChangePoints() {
+        return changePoints;
+    }
+
+    /**
+     * Binds this fan curve to the hardware in the index.
+     *
+     * @param index an index of the current hardware.
+     * @return a fan curve, or an empty Optional if the sensor or the fan
+     * controller is not present.
+     */
+    public Optional<FanCurve> bind(HardwareIndex index) {
+        Optional<Sensor> sensor = index.findSensorById(sensorId);
+        Optional<FanController> fanController = index.findFanControllerById(fanControllerId);
+        if (sensor.isPresent() && fanController.isPresent()) {
+            return Optional.of(new FanCurve(sensor.get(), fanController.get(), changePoints));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Binds fan curves to the hardware in the index in one batch.
+     *
+     * @param unboundFanCurves the fan curves to bind.
+     * @param index an index of the current hardware.
+     * @param stillUnbound the fan curves whose hardware is not present are
+     * added into this list.
+     * @return the bound fan curves, in the original order.
+     */
+    public static List<FanCurve> bindAll(List<UnboundFanCurve> unboundFanCurves, HardwareIndex index, List<UnboundFanCurve> stillUnbound) {
+        List<FanCurve> fanCurves = new ArrayList<>(unboundFanCurves.size());
+        for (UnboundFanCurve unboundFanCurve : unboundFanCurves) {
+            Optional<FanCurve> fanCurve = unboundFanCurve.bind(index);
+            if (fanCurve.isPresent()) {
+                fanCurves.add(fanCurve.get());
+            } else {
+                stillUnbound.add(unboundFanCurve);
+            }
+        }
+        return fanCurves;
+    }
+
+    /**
+     * Filters out the unbound fan curves that are replaced by bound fan curves
+     * for the same fan controllers.
+     *
+     * @param unboundFanCurves a list of unbound fan curves.
+     * @param fanCurves a list of bound fan curves.
+     * @return the unbound fan curves whose fan controllers have no bound fan
+     * curve.
+     */
+    public static List<UnboundFanCurve> notReplacedBy(List<UnboundFanCurve> unboundFanCurves, List<FanCurve> fanCurves) {
+        if (unboundFanCurves.isEmpty()) {
+            return unboundFanCurves;
+        }
+
+        Set<String> boundIds = new HashSet<>();
+        for (FanCurve fanCurve : fanCurves) {
+            boundIds.add(fanCurve.getFanController().getId());
+        }
+        List<UnboundFanCurve> notReplaced = new ArrayList<>();
+        for (UnboundFanCurve unboundFanCurve : unboundFanCurves) {
+            if (!boundIds.contains(unboundFanCurve.getFanControllerId())) {
+                notReplaced.add(unboundFanCurve);
+            }
+        }
+        return notReplaced;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.daemon;
+
+import com.github.tuupertunut.fanning.core.FanningMetrics;
+import com.github.tuupertunut.fanning.core.FanningService;
+import com.github.tuupertunut.fanning.core.JsonStorage;
+import com.github.tuupertunut.fanning.core.ProfileWatcher;
+import com.github.tuupertunut.fanning.core.SharedSnapshotExport;
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.ParallelHardwareManager;
+import com.github.tuupertunut.fanning.hwmon.HwmonHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.util.ConfigDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point for running the software without a GUI. Only the hardware,
+ * the storage and the fanning service are created, so fans are controlled
+ * right after the JVM has started and no GUI toolkit is initialized. The fan
+ * curves are edited by replacing the fan curve file, which is reloaded
+ * automatically.
+ *
+ * @author Tuupertunut
+ */
+public class FanningDaemon {
+
+    /**
+     * The default polling interval of sensors whose value is changing. Reading
+     * a hwmon attribute is cheap, so changing sensors can be followed well
+     * within a second.
+     */
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofMillis(250);
+
+    /**
+     * The default polling interval of sensors whose value is stable.
+     */
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofSeconds(5);
+
+    /**
+     * How often the hwmon devices are listed again to find hot-plugged
+     * devices.
+     */
+    public static final Duration RESCAN_INTERVAL = Duration.ofSeconds(10);
+
+    private final HardwareManager hwManager;
+    private final FanningService fanningService;
+    private final ProfileWatcher profileWatcher;
+    private final CountDownLatch stopped;
+    private Duration minInterval;
+    private Duration maxInterval;
+    private Path snapshotExportPath;
+    private SharedSnapshotExport snapshotExport;
+
+    /**
+     * Creates a new FanningDaemon and loads the fan curves.
+     *
+     * @param hwManager the service for using the hardware.
+     * @param profilePath the fan curve file.
+     * @throws Exception if the fan curves could not be loaded.
+     */
+    public FanningDaemon(HardwareManager hwManager, Path profilePath) throws Exception {
+        this.hwManager = hwManager;
+        this.stopped = new CountDownLatch(1);
+        this.minInterval = DEFAULT_MIN_INTERVAL;
+        this.maxInterval = DEFAULT_MAX_INTERVAL;
+
+        JsonStorage storage = new JsonStorage(hwManager, profilePath);
+        this.fanningService = new FanningService(hwManager, storage);
+        fanningService.loadFromStorage();
+
+        Files.createDirectories(profilePath.toAbsolutePath().getParent());
+        this.profileWatcher = new ProfileWatcher(fanningService, storage, profilePath);
+    }
+
+    /**
+     * Sets the polling intervals of the sensors. Must be called before
+     * {@link #start()}.
+     *
+     * @param minInterval the polling interval of changing sensors.
+     * @param maxInterval the polling interval of stable sensors.
+     */
+    public void setPollingIntervals(Duration minInterval, Duration maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Sets the file into which the sensor values and controlled fan values
+     * are published for other processes, see {@link SharedSnapshotExport}.
+     * Must be called before {@link #start()}. By default nothing is
+     * published.
+     *
+     * @param snapshotExportPath the file to publish into.
+     */
+    public void setSnapshotExportPath(Path snapshotExportPath) {
+        this.snapshotExportPath = snapshotExportPath;
+    }
+
+    /**
+     * Starts controlling the fans. Only the sensors of the fan curves are
+     * polled, each on its own schedule, unless the snapshots are published,
+     * in which case all sensors are polled.
+     *
+     * @throws IOException if the fan curve file can't be watched or the
+     * snapshot file can't be opened.
+     */
+    public void start() throws IOException {
+        if (snapshotExportPath != null) {
+            /* Other processes read all sensors from the file, so the sensors
+             * without a fan curve must be kept up to date too. */
+            fanningService.setMonitoredSensors(hwManager.getAllSensors());
+            hwManager.addStructureListener(() -> fanningService.setMonitoredSensors(hwManager.getAllSensors()));
+            snapshotExport = new SharedSnapshotExport(fanningService, snapshotExportPath);
+            snapshotExport.start();
+        }
+        fanningService.initAdaptiveUpdater(minInterval, maxInterval);
+        profileWatcher.start();
+    }
+
+    /**
+     * Stops the control loop and watching the fan curve file, and gives the
+     * control of all fans back to the hardware, so that the fans are in a
+     * known state after the software has exited.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void stop() throws IOException, InterruptedException {
+        if (snapshotExport != null) {
+            snapshotExport.close();
+        }
+        profileWatcher.close();
+        fanningService.stopUpdater();
+        for (FanController fan : hwManager.getAllFanControllers()) {
+            fan.setControlledValue(Double.NaN);
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Blocks until the daemon is stopped.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    public FanningService getFanningService() {
+        return fanningService;
+    }
+
+    /**
+     * The polling interval of changing sensors can be set in milliseconds with
+     * the system property {@code fanning.minInterval}.
+     *
+     * @param args an optional path to the fan curve file. By default the file
+     * in the user config directory is used.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Path profilePath = args.length > 0 ? Paths.get(args[0]) : ConfigDir.getDefaultProfilePath();
+
+        /* The real hardware is used on Linux. Elsewhere the daemon runs on
+         * the mock hardware. The hwmon devices are polled in parallel, so
+         * that one slow device does not delay the others. */
+        HwmonHardwareManager hwmonManager = HwmonHardwareManager.isAvailable() ? new HwmonHardwareManager() : null;
+        ParallelHardwareManager parallelManager = hwmonManager != null
+                ? new ParallelHardwareManager(hwmonManager, 4, Duration.ofMillis(500))
+                : null;
+        HardwareManager hwManager = parallelManager != null ? parallelManager : new MockHardwareManager();
+
+        FanningDaemon daemon = new FanningDaemon(hwManager, profilePath);
+        long minIntervalMillis = Long.getLong("fanning.minInterval", DEFAULT_MIN_INTERVAL.toMillis());
+        daemon.setPollingIntervals(Duration.ofMillis(minIntervalMillis), DEFAULT_MAX_INTERVAL);
+
+        /* Other processes can read the sensor values from shared memory
+         * instead of reading the hardware again. */
+        daemon.setSnapshotExportPath(ConfigDir.getDefaultSnapshotExportPath());
+
+        /* The metrics of the update loop are published over JMX. */
+        FanningMetrics metrics = daemon.getFanningService().getMetrics();
+        if (parallelManager != null) {
+            parallelManager.setUpdateTimeListener(metrics::recordDeviceRead);
+        }
+        metrics.register();
+        daemon.start();
+
+        /* Fan curves of hot-plugged devices are bound when the devices are
+         * found. Making a daemon thread, so it will automatically die when
+         * the main thread dies. */
+        if (hwmonManager != null) {
+            ScheduledExecutorService rescanner = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+            rescanner.scheduleWithFixedDelay(() -> {
+                try {
+                    hwmonManager.rescan();
+                } catch (IOException ex) {
+                    /* Tried again on the next rescan. */
+                }
+            }, RESCAN_INTERVAL.toNanos(), RESCAN_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.stop();
+
+                /* The fans have been given back to the hardware, so the
+                 * polling threads are not needed anymore. */
+                if (parallelManager != null) {
+                    parallelManager.close();
+                }
+            } catch (IOException | InterruptedException ex) {
+                /* Exiting anyway. */
+            }
+        }));
+
+        /* The updater threads are daemon threads, so the main thread keeps
+         * the JVM alive. */
+        daemon.awaitStop();
+    }
+}
@@ -81,7 +81,7 @@ public class CreateFanCurvePane extends AnchorPane {
         }));
 
         createButton.setOnAction((ActionEvent event) -> {
-            fanningService.fanCurvesProperty().add(new FanCurve(selectedSensorProperty.getValue(), selectedFanProperty.getValue(), Arrays.asList()));
+            fanningService.getFanCurves().add(new FanCurve(selectedSensorProperty.getValue(), selectedFanProperty.getValue(), Arrays.asList()));
         });
     }
 }
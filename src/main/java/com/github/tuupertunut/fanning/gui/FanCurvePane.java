@@ -26,10 +26,16 @@ package com.github.tuupertunut.fanning.gui;
 import com.github.tuupertunut.fanning.core.FanCurve;
 import com.github.tuupertunut.fanning.core.FanningService;
 import com.github.tuupertunut.fanning.core.Mapping;
+import com.github.tuupertunut.fanning.core.SensorHistory;
+import com.github.tuupertunut.fanning.core.SensorTimeSeries;
+import com.github.tuupertunut.fanning.core.TimeSeriesRange;
 import com.github.tuupertunut.fanning.util.ObservableListBinding;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.Optional;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ListBinding;
 import javafx.beans.property.ReadOnlyListWrapper;
@@ -49,6 +55,7 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.shape.Rectangle;
+import javafx.util.Duration;
 import org.fxmisc.easybind.EasyBind;
 
 /**
@@ -57,7 +64,11 @@ import org.fxmisc.easybind.EasyBind;
  */
 public class FanCurvePane extends AnchorPane {
 
+    /* The history summary covers this long, in milliseconds. */
+    private static final long HISTORY_SUMMARY_RANGE = 60 * 60 * 1000;
+
     private final FanningService fanningService;
+    private final SensorHistory sensorHistory;
     private final ObservableValue<FanCurve> selectedFanCurveProperty;
 
     private LineChart<Double, Double> chart;
@@ -69,12 +80,15 @@ public class FanCurvePane extends AnchorPane {
     @FXML
     private Label infoLabel;
     @FXML
+    private Label historyLabel;
+    @FXML
     private Button deleteButton;
     @FXML
     private Button saveButton;
 
-    public FanCurvePane(FanningService fanningService, ObservableValue<FanCurve> selectedFanCurveProperty) {
+    public FanCurvePane(FanningService fanningService, SensorHistory sensorHistory, ObservableValue<FanCurve> selectedFanCurveProperty) {
         this.fanningService = fanningService;
+        this.sensorHistory = sensorHistory;
         this.selectedFanCurveProperty = selectedFanCurveProperty;
 
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("FanCurvePane.fxml"));
@@ -126,7 +140,7 @@ public class FanCurvePane extends AnchorPane {
                 /* This is never visible */
                 return FXCollections.emptyObservableList();
             } else {
-                return new ObservableListBinding<>(EasyBind.map(new ReadOnlyListWrapper<>(selFanCurve.changePointsProperty().sorted(Comparator.comparingDouble((Mapping m) -> m.key))), (ObservableList<Mapping> changePoints) -> {
+                return new ObservableListBinding<>(EasyBind.map(new ReadOnlyListWrapper<>(new FxListAdapter<>(selFanCurve.getChangePoints()).sorted(Comparator.comparingDouble((Mapping m) -> m.key))), (ObservableList<Mapping> changePoints) -> {
 
                     ObservableList<XYChart.Data<Double, Double>> chartPoints = FXCollections.observableArrayList();
                     for (int i = 0; i < changePoints.size(); i++) {
@@ -159,7 +173,7 @@ public class FanCurvePane extends AnchorPane {
                 /* This is never visible */
                 return FXCollections.emptyObservableList();
             } else {
-                return selFanCurve.changePointsProperty();
+                return new FxListAdapter<>(selFanCurve.getChangePoints());
             }
         }));
 
@@ -172,10 +186,18 @@ public class FanCurvePane extends AnchorPane {
             }
         }));
 
+        /* The history changes slowly, so its summary is refreshed only every
+         * few seconds instead of binding it to the snapshots. */
+        Timeline historyRefresher = new Timeline(new KeyFrame(Duration.seconds(10), (ActionEvent event) -> refreshHistorySummary()));
+        historyRefresher.setCycleCount(Animation.INDEFINITE);
+        historyRefresher.play();
+        selectedFanCurveProperty.addListener((ObservableValue<? extends FanCurve> observable, FanCurve oldValue, FanCurve newValue) -> refreshHistorySummary());
+        refreshHistorySummary();
+
         deleteButton.setOnAction((ActionEvent event) -> {
             Optional<ButtonType> result = new Alert(Alert.AlertType.CONFIRMATION, "Do you really want to delete this fan curve?", ButtonType.YES, ButtonType.CANCEL).showAndWait();
             if (result.isPresent() && result.get() == ButtonType.YES) {
-                fanningService.fanCurvesProperty().remove(selectedFanCurveProperty.getValue());
+                fanningService.getFanCurves().remove(selectedFanCurveProperty.getValue());
             }
         });
 
@@ -187,4 +209,25 @@ public class FanCurvePane extends AnchorPane {
             }
         });
     }
+
+    private void refreshHistorySummary() {
+        FanCurve selFanCurve = selectedFanCurveProperty.getValue();
+        if (selFanCurve == null) {
+            /* This is never visible */
+            historyLabel.setText("");
+            return;
+        }
+
+        /* One point per 10 seconds is enough for the summary. */
+        long now = System.currentTimeMillis();
+        Optional<TimeSeriesRange> lastHour = sensorHistory.getHistory(selFanCurve.getSensor()).map((SensorTimeSeries series) -> {
+            return series.query(now - HISTORY_SUMMARY_RANGE, now, (int) (HISTORY_SUMMARY_RANGE / 10_000));
+        });
+        if (lastHour.isPresent() && !Double.isNaN(lastHour.get().getAverage())) {
+            TimeSeriesRange range = lastHour.get();
+            historyLabel.setText(String.format("Last hour: min %.1f, avg %.1f, max %.1f %s", range.getMin(), range.getAverage(), range.getMax(), selFanCurve.getSensor().getMeasurementUnit()));
+        } else {
+            historyLabel.setText("No sensor history yet");
+        }
+    }
 }
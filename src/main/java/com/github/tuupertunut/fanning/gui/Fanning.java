@@ -23,16 +23,23 @@
  */
 package com.github.tuupertunut.fanning.gui;
 
+import com.github.tuupertunut.fanning.core.DebouncedStorage;
 import com.github.tuupertunut.fanning.core.FanningService;
 import com.github.tuupertunut.fanning.core.JsonStorage;
+import com.github.tuupertunut.fanning.core.ProfileWatcher;
+import com.github.tuupertunut.fanning.core.SensorHistory;
 import com.github.tuupertunut.fanning.core.Storage;
 import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.util.ConfigDir;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Duration;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
 
 /**
@@ -42,31 +49,45 @@ import javafx.stage.Stage;
 public class Fanning extends Application {
 
     private FanningService fanningService;
+    private DebouncedStorage storage;
+    private ProfileWatcher profileWatcher;
+    private SensorHistory sensorHistory;
 
     @Override
     public void init() throws Exception {
         HardwareManager hwManager = new MockHardwareManager();
-        Storage jsonStorage = new JsonStorage(hwManager, getPlatformSpecificConfigDir().resolve("Fanning/fanCurves.json"));
-        fanningService = new FanningService(hwManager, jsonStorage);
+        Path profilePath = ConfigDir.getDefaultProfilePath();
+        Storage jsonStorage = new JsonStorage(hwManager, profilePath);
+
+        /* Rapid saves from the GUI are coalesced into one write. */
+        storage = new DebouncedStorage(jsonStorage, Duration.ofMillis(500));
+        fanningService = new FanningService(hwManager, storage);
+        fanningService.setFanCurveExecutor(Platform::runLater);
         fanningService.loadFromStorage();
+
+        /* All sensors are shown in the GUI, so they must all be updated. */
+        fanningService.setMonitoredSensors(hwManager.getAllSensors());
         fanningService.initUpdater(Duration.ofSeconds(1));
-    }
+        fanningService.getMetrics().register();
+
+        /* The history is kept on disk, so it survives restarts. */
+        sensorHistory = new SensorHistory(fanningService, SensorHistory.DEFAULT_CAPACITY, ConfigDir.getDefaultHistoryDir());
+        sensorHistory.start(Duration.ofSeconds(1));
 
-    /* Apache commons says this is a valid way to detect the operating system.
-     * https://github.com/apache/commons-lang/blob/LANG_3_7/src/main/java/org/apache/commons/lang3/SystemUtils.java */
-    private Path getPlatformSpecificConfigDir() {
-        if (System.getProperty("os.name").startsWith("Windows")) {
-            return Paths.get(System.getProperty("user.home")).resolve("AppData/Local");
-        } else if (System.getProperty("os.name").startsWith("Mac OS X")) {
-            return Paths.get(System.getProperty("user.home")).resolve("Library/Application Support");
-        } else {
-            return Paths.get(System.getProperty("user.home")).resolve(".config");
-        }
+        /* Profiles replaced on disk are applied without restarting. They are
+         * read through the debounced storage, which first writes any pending
+         * save, so a reload never reverts fresh edits. */
+        Files.createDirectories(profilePath.getParent());
+        profileWatcher = new ProfileWatcher(fanningService, storage, profilePath);
+        profileWatcher.setErrorHandler((Exception ex) -> Platform.runLater(() -> {
+            new Alert(Alert.AlertType.ERROR, "Could not reload fan curves: " + ex.getMessage(), ButtonType.OK).show();
+        }));
+        profileWatcher.start();
     }
 
     @Override
     public void start(Stage stage) throws Exception {
-        FanningPane root = new FanningPane(fanningService);
+        FanningPane root = new FanningPane(fanningService, sensorHistory);
 
         Scene scene = new Scene(root);
 
@@ -74,6 +95,13 @@ public class Fanning extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() throws Exception {
+        profileWatcher.close();
+        sensorHistory.close();
+        storage.flush();
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -25,6 +25,7 @@ package com.github.tuupertunut.fanning.gui;
 
 import com.github.tuupertunut.fanning.core.FanCurve;
 import com.github.tuupertunut.fanning.core.FanningService;
+import com.github.tuupertunut.fanning.core.SensorHistory;
 import com.github.tuupertunut.fanning.hwinterface.FanController;
 import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
 import com.github.tuupertunut.fanning.hwinterface.HardwareTreeElement;
@@ -33,11 +34,13 @@ import com.github.tuupertunut.fanning.util.ObservableListBinding;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.OptionalDouble;
 import javafx.beans.binding.Binding;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ListBinding;
+import javafx.beans.property.ListProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleListProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -56,6 +59,12 @@ import org.fxmisc.easybind.EasyBind;
 public class FanningPane extends AnchorPane {
 
     private final FanningService fanningService;
+    private final SensorHistory sensorHistory;
+    private final LiveValueRefresher liveValueRefresher;
+
+    /* The fan curves of the service as a JavaFX property, so they can be used
+     * in bindings. */
+    private final ListProperty<FanCurve> fanCurvesProperty;
 
     @FXML
     private TreeTableView<HardwareTreeElement> sensorTreeTable;
@@ -68,8 +77,11 @@ public class FanningPane extends AnchorPane {
      * listeners. This would otherwise be garbage collected. */
     private ListBinding<AnchorPane> containerChildrenBinding;
 
-    public FanningPane(FanningService fanningService) {
+    public FanningPane(FanningService fanningService, SensorHistory sensorHistory) {
         this.fanningService = fanningService;
+        this.sensorHistory = sensorHistory;
+        this.liveValueRefresher = new LiveValueRefresher(fanningService);
+        this.fanCurvesProperty = new SimpleListProperty<>(new FxListAdapter<>(fanningService.getFanCurves()));
 
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("FanningPane.fxml"));
         fxmlLoader.setRoot(this);
@@ -104,9 +116,9 @@ public class FanningPane extends AnchorPane {
                 return null;
             }
         });
-        Binding<FanCurve> selectedFanCurveProperty = EasyBind.combine(selectedFanProperty, fanningService.fanCurvesProperty(), (FanController selFan, ObservableList<FanCurve> fanCurves) -> {
-            if (selFan != null && fanningService.findCurveOfFan(selFan).isPresent()) {
-                return fanningService.findCurveOfFan(selFan).get();
+        Binding<FanCurve> selectedFanCurveProperty = EasyBind.combine(selectedFanProperty, fanCurvesProperty, (FanController selFan, ObservableList<FanCurve> fanCurves) -> {
+            if (selFan != null) {
+                return fanningService.findCurveOfFan(selFan).orElse(null);
             } else {
                 return null;
             }
@@ -115,7 +127,7 @@ public class FanningPane extends AnchorPane {
         NotSelectedPane notSelectedPane = new NotSelectedPane();
         NotControlledPane notControlledPane = new NotControlledPane(selectedFanProperty);
         CreateFanCurvePane createFanCurvePane = new CreateFanCurvePane(fanningService, selectedFanProperty, selectedSensorProperty);
-        FanCurvePane fanCurvePane = new FanCurvePane(fanningService, selectedFanCurveProperty);
+        FanCurvePane fanCurvePane = new FanCurvePane(fanningService, sensorHistory, selectedFanCurveProperty);
 
         containerChildrenBinding = new ObservableListBinding<>(EasyBind.combine(selectedFanProperty, selectedSensorProperty, selectedFanCurveProperty, (FanController selFan, Sensor selSensor, FanCurve selFanCurve) -> {
             if (selFan != null) {
@@ -155,17 +167,15 @@ public class FanningPane extends AnchorPane {
             }
         });
 
-        TreeTableColumn<HardwareTreeElement, String> sensorValueColumn = new TreeTableColumn<>("Value");
+        /* Live values are updated by the refresher, so the cells only need to
+         * know which element they show. */
+        TreeTableColumn<HardwareTreeElement, HardwareTreeElement> sensorValueColumn = new TreeTableColumn<>("Value");
         sensorValueColumn.setPrefWidth(100);
-        sensorValueColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<HardwareTreeElement, String> data) -> {
+        sensorValueColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<HardwareTreeElement, HardwareTreeElement> data) -> {
 
-            HardwareTreeElement elem = data.getValue().getValue();
-            if (elem instanceof Sensor) {
-                return EasyBind.map(((Sensor) elem).valueProperty(), (Number value) -> value.toString() + " " + ((Sensor) elem).getMeasurementUnit());
-            } else {
-                return new ReadOnlyStringWrapper("");
-            }
+            return new ReadOnlyObjectWrapper<>(data.getValue().getValue());
         });
+        sensorValueColumn.setCellFactory(liveValueRefresher.sensorValueCellFactory());
 
         return Arrays.asList(sensorNameColumn, sensorTypeColumn, sensorValueColumn);
     }
@@ -195,23 +205,13 @@ public class FanningPane extends AnchorPane {
             return new ReadOnlyStringWrapper(elem.getName());
         });
 
-        TreeTableColumn<HardwareTreeElement, String> fanValueColumn = new TreeTableColumn<>("Controlled value");
+        TreeTableColumn<HardwareTreeElement, HardwareTreeElement> fanValueColumn = new TreeTableColumn<>("Controlled value");
         fanValueColumn.setPrefWidth(130);
-        fanValueColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<HardwareTreeElement, String> data) -> {
+        fanValueColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<HardwareTreeElement, HardwareTreeElement> data) -> {
 
-            HardwareTreeElement elem = data.getValue().getValue();
-            if (elem instanceof FanController) {
-                return EasyBind.map(((FanController) elem).controlledValueProperty(), (OptionalDouble value) -> {
-                    if (value.isPresent()) {
-                        return Double.toString(value.getAsDouble()) + " " + ((FanController) elem).getMeasurementUnit();
-                    } else {
-                        return "No value";
-                    }
-                });
-            } else {
-                return new ReadOnlyStringWrapper("");
-            }
+            return new ReadOnlyObjectWrapper<>(data.getValue().getValue());
         });
+        fanValueColumn.setCellFactory(liveValueRefresher.controlledValueCellFactory());
 
         TreeTableColumn<HardwareTreeElement, String> fanControlledColumn = new TreeTableColumn<>("Controlled by");
         fanControlledColumn.setPrefWidth(150);
@@ -219,12 +219,8 @@ public class FanningPane extends AnchorPane {
 
             HardwareTreeElement elem = data.getValue().getValue();
             if (elem instanceof FanController) {
-                return EasyBind.map(fanningService.fanCurvesProperty(), (ObservableList<FanCurve> fanCurves) -> {
-                    if (fanningService.findCurveOfFan((FanController) elem).isPresent()) {
-                        return fanningService.findCurveOfFan((FanController) elem).get().getSensor().getName();
-                    } else {
-                        return "Not controlled";
-                    }
+                return EasyBind.map(fanCurvesProperty, (ObservableList<FanCurve> fanCurves) -> {
+                    return fanningService.findCurveOfFan((FanController) elem).map((FanCurve fanCurve) -> fanCurve.getSensor().getName()).orElse("Not controlled");
                 });
             } else {
                 return new ReadOnlyStringWrapper("");
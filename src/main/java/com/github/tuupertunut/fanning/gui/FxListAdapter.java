@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.gui;
+
+import com.github.tuupertunut.fanning.util.ListListener;
+import com.github.tuupertunut.fanning.util.ListenableList;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.List;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Presents a {@link ListenableList} of the core as a JavaFX observable list,
+ * so it can be used in bindings and controls. Modifications of this list are
+ * written through to the source list, and every change of the source list is
+ * fired as a JavaFX list change. The source only holds a weak reference to
+ * the adapter, so adapters can be created freely, for example in bindings.
+ *
+ * @author Tuupertunut
+ * @param <E> the element type of the list.
+ */
+class FxListAdapter<E> extends ObservableListBase<E> {
+
+    private final ListenableList<E> source;
+
+    /* Kept here, so the listener lives as long as the adapter. */
+    private final ListListener<E> sourceListener;
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param source the list to present as an observable list.
+     */
+    FxListAdapter(ListenableList<E> source) {
+        this.source = source;
+        this.sourceListener = new WeakSourceListener<>(source, this);
+        source.addListener(sourceListener);
+    }
+
+    @Override
+    public E get(int index) {
+        return source.get(index);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    /* All modifications go to the source list, which then fires the change
+     * back to this list. */
+    @Override
+    public E set(int index, E element) {
+        return source.set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        source.add(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        return source.remove(index);
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends E> col) {
+        source.setAll(col);
+        return true;
+    }
+
+    private void sourceChanged(int from, List<? extends E> removed, List<? extends E> added) {
+        beginChange();
+        if (!removed.isEmpty() && !added.isEmpty()) {
+            nextReplace(from, from + added.size(), removed);
+        } else if (!removed.isEmpty()) {
+            nextRemove(from, removed);
+        } else {
+            nextAdd(from, from + added.size());
+        }
+        endChange();
+    }
+
+    /* Forwards the changes of the source to the adapter as long as the adapter
+     * is reachable, and then removes itself. */
+    private static class WeakSourceListener<E> implements ListListener<E> {
+
+        private final ListenableList<E> source;
+        private final WeakReference<FxListAdapter<E>> adapterRef;
+
+        WeakSourceListener(ListenableList<E> source, FxListAdapter<E> adapter) {
+            this.source = source;
+            this.adapterRef = new WeakReference<>(adapter);
+        }
+
+        @Override
+        public void onChanged(int from, List<? extends E> removed, List<? extends E> added) {
+            FxListAdapter<E> adapter = adapterRef.get();
+            if (adapter != null) {
+                adapter.sourceChanged(from, removed, added);
+            } else {
+                source.removeListener(this);
+            }
+        }
+    }
+}
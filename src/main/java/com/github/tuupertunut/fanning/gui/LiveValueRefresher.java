@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.gui;
+
+import com.github.tuupertunut.fanning.core.FanningService;
+import com.github.tuupertunut.fanning.core.HardwareSnapshot;
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.HardwareTreeElement;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.TreeTableCell;
+import javafx.scene.control.TreeTableColumn;
+import javafx.util.Callback;
+
+/**
+ * Shows live hardware values in tree table cells. Instead of binding every row
+ * to a property, the changed sensors and fans of all published snapshots are
+ * collected into one dirty set. The set is flushed at most once per frame by
+ * an animation timer, and only the cells that are currently visible are
+ * updated. Rows that are scrolled into view read the latest value when their
+ * cell is reused.
+ *
+ * @author Tuupertunut
+ */
+public class LiveValueRefresher {
+
+    private final HardwareIndex hardwareIndex;
+
+    /* Written by the updater thread and read by the JavaFX thread. */
+    private final Object lock = new Object();
+    private BitSet dirtySensors;
+    private BitSet dirtyFans;
+    private HardwareSnapshot latestSnapshot;
+
+    /* Only accessed by the updater thread. */
+    private HardwareSnapshot lastSeenSnapshot;
+
+    /* Only accessed by the JavaFX thread. */
+    private BitSet flushedSensors;
+    private BitSet flushedFans;
+    private HardwareSnapshot currentSnapshot;
+    private final Map<HardwareTreeElement, List<LiveValueCell>> visibleCells;
+
+    /**
+     * Creates a new refresher that follows the snapshots of the service. Must
+     * be called on the JavaFX thread.
+     *
+     * @param fanningService the service publishing the snapshots.
+     */
+    public LiveValueRefresher(FanningService fanningService) {
+        hardwareIndex = fanningService.getHardwareManager().getHardwareIndex();
+
+        dirtySensors = new BitSet();
+        dirtyFans = new BitSet();
+        flushedSensors = new BitSet();
+        flushedFans = new BitSet();
+        visibleCells = new IdentityHashMap<>();
+
+        currentSnapshot = fanningService.getSnapshot();
+        lastSeenSnapshot = currentSnapshot;
+        fanningService.addSnapshotListener(this::snapshotPublished);
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+            }
+        }.start();
+    }
+
+    /* Called on the updater thread. Marks the values that differ from the
+     * previous snapshot as dirty. */
+    private void snapshotPublished(HardwareSnapshot snapshot) {
+        HardwareSnapshot previous = lastSeenSnapshot;
+        lastSeenSnapshot = snapshot;
+
+        synchronized (lock) {
+            if (snapshot.getHardwareIndex() != hardwareIndex || previous.getHardwareIndex() != hardwareIndex) {
+                dirtySensors.set(0, hardwareIndex.getAllSensors().size());
+                dirtyFans.set(0, hardwareIndex.getAllFanControllers().size());
+            } else {
+                for (int i = 0; i < hardwareIndex.getAllSensors().size(); i++) {
+                    if (Double.compare(snapshot.getSensorValue(i), previous.getSensorValue(i)) != 0) {
+                        dirtySensors.set(i);
+                    }
+                }
+                for (int i = 0; i < hardwareIndex.getAllFanControllers().size(); i++) {
+                    if (Double.compare(snapshot.getControlledValue(i), previous.getControlledValue(i)) != 0) {
+                        dirtyFans.set(i);
+                    }
+                }
+            }
+            latestSnapshot = snapshot;
+        }
+    }
+
+    /* Called on the JavaFX thread once per frame. */
+    private void flush() {
+        synchronized (lock) {
+            if (latestSnapshot == null) {
+                return;
+            }
+            currentSnapshot = latestSnapshot;
+            latestSnapshot = null;
+
+            /* Swapping the dirty sets, so the updater thread can continue
+             * filling the other ones. */
+            BitSet sensors = dirtySensors;
+            dirtySensors = flushedSensors;
+            flushedSensors = sensors;
+            BitSet fans = dirtyFans;
+            dirtyFans = flushedFans;
+            flushedFans = fans;
+        }
+
+        for (int i = flushedSensors.nextSetBit(0); i >= 0; i = flushedSensors.nextSetBit(i + 1)) {
+            refreshVisibleCells(hardwareIndex.getAllSensors().get(i));
+        }
+        for (int i = flushedFans.nextSetBit(0); i >= 0; i = flushedFans.nextSetBit(i + 1)) {
+            refreshVisibleCells(hardwareIndex.getAllFanControllers().get(i));
+        }
+        flushedSensors.clear();
+        flushedFans.clear();
+    }
+
+    private void refreshVisibleCells(HardwareTreeElement elem) {
+        List<LiveValueCell> cells = visibleCells.get(elem);
+        if (cells != null) {
+            for (LiveValueCell cell : cells) {
+                cell.refresh();
+            }
+        }
+    }
+
+    /**
+     * Returns a cell factory for a column showing sensor values. The cell
+     * values of the column must be the hardware tree elements of the rows.
+     *
+     * @return a cell factory.
+     */
+    public Callback<TreeTableColumn<HardwareTreeElement, HardwareTreeElement>, TreeTableCell<HardwareTreeElement, HardwareTreeElement>> sensorValueCellFactory() {
+        return (TreeTableColumn<HardwareTreeElement, HardwareTreeElement> column) -> new LiveValueCell((HardwareTreeElement elem) -> {
+            if (elem instanceof Sensor) {
+                Sensor sensor = (Sensor) elem;
+                return Double.toString(currentSnapshot.getSensorValue(sensor)) + " " + sensor.getMeasurementUnit();
+            } else {
+                return "";
+            }
+        });
+    }
+
+    /**
+     * Returns a cell factory for a column showing controlled fan values. The
+     * cell values of the column must be the hardware tree elements of the
+     * rows.
+     *
+     * @return a cell factory.
+     */
+    public Callback<TreeTableColumn<HardwareTreeElement, HardwareTreeElement>, TreeTableCell<HardwareTreeElement, HardwareTreeElement>> controlledValueCellFactory() {
+        return (TreeTableColumn<HardwareTreeElement, HardwareTreeElement> column) -> new LiveValueCell((HardwareTreeElement elem) -> {
+            if (elem instanceof FanController) {
+                FanController fan = (FanController) elem;
+                double value = currentSnapshot.getControlledValue(fan);
+                if (!Double.isNaN(value)) {
+                    return Double.toString(value) + " " + fan.getMeasurementUnit();
+                } else {
+                    return "No value";
+                }
+            } else {
+                return "";
+            }
+        });
+    }
+
+    /* A cell that registers itself as visible for the element it is currently
+     * showing. */
+    private class LiveValueCell extends TreeTableCell<HardwareTreeElement, HardwareTreeElement> {
+
+        private final Function<HardwareTreeElement, String> formatter;
+        private HardwareTreeElement shownElement;
+
+        LiveValueCell(Function<HardwareTreeElement, String> formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void updateItem(HardwareTreeElement item, boolean empty) {
+            super.updateItem(item, empty);
+
+            HardwareTreeElement newElement = empty ? null : item;
+            if (newElement != shownElement) {
+                if (shownElement != null) {
+                    List<LiveValueCell> cells = visibleCells.get(shownElement);
+                    cells.remove(this);
+                    if (cells.isEmpty()) {
+                        visibleCells.remove(shownElement);
+                    }
+                }
+                if (newElement != null) {
+                    visibleCells.computeIfAbsent(newElement, (HardwareTreeElement elem) -> new ArrayList<>(1)).add(this);
+                }
+                shownElement = newElement;
+            }
+            refresh();
+        }
+
+        void refresh() {
+            if (shownElement == null) {
+                this.setText(null);
+            } else {
+                this.setText(formatter.apply(shownElement));
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwinterface;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A base class for hardware managers that caches the hardware index. The
+ * index is built on the first call to {@link #getHardwareIndex()} and reused
+ * until {@link #invalidateHardwareIndex()} is called, so consumers that
+ * compare indexes by identity only see a new index when the structure of the
+ * hardware tree has actually changed. Invalidating the index also notifies
+ * the structure listeners.
+ *
+ * @author Tuupertunut
+ */
+public abstract class AbstractHardwareManager implements HardwareManager {
+
+    private final Object indexLock;
+    private volatile HardwareIndex hardwareIndex;
+    private final List<StructureListener> structureListeners;
+
+    protected AbstractHardwareManager() {
+        this.indexLock = new Object();
+        this.hardwareIndex = null;
+        this.structureListeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public HardwareIndex getHardwareIndex() {
+        HardwareIndex index = hardwareIndex;
+        if (index == null) {
+
+            /* Only one index is built, even if several threads ask for it at
+             * the same time. */
+            synchronized (indexLock) {
+                index = hardwareIndex;
+                if (index == null) {
+                    index = new HardwareIndex(getHardwareRoot());
+                    hardwareIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Forgets the cached hardware index, so that the next call to
+     * {@link #getHardwareIndex()} builds a new one, and notifies the structure
+     * listeners. Must be called every time the structure of the hardware tree
+     * changes.
+     */
+    public void invalidateHardwareIndex() {
+        synchronized (indexLock) {
+            hardwareIndex = null;
+        }
+        for (StructureListener listener : structureListeners) {
+            listener.structureChanged();
+        }
+    }
+
+    @Override
+    public void addStructureListener(StructureListener listener) {
+        structureListeners.add(listener);
+    }
+
+    @Override
+    public void removeStructureListener(StructureListener listener) {
+        structureListeners.remove(listener);
+    }
+}
@@ -23,10 +23,6 @@
  */
 package com.github.tuupertunut.fanning.hwinterface;
 
-import java.util.OptionalDouble;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.value.ObservableDoubleValue;
-
 /**
  * A fan controller for controlling a certain fan in the hardware. A fan
  * controller is always associated with a sensor, which measures the value of
@@ -82,25 +78,50 @@ public interface FanController extends HardwareTreeElement {
     }
 
     /**
-     * The observable box of the value of the associated sensor. This value is
-     * different from the controlled value in that this is measured from the
-     * hardware. If the fan controller is being controlled, this usually follows
-     * the controlled value with a small delay.
+     * Returns the value of the associated sensor. This value is different from
+     * the controlled value in that this is measured from the hardware. If the
+     * fan controller is being controlled, this usually follows the controlled
+     * value with a small delay.
      *
-     * @return the observable box of the value of the associated sensor.
+     * @return the value of the associated sensor.
      */
-    default ObservableDoubleValue measuredValueProperty() {
-        return getSensor().valueProperty();
+    default double getMeasuredValue() {
+        return getSensor().getValue();
     }
 
     /**
-     * The property representing which value the fan controller is currently set
-     * to. If the value is empty, it means this fan is not controlled. Setting a
-     * value to this property will control the fan.
+     * Returns the value the fan controller is currently set to, or NaN if this
+     * fan is not controlled.
+     *
+     * @return the controlled value, or NaN.
+     */
+    double getControlledValue();
+
+    /**
+     * Sets the value of the fan controller, which controls the fan. Setting
+     * NaN means this fan is not controlled. If the value is already set,
+     * nothing is written to the hardware. This is called on every update, so
+     * implementations should not allocate.
+     *
+     * @param value the new controlled value, or NaN.
+     * @return true if the value was changed.
+     */
+    boolean setControlledValue(double value);
+
+    /**
+     * Adds a listener that is notified whenever the controlled value changes.
+     *
+     * @param listener the listener to add.
+     */
+    void addControlledValueListener(ValueListener listener);
+
+    /**
+     * Removes a listener that was added with
+     * {@link #addControlledValueListener(ValueListener)}.
      *
-     * @return the property of the controlled value.
+     * @param listener the listener to remove.
      */
-    ObjectProperty<OptionalDouble> controlledValueProperty();
+    void removeControlledValueListener(ValueListener listener);
 
     /**
      * Returns the minimum value this fan controller can be set to.
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwinterface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A flattened snapshot of the structure of a hardware tree. All hardware,
+ * sensors and fan controllers are stored in depth-first order and can be found
+ * by their ids without walking the tree. Objects are immutable, so an index
+ * must be rebuilt if the structure of the tree changes.
+ *
+ * @author Tuupertunut
+ */
+public class HardwareIndex {
+
+    private final List<HardwareItem> hardware;
+    private final List<Sensor> sensors;
+    private final List<FanController> fans;
+    private final Map<String, Sensor> sensorsById;
+    private final Map<String, FanController> fansById;
+    private final Map<Sensor, Integer> sensorPositions;
+    private final Map<FanController, Integer> fanPositions;
+
+    /**
+     * Creates an index of the hardware tree starting from the given root.
+     *
+     * @param hwRoot the root of the hardware tree.
+     */
+    public HardwareIndex(HardwareItem hwRoot) {
+        List<HardwareItem> hardwareList = new ArrayList<>();
+        List<Sensor> sensorList = new ArrayList<>();
+        List<FanController> fanList = new ArrayList<>();
+
+        /* Depth first search for tree using a stack. */
+        Deque<HardwareItem> depthFirstStack = new ArrayDeque<>();
+        depthFirstStack.push(hwRoot);
+
+        while (!depthFirstStack.isEmpty()) {
+
+            /* Pop a node from the stack and process it. */
+            HardwareItem hw = depthFirstStack.pop();
+            hardwareList.add(hw);
+            sensorList.addAll(hw.getSensors());
+            fanList.addAll(hw.getFanControllers());
+
+            /* Add children of the node to the stack. */
+            for (int i = hw.getSubHardware().size() - 1; i >= 0; i--) {
+                HardwareItem subHw = hw.getSubHardware().get(i);
+                depthFirstStack.push(subHw);
+            }
+        }
+
+        hardware = Collections.unmodifiableList(Arrays.asList(hardwareList.toArray(new HardwareItem[0])));
+        sensors = Collections.unmodifiableList(Arrays.asList(sensorList.toArray(new Sensor[0])));
+        fans = Collections.unmodifiableList(Arrays.asList(fanList.toArray(new FanController[0])));
+
+        /* If ids are not unique, the first element in depth-first order wins,
+         * like in a linear search. */
+        sensorsById = new HashMap<>();
+        for (Sensor sensor : sensors) {
+            sensorsById.putIfAbsent(sensor.getId(), sensor);
+        }
+        fansById = new HashMap<>();
+        for (FanController fan : fans) {
+            fansById.putIfAbsent(fan.getId(), fan);
+        }
+
+        sensorPositions = new IdentityHashMap<>();
+        for (int i = 0; i < sensors.size(); i++) {
+            sensorPositions.putIfAbsent(sensors.get(i), i);
+        }
+        fanPositions = new IdentityHashMap<>();
+        for (int i = 0; i < fans.size(); i++) {
+            fanPositions.putIfAbsent(fans.get(i), i);
+        }
+    }
+
+    /**
+     * Returns all hardware in the hardware tree in depth-first order.
+     *
+     * @return an unmodifiable list of all hardware.
+     */
+    public List<HardwareItem> getAllHardware() {
+        return hardware;
+    }
+
+    /**
+     * Returns all sensors in the hardware tree in depth-first order.
+     *
+     * @return an unmodifiable list of all sensors.
+     */
+    public List<Sensor> getAllSensors() {
+        return sensors;
+    }
+
+    /**
+     * Returns all fan controllers in the hardware tree in depth-first order.
+     *
+     * @return an unmodifiable list of all fan controllers.
+     */
+    public List<FanController> getAllFanControllers() {
+        return fans;
+    }
+
+    /**
+     * Returns the sensor that has the given id, if there is one.
+     *
+     * @param sensorId
+     * @return the sensor with the id, or empty if there is none.
+     */
+    public Optional<Sensor> findSensorById(String sensorId) {
+        return Optional.ofNullable(sensorsById.get(sensorId));
+    }
+
+    /**
+     * Returns the fan controller that has the given id, if there is one.
+     *
+     * @param fanControllerId
+     * @return the fan controller with the id, or empty if there is none.
+     */
+    public Optional<FanController> findFanControllerById(String fanControllerId) {
+        return Optional.ofNullable(fansById.get(fanControllerId));
+    }
+
+    /**
+     * Returns the position of the sensor in {@link #getAllSensors()}.
+     *
+     * @param sensor
+     * @return the position of the sensor, or -1 if it is not in the tree.
+     */
+    public int indexOfSensor(Sensor sensor) {
+        Integer position = sensorPositions.get(sensor);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Returns the position of the fan controller in
+     * {@link #getAllFanControllers()}.
+     *
+     * @param fan
+     * @return the position of the fan controller, or -1 if it is not in the
+     * tree.
+     */
+    public int indexOfFanController(FanController fan) {
+        Integer position = fanPositions.get(fan);
+        return position != null ? position : -1;
+    }
+}
@@ -23,11 +23,12 @@
  */
 package com.github.tuupertunut.fanning.hwinterface;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * A service for using the hardware.
@@ -41,6 +42,54 @@ public interface HardwareManager {
      */
     void updateHardwareTree();
 
+    /**
+     * Fetches and updates new values to the given sensors only, and returns
+     * the sensors whose value changed by more than the deadband. Sensors whose
+     * value stays within the deadband may keep their old value. The default
+     * implementation updates the whole hardware tree, so implementations
+     * should override this if fetching sensor values is expensive. It
+     * compares with the values before the update, so a value that drifts by
+     * less than the deadband on every update is never reported. The fanning
+     * service therefore compares with the last reported values itself.
+     *
+     * @param sensors the sensors to update.
+     * @param deadband how much a value must change to be reported.
+     * @return the sensors whose value changed.
+     */
+    default Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+        Sensor[] sensorArray = sensors.toArray(new Sensor[0]);
+        double[] oldValues = new double[sensorArray.length];
+        for (int i = 0; i < sensorArray.length; i++) {
+            oldValues[i] = sensorArray[i].getValue();
+        }
+
+        updateHardwareTree();
+
+        Set<Sensor> changed = null;
+        for (int i = 0; i < sensorArray.length; i++) {
+            if (isChange(oldValues[i], sensorArray[i].getValue(), deadband)) {
+                if (changed == null) {
+                    changed = new HashSet<>();
+                }
+                changed.add(sensorArray[i]);
+            }
+        }
+        return changed != null ? changed : Collections.emptySet();
+    }
+
+    /**
+     * Checks whether a sensor value changed by more than the deadband. A change
+     * to or from NaN or infinity is always a change.
+     *
+     * @param oldValue the previous value.
+     * @param newValue the new value.
+     * @param deadband how much the value must change.
+     * @return true if the value changed by more than the deadband.
+     */
+    static boolean isChange(double oldValue, double newValue, double deadband) {
+        return Double.compare(oldValue, newValue) != 0 && !(Math.abs(newValue - oldValue) <= deadband);
+    }
+
     /**
      * Returns the root of the hardware tree.
      *
@@ -48,6 +97,35 @@ public interface HardwareManager {
      */
     HardwareItem getHardwareRoot();
 
+    /**
+     * Returns an index of the current hardware tree. Implementations must
+     * cache the index and only build a new one when the structure of the
+     * hardware tree changes, because the update loop uses it on every update
+     * and its users compare indexes by identity to notice structure changes.
+     * {@link AbstractHardwareManager} does this.
+     *
+     * @return an index of the hardware tree.
+     */
+    HardwareIndex getHardwareIndex();
+
+    /**
+     * Adds a listener that is called every time the structure of the hardware
+     * tree changes. The default implementation does nothing, which is right
+     * for hardware managers whose tree never changes.
+     *
+     * @param listener the listener to add.
+     */
+    default void addStructureListener(StructureListener listener) {
+    }
+
+    /**
+     * Removes a structure listener.
+     *
+     * @param listener the listener to remove.
+     */
+    default void removeStructureListener(StructureListener listener) {
+    }
+
     /**
      * Returns a list of all sensors in the hardware tree. The sensors are in
      * depth-first order.
@@ -55,26 +133,7 @@ public interface HardwareManager {
      * @return all sensors in the hardware tree.
      */
     default List<Sensor> getAllSensors() {
-        List<Sensor> sensors = new ArrayList<>();
-
-        /* Depth first search for tree using a stack. */
-        Deque<HardwareItem> depthFirstStack = new ArrayDeque<>();
-        depthFirstStack.push(getHardwareRoot());
-
-        while (!depthFirstStack.isEmpty()) {
-
-            /* Pop a node from the stack and process it. */
-            HardwareItem hw = depthFirstStack.pop();
-            sensors.addAll(hw.getSensors());
-
-            /* Add children of the node to the stack. */
-            for (int i = hw.getSubHardware().size() - 1; i >= 0; i--) {
-                HardwareItem subHw = hw.getSubHardware().get(i);
-                depthFirstStack.push(subHw);
-            }
-        }
-
-        return sensors;
+        return getHardwareIndex().getAllSensors();
     }
 
     /**
@@ -84,26 +143,7 @@ public interface HardwareManager {
      * @return all fan controllers in the hardware tree.
      */
     default List<FanController> getAllFanControllers() {
-        List<FanController> fans = new ArrayList<>();
-
-        /* Depth first search for tree using a stack. */
-        Deque<HardwareItem> depthFirstStack = new ArrayDeque<>();
-        depthFirstStack.push(getHardwareRoot());
-
-        while (!depthFirstStack.isEmpty()) {
-
-            /* Pop a node from the stack and process it. */
-            HardwareItem hw = depthFirstStack.pop();
-            fans.addAll(hw.getFanControllers());
-
-            /* Add children of the node to the stack. */
-            for (int i = hw.getSubHardware().size() - 1; i >= 0; i--) {
-                HardwareItem subHw = hw.getSubHardware().get(i);
-                depthFirstStack.push(subHw);
-            }
-        }
-
-        return fans;
+        return getHardwareIndex().getAllFanControllers();
     }
 
     /**
@@ -113,26 +153,7 @@ public interface HardwareManager {
      * @return all hardware in the hardware tree.
      */
     default List<HardwareItem> getAllHardware() {
-        List<HardwareItem> hardware = new ArrayList<>();
-
-        /* Depth first search for tree using a stack. */
-        Deque<HardwareItem> depthFirstStack = new ArrayDeque<>();
-        depthFirstStack.push(getHardwareRoot());
-
-        while (!depthFirstStack.isEmpty()) {
-
-            /* Pop a node from the stack and process it. */
-            HardwareItem hw = depthFirstStack.pop();
-            hardware.add(hw);
-
-            /* Add children of the node to the stack. */
-            for (int i = hw.getSubHardware().size() - 1; i >= 0; i--) {
-                HardwareItem subHw = hw.getSubHardware().get(i);
-                depthFirstStack.push(subHw);
-            }
-        }
-
-        return hardware;
+        return getHardwareIndex().getAllHardware();
     }
 
     /**
@@ -142,12 +163,7 @@ public interface HardwareManager {
      * @return the sensor with the id, or empty if there is none.
      */
     default Optional<Sensor> findSensorById(String sensorId) {
-        for (Sensor sensor : getAllSensors()) {
-            if (sensor.getId().equals(sensorId)) {
-                return Optional.of(sensor);
-            }
-        }
-        return Optional.empty();
+        return getHardwareIndex().findSensorById(sensorId);
     }
 
     /**
@@ -157,11 +173,6 @@ public interface HardwareManager {
      * @return the fan controller with the id, or empty if there is none.
      */
     default Optional<FanController> findFanControllerById(String fanControllerId) {
-        for (FanController fan : getAllFanControllers()) {
-            if (fan.getId().equals(fanControllerId)) {
-                return Optional.of(fan);
-            }
-        }
-        return Optional.empty();
+        return getHardwareIndex().findFanControllerById(fanControllerId);
     }
 }
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwinterface;
+
+import com.github.tuupertunut.fanning.jfr.FlightRecorderEvents;
+import com.github.tuupertunut.fanning.jfr.SensorRefreshEvent;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A hardware manager that updates the top-level hardware items of another
+ * manager in parallel. Every update waits for the items only until a
+ * deadline. An item that misses the deadline keeps its last values and is
+ * flagged stale, and it is not updated again until its previous update has
+ * finished. So one slow device delays the update at most by the deadline, and
+ * the other devices are updated on time.
+ *
+ * The other manager must support updating disjoint sets of sensors from
+ * several threads at once, and it should override
+ * {@link HardwareManager#updateSensors(Collection, double)}, because the
+ * default implementation updates the whole tree.
+ *
+ * @author Tuupertunut
+ */
+public class ParallelHardwareManager implements HardwareManager, Closeable {
+
+    private final HardwareManager hwManager;
+    private final long deadlineNanos;
+    private final ExecutorService pollers;
+
+    /* The groups of the last seen hardware index. Group i is the subtree of
+     * the top-level item i, and the last group is the sensors directly in the
+     * root. Only accessed in updateSensors, which is synchronized. */
+    private HardwareIndex groupedIndex;
+    private List<HardwareItem> groupItems;
+    private Map<Sensor, Integer> groupsBySensor;
+    private List<Future<Set<Sensor>>> runningUpdates;
+
+    /* The top-level items that missed the deadline on their last update. */
+    private volatile Set<HardwareItem> staleHardware;
+    private volatile UpdateTimeListener updateTimeListener;
+
+    /**
+     * Creates a new ParallelHardwareManager.
+     *
+     * @param hwManager the manager whose hardware is updated.
+     * @param threads the maximum number of items updated at the same time.
+     * @param deadline how long an update waits for the items.
+     */
+    public ParallelHardwareManager(HardwareManager hwManager, int threads, Duration deadline) {
+        this.hwManager = hwManager;
+        this.deadlineNanos = deadline.toNanos();
+
+        /* Making daemon threads, so they will automatically die when the main
+         * thread dies. */
+        this.pollers = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.staleHardware = Collections.emptySet();
+        this.updateTimeListener = (HardwareItem item, long nanos) -> {
+        };
+    }
+
+    private void groupSensors(HardwareIndex index) {
+        /* Updates that are still running are kept for the same items. */
+        Map<HardwareItem, Future<Set<Sensor>>> oldUpdates = new HashMap<>();
+        if (groupItems != null) {
+            for (int i = 0; i < groupItems.size(); i++) {
+                if (runningUpdates.get(i) != null) {
+                    oldUpdates.put(groupItems.get(i), runningUpdates.get(i));
+                }
+            }
+        }
+
+        groupItems = new ArrayList<>(getHardwareRoot().getSubHardware());
+        groupItems.add(getHardwareRoot());
+        groupsBySensor = new HashMap<>();
+        for (int i = 0; i < groupItems.size() - 1; i++) {
+            addSubtree(groupItems.get(i), i);
+        }
+        for (Sensor sensor : getHardwareRoot().getSensors()) {
+            groupsBySensor.put(sensor, groupItems.size() - 1);
+        }
+        runningUpdates = new ArrayList<>(groupItems.size());
+        for (HardwareItem groupItem : groupItems) {
+            runningUpdates.add(oldUpdates.get(groupItem));
+        }
+        groupedIndex = index;
+    }
+
+    private void addSubtree(HardwareItem item, int group) {
+        for (Sensor sensor : item.getSensors()) {
+            groupsBySensor.put(sensor, group);
+        }
+        for (HardwareItem subItem : item.getSubHardware()) {
+            addSubtree(subItem, group);
+        }
+    }
+
+    @Override
+    public void updateHardwareTree() {
+        updateSensors(getAllSensors(), 0);
+    }
+
+    /**
+     * Updates the given sensors, one top-level hardware item per thread, and
+     * waits for them until the deadline. The sensors of the items that miss
+     * the deadline keep their values. Their changes are returned by the first
+     * update after they have finished.
+     *
+     * @param sensors the sensors to update.
+     * @param deadband how much a value must change to be reported.
+     * @return the sensors whose value changed.
+     */
+    @Override
+    public synchronized Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+        long deadline = System.nanoTime() + deadlineNanos;
+
+        HardwareIndex index = getHardwareIndex();
+        if (index != groupedIndex) {
+            groupSensors(index);
+        }
+
+        List<List<Sensor>> sensorsByGroup = new ArrayList<>(groupItems.size());
+        for (int i = 0; i < groupItems.size(); i++) {
+            sensorsByGroup.add(null);
+        }
+        for (Sensor sensor : sensors) {
+            Integer group = groupsBySensor.get(sensor);
+            int i = group != null ? group : groupItems.size() - 1;
+            if (sensorsByGroup.get(i) == null) {
+                sensorsByGroup.set(i, new ArrayList<>());
+            }
+            sensorsByGroup.get(i).add(sensor);
+        }
+
+        Set<Sensor> changed = new HashSet<>();
+        boolean[] stale = new boolean[groupItems.size()];
+        for (int i = 0; i < sensorsByGroup.size(); i++) {
+            Future<Set<Sensor>> previous = runningUpdates.get(i);
+            if (previous != null) {
+                if (!previous.isDone()) {
+                    /* Still stuck in an earlier update. */
+                    stale[i] = true;
+                    continue;
+                }
+                collect(previous, changed);
+                runningUpdates.set(i, null);
+            }
+
+            List<Sensor> groupSensors = sensorsByGroup.get(i);
+            if (groupSensors != null) {
+                HardwareItem groupItem = groupItems.get(i);
+                runningUpdates.set(i, pollers.submit(() -> timedUpdate(groupItem, groupSensors, deadband)));
+            }
+        }
+
+        for (int i = 0; i < runningUpdates.size(); i++) {
+            Future<Set<Sensor>> update = runningUpdates.get(i);
+            if (update == null || stale[i]) {
+                continue;
+            }
+            try {
+                changed.addAll(update.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                runningUpdates.set(i, null);
+            } catch (TimeoutException ex) {
+                stale[i] = true;
+            } catch (ExecutionException ex) {
+                /* The sensors of a failed item keep their values. */
+                stale[i] = true;
+                runningUpdates.set(i, null);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                stale[i] = true;
+            }
+        }
+
+        publishStaleHardware(stale);
+        return changed;
+    }
+
+    private Set<Sensor> timedUpdate(HardwareItem item, List<Sensor> sensors, double deadband) {
+        /* The flight recorder event is null when the JVM or the build does
+         * not have the event API. */
+        SensorRefreshEvent event = FlightRecorderEvents.newSensorRefreshEvent();
+        if (event != null) {
+            event.begin();
+        }
+
+        long start = System.nanoTime();
+        Set<Sensor> changed = null;
+        try {
+            changed = hwManager.updateSensors(sensors, deadband);
+            return changed;
+        } finally {
+            updateTimeListener.updateTimed(item, System.nanoTime() - start);
+
+            if (event != null) {
+                event.end();
+                event.commit(item.getId(), sensors.size(), changed != null ? changed.size() : 0, changed == null);
+            }
+        }
+    }
+
+    private static void collect(Future<Set<Sensor>> finished, Set<Sensor> changed) {
+        try {
+            changed.addAll(finished.get());
+        } catch (ExecutionException | InterruptedException ex) {
+            /* A failed update changed nothing. */
+        }
+    }
+
+    private void publishStaleHardware(boolean[] stale) {
+        boolean anyStale = false;
+        for (boolean groupStale : stale) {
+            anyStale |= groupStale;
+        }
+        if (!anyStale) {
+            if (!staleHardware.isEmpty()) {
+                staleHardware = Collections.emptySet();
+            }
+            return;
+        }
+
+        Set<HardwareItem> newStaleHardware = new HashSet<>();
+        for (int i = 0; i < stale.length; i++) {
+            if (stale[i]) {
+                newStaleHardware.add(groupItems.get(i));
+            }
+        }
+        if (!newStaleHardware.equals(staleHardware)) {
+            staleHardware = Collections.unmodifiableSet(newStaleHardware);
+        }
+    }
+
+    /**
+     * Returns the top-level hardware items that missed the deadline of the
+     * last update, or whose update failed. Their sensors have old values.
+     *
+     * @return the stale hardware items.
+     */
+    public Set<HardwareItem> getStaleHardware() {
+        return staleHardware;
+    }
+
+    /**
+     * Sets a listener that is told how long the update of every top-level
+     * item took, including the updates that missed the deadline. It is called
+     * on the polling threads.
+     *
+     * @param updateTimeListener the listener.
+     */
+    public void setUpdateTimeListener(UpdateTimeListener updateTimeListener) {
+        this.updateTimeListener = updateTimeListener;
+    }
+
+    @Override
+    public HardwareItem getHardwareRoot() {
+        return hwManager.getHardwareRoot();
+    }
+
+    @Override
+    public void addStructureListener(StructureListener listener) {
+        hwManager.addStructureListener(listener);
+    }
+
+    @Override
+    public void removeStructureListener(StructureListener listener) {
+        hwManager.removeStructureListener(listener);
+    }
+
+    @Override
+    public HardwareIndex getHardwareIndex() {
+        return hwManager.getHardwareIndex();
+    }
+
+    /**
+     * Stops the polling threads. Updates that are still running are
+     * interrupted.
+     */
+    @Override
+    public void close() {
+        pollers.shutdownNow();
+    }
+}
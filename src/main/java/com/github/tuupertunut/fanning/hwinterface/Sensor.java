@@ -23,8 +23,6 @@
  */
 package com.github.tuupertunut.fanning.hwinterface;
 
-import javafx.beans.value.ObservableDoubleValue;
-
 /**
  * A sensor for measuring some value of the hardware.
  *
@@ -47,9 +45,26 @@ public interface Sensor extends HardwareTreeElement {
     String getMeasurementUnit();
 
     /**
-     * The observable box of the value of the sensor. This is always a double.
+     * Returns the latest value of the sensor, as fetched by
+     * {@link HardwareManager#updateSensors(java.util.Collection, double)}.
+     *
+     * @return the value of the sensor.
+     */
+    double getValue();
+
+    /**
+     * Adds a listener that is notified whenever the value of the sensor
+     * changes.
+     *
+     * @param listener the listener to add.
+     */
+    void addValueListener(ValueListener listener);
+
+    /**
+     * Removes a listener that was added with
+     * {@link #addValueListener(ValueListener)}.
      *
-     * @return the observable box of the value of the sensor.
+     * @param listener the listener to remove.
      */
-    ObservableDoubleValue valueProperty();
+    void removeValueListener(ValueListener listener);
 }
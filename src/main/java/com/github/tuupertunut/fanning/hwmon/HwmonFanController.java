@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwmon;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.hwinterface.ValueListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A fan controller backed by a hwmon {@code pwmN} attribute. The controlled
+ * value is a percentage, which is written to the attribute scaled to 0–255.
+ * While the fan is controlled, {@code pwmN_enable} is set to manual mode, and
+ * when the control is released, the mode the fan had before is restored.
+ *
+ * @author Tuupertunut
+ */
+public class HwmonFanController implements FanController {
+
+    /* The pwmN_enable value for manual control. */
+    static final long MANUAL_MODE = 1;
+    static final long PWM_MAX = 255;
+
+    private final HwmonHardwareManager hwManager;
+    private final HwmonSensor sensor;
+    private final String id;
+    private final SysfsAttribute enableAttribute;
+    private final long originalMode;
+
+    /* NaN if not controlled. Only written through setControlledValue, which
+     * is synchronized. */
+    private volatile double controlledValue;
+    private final List<ValueListener> controlledValueListeners;
+
+    HwmonFanController(HwmonHardwareManager hwManager, HwmonSensor sensor, String id, SysfsAttribute enableAttribute, long originalMode) {
+        this.hwManager = hwManager;
+        this.sensor = sensor;
+        this.id = id;
+        this.enableAttribute = enableAttribute;
+        this.originalMode = originalMode;
+        this.controlledValue = Double.NaN;
+        this.controlledValueListeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public Sensor getSensor() {
+        return sensor;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public double getMinControlledValue() {
+        return 0;
+    }
+
+    @Override
+    public double getMaxControlledValue() {
+        return 100;
+    }
+
+    @Override
+    public double getControlledValue() {
+        return controlledValue;
+    }
+
+    /**
+     * Writes the value to the pwm attribute. If the write fails, the fan is
+     * left as it was and false is returned.
+     *
+     * @param value the new controlled value, or NaN.
+     * @return true if the value was changed.
+     */
+    @Override
+    public synchronized boolean setControlledValue(double value) {
+        double oldValue = controlledValue;
+        if (Double.doubleToLongBits(oldValue) == Double.doubleToLongBits(value)) {
+            return false;
+        }
+
+        boolean manualModeSet = false;
+        try {
+            if (Double.isNaN(value)) {
+                if (enableAttribute != null) {
+                    hwManager.writeAttribute(enableAttribute, originalMode);
+                }
+            } else {
+                if (Double.isNaN(oldValue) && enableAttribute != null) {
+                    hwManager.writeAttribute(enableAttribute, MANUAL_MODE);
+                    manualModeSet = true;
+                }
+                double clamped = Math.max(0, Math.min(100, value));
+                hwManager.writeAttribute(sensor.getAttribute(), Math.round(clamped * PWM_MAX / 100));
+            }
+        } catch (IOException ex) {
+            /* A fan in manual mode without a written value would stay at
+             * whatever pwm value it had, so the hardware gets it back. */
+            if (manualModeSet) {
+                try {
+                    hwManager.writeAttribute(enableAttribute, originalMode);
+                } catch (IOException restoreEx) {
+                    /* Nothing more can be done. */
+                }
+            }
+            return false;
+        }
+
+        controlledValue = value;
+        for (ValueListener listener : controlledValueListeners) {
+            listener.valueChanged(oldValue, value);
+        }
+        return true;
+    }
+
+    @Override
+    public void addControlledValueListener(ValueListener listener) {
+        controlledValueListeners.add(listener);
+    }
+
+    @Override
+    public void removeControlledValueListener(ValueListener listener) {
+        controlledValueListeners.remove(listener);
+    }
+}
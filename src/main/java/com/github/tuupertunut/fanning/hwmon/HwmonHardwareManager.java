@@ -0,0 +1,378 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwmon;
+
+import com.github.tuupertunut.fanning.hwinterface.AbstractHardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A hardware manager for the hwmon interface of the Linux kernel. Every
+ * device in {@code /sys/class/hwmon} becomes a hardware item with its
+ * temperature, fan speed and pwm attributes as sensors. Writable pwm
+ * attributes also become fan controllers.
+ *
+ * All attribute files are opened once when the hardware is enumerated. Devices
+ * that appear or disappear later are found with {@link #rescan()}. Sensor
+ * values are read with positional reads into a reused direct buffer and
+ * parsed without creating strings, so an update does not allocate anything
+ * per attribute. Sensors can be updated from several threads at once.
+ *
+ * @author Tuupertunut
+ */
+public class HwmonHardwareManager extends AbstractHardwareManager implements Closeable {
+
+    /**
+     * The directory where the kernel lists the hwmon devices.
+     */
+    public static final Path DEFAULT_HWMON_DIR = Paths.get("/sys/class/hwmon");
+
+    private static final Pattern TEMP_INPUT = Pattern.compile("temp(\\d+)_input");
+    private static final Pattern FAN_INPUT = Pattern.compile("fan(\\d+)_input");
+    private static final Pattern PWM = Pattern.compile("pwm(\\d+)");
+    private static final Pattern DEVICE_NUMBER = Pattern.compile("\\D*(\\d+)");
+
+    private final Path hwmonDir;
+
+    /* The scanned devices by their directory, including the devices without
+     * sensors, and the open attribute files of all of them. Guarded by
+     * scanLock. */
+    private final Object scanLock;
+    private final Map<Path, HardwareItem> devicesByDir;
+    private final List<SysfsAttribute> attributes;
+    private volatile HardwareItem hwRoot;
+
+    /* Each thread reads into its own buffer, so that a slow device does not
+     * block reading the others when sensors are updated in parallel. Writes
+     * share one buffer, which is guarded by this. */
+    private final ThreadLocal<ByteBuffer> readBuffers;
+    private final ByteBuffer writeBuffer;
+
+    /**
+     * Creates a new HwmonHardwareManager of the devices in
+     * {@link #DEFAULT_HWMON_DIR}.
+     *
+     * @throws IOException if the devices can't be listed.
+     */
+    public HwmonHardwareManager() throws IOException {
+        this(DEFAULT_HWMON_DIR);
+    }
+
+    /**
+     * Creates a new HwmonHardwareManager of the devices in the given
+     * directory.
+     *
+     * @param hwmonDir a directory with one subdirectory for every hwmon
+     * device.
+     * @throws IOException if the devices can't be listed.
+     */
+    public HwmonHardwareManager(Path hwmonDir) throws IOException {
+        this.hwmonDir = hwmonDir;
+        this.scanLock = new Object();
+        this.devicesByDir = new HashMap<>();
+        this.attributes = new ArrayList<>();
+        this.readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SysfsAttribute.BUFFER_SIZE));
+        this.writeBuffer = ByteBuffer.allocateDirect(SysfsAttribute.BUFFER_SIZE);
+
+        synchronized (scanLock) {
+            this.hwRoot = scanDevices(listDeviceDirs(hwmonDir));
+        }
+        updateHardwareTree();
+    }
+
+    /**
+     * Lists the devices again, so that hot-plugged devices and reloaded
+     * drivers are noticed. Devices that were already scanned are kept as they
+     * are. If a device has appeared or disappeared, the hardware index is
+     * rebuilt and the structure listeners are notified. The new sensors get
+     * their values on the next update.
+     *
+     * @return true if the devices changed.
+     * @throws IOException if the devices can't be listed or a new device can't
+     * be scanned. Nothing is changed then.
+     */
+    public boolean rescan() throws IOException {
+        synchronized (scanLock) {
+            List<Path> deviceDirs = listDeviceDirs(hwmonDir);
+            if (devicesByDir.keySet().equals(new HashSet<>(deviceDirs))) {
+                return false;
+            }
+            hwRoot = scanDevices(deviceDirs);
+        }
+        invalidateHardwareIndex();
+        return true;
+    }
+
+    /* Scans the devices that have not been scanned yet, closes the attributes
+     * of the devices that are gone and returns the new root. Called while
+     * holding scanLock. */
+    private HardwareItem scanDevices(List<Path> deviceDirs) throws IOException {
+        Map<Path, HardwareItem> scanned = new HashMap<>();
+        List<HardwareItem> devices = new ArrayList<>();
+        try {
+            for (Path deviceDir : deviceDirs) {
+                HardwareItem device = devicesByDir.get(deviceDir);
+                if (device == null) {
+                    device = scanDevice(deviceDir);
+                }
+                scanned.put(deviceDir, device);
+                if (!device.getSensors().isEmpty()) {
+                    devices.add(device);
+                }
+            }
+        } catch (IOException ex) {
+            /* The attributes of the new devices are not left open. */
+            for (Path deviceDir : deviceDirs) {
+                if (!devicesByDir.containsKey(deviceDir)) {
+                    closeAttributes(deviceDir);
+                }
+            }
+            throw ex;
+        }
+
+        for (Path deviceDir : devicesByDir.keySet()) {
+            if (!scanned.containsKey(deviceDir)) {
+                closeAttributes(deviceDir);
+            }
+        }
+        devicesByDir.clear();
+        devicesByDir.putAll(scanned);
+
+        return new HwmonHardwareItem(devices, Collections.emptyList(), Collections.emptyList(), "computer", "/hwmon");
+    }
+
+    private void closeAttributes(Path deviceDir) {
+        Iterator<SysfsAttribute> iterator = attributes.iterator();
+        while (iterator.hasNext()) {
+            SysfsAttribute attribute = iterator.next();
+            if (attribute.getPath().startsWith(deviceDir)) {
+                iterator.remove();
+                try {
+                    attribute.close();
+                } catch (IOException ex) {
+                    /* The device is gone anyway. */
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether this computer has the hwmon interface.
+     *
+     * @return true if {@link #DEFAULT_HWMON_DIR} exists.
+     */
+    public static boolean isAvailable() {
+        return Files.isDirectory(DEFAULT_HWMON_DIR);
+    }
+
+    /* The devices are named hwmon0, hwmon1 and so on. They are sorted by the
+     * number, so hwmon10 comes after hwmon9. */
+    private static List<Path> listDeviceDirs(Path hwmonDir) throws IOException {
+        List<Path> deviceDirs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(hwmonDir)) {
+            for (Path deviceDir : stream) {
+                if (Files.isDirectory(deviceDir)) {
+                    deviceDirs.add(deviceDir);
+                }
+            }
+        }
+        deviceDirs.sort(Comparator.comparingLong((Path dir) -> numberOf(dir.getFileName().toString(), DEVICE_NUMBER)).thenComparing((Path dir) -> dir.getFileName().toString()));
+        return deviceDirs;
+    }
+
+    private static long numberOf(String name, Pattern pattern) {
+        Matcher matcher = pattern.matcher(name);
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : Long.MAX_VALUE;
+    }
+
+    private HardwareItem scanDevice(Path deviceDir) throws IOException {
+        String deviceName = readText(deviceDir.resolve("name"), deviceDir.getFileName().toString());
+
+        /* The hwmon numbers depend on the order the drivers were loaded in, so
+         * the id uses the underlying device when there is one. */
+        Path deviceLink = deviceDir.resolve("device");
+        String deviceKey = Files.exists(deviceLink) ? deviceLink.toRealPath().getFileName().toString() : deviceDir.getFileName().toString();
+        String itemId = "/hwmon/" + deviceName + "/" + deviceKey;
+
+        TreeMap<Long, Path> temps = new TreeMap<>();
+        TreeMap<Long, Path> fanInputs = new TreeMap<>();
+        TreeMap<Long, Path> pwms = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(deviceDir)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                collect(temps, TEMP_INPUT, fileName, file);
+                collect(fanInputs, FAN_INPUT, fileName, file);
+                collect(pwms, PWM, fileName, file);
+            }
+        }
+
+        List<Sensor> sensors = new ArrayList<>();
+        List<FanController> fans = new ArrayList<>();
+        for (Long n : temps.keySet()) {
+            String name = readText(deviceDir.resolve("temp" + n + "_label"), "temp" + n);
+            sensors.add(new HwmonSensor(name, itemId + "/temp" + n, "Temperature", "°C", open(temps.get(n), false), 0.001));
+        }
+        for (Long n : fanInputs.keySet()) {
+            String name = readText(deviceDir.resolve("fan" + n + "_label"), "fan" + n);
+            sensors.add(new HwmonSensor(name, itemId + "/fan" + n, "Fan speed", "RPM", open(fanInputs.get(n), false), 1));
+        }
+        for (Long n : pwms.keySet()) {
+            SysfsAttribute pwm = open(pwms.get(n), true);
+            HwmonSensor pwmSensor = new HwmonSensor("pwm" + n, itemId + "/pwm" + n, "Control", "%", pwm, 100.0 / HwmonFanController.PWM_MAX);
+            sensors.add(pwmSensor);
+
+            if (pwm.isWritable()) {
+                SysfsAttribute enable = null;
+                long originalMode = 2;
+                Path enablePath = deviceDir.resolve("pwm" + n + "_enable");
+                if (Files.exists(enablePath)) {
+                    enable = open(enablePath, true);
+                    originalMode = readAttribute(enable);
+                }
+                fans.add(new HwmonFanController(this, pwmSensor, itemId + "/pwm" + n + "/control", enable, originalMode));
+            }
+        }
+
+        return new HwmonHardwareItem(Collections.emptyList(), sensors, fans, deviceName, itemId);
+    }
+
+    private static void collect(TreeMap<Long, Path> files, Pattern pattern, String fileName, Path file) {
+        Matcher matcher = pattern.matcher(fileName);
+        if (matcher.matches()) {
+            files.put(Long.parseLong(matcher.group(1)), file);
+        }
+    }
+
+    private SysfsAttribute open(Path path, boolean writable) throws IOException {
+        SysfsAttribute attribute = writable ? SysfsAttribute.openWritable(path) : SysfsAttribute.openReadable(path);
+        attributes.add(attribute);
+        return attribute;
+    }
+
+    /* Text attributes are only read when the hardware is enumerated. */
+    private static String readText(Path path, String defaultText) throws IOException {
+        if (!Files.exists(path)) {
+            return defaultText;
+        }
+        String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? defaultText : text;
+    }
+
+    long readAttribute(SysfsAttribute attribute) throws IOException {
+        return attribute.read(readBuffers.get());
+    }
+
+    synchronized void writeAttribute(SysfsAttribute attribute, long value) throws IOException {
+        if (!attribute.isWritable()) {
+            throw new IOException("Attribute is not writable: " + attribute.getPath());
+        }
+        attribute.write(writeBuffer, value);
+    }
+
+    @Override
+    public void updateHardwareTree() {
+        updateSensors(getAllSensors(), 0);
+    }
+
+    /**
+     * Reads the attributes of the given sensors only. Sensors whose attribute
+     * can't be read get the value NaN.
+     *
+     * @param sensors the sensors to update.
+     * @param deadband how much a value must change to be reported.
+     * @return the sensors whose value changed.
+     */
+    @Override
+    public Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+        Set<Sensor> changed = null;
+        for (Sensor sensor : sensors) {
+            if (!(sensor instanceof HwmonSensor)) {
+                continue;
+            }
+            HwmonSensor hwmonSensor = (HwmonSensor) sensor;
+
+            double newValue;
+            try {
+                newValue = readAttribute(hwmonSensor.getAttribute()) * hwmonSensor.getScale();
+            } catch (IOException ex) {
+                newValue = Double.NaN;
+            }
+
+            if (HardwareManager.isChange(hwmonSensor.getValue(), newValue, deadband)) {
+                hwmonSensor.setValue(newValue);
+                if (changed == null) {
+                    changed = new HashSet<>();
+                }
+                changed.add(sensor);
+            }
+        }
+        return changed != null ? changed : Collections.emptySet();
+    }
+
+    @Override
+    public HardwareItem getHardwareRoot() {
+        return hwRoot;
+    }
+
+    /**
+     * Gives the control of all fans back to the hardware and closes the
+     * attribute files.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        for (FanController fan : getAllFanControllers()) {
+            fan.setControlledValue(Double.NaN);
+        }
+        synchronized (scanLock) {
+            for (SysfsAttribute attribute : attributes) {
+                attribute.close();
+            }
+        }
+    }
+}
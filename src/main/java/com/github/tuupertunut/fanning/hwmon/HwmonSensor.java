@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwmon;
+
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.hwinterface.ValueListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A sensor backed by one hwmon attribute file, such as {@code temp1_input}.
+ * The value is read by {@link HwmonHardwareManager}.
+ *
+ * @author Tuupertunut
+ */
+public class HwmonSensor implements Sensor {
+
+    private final String name;
+    private final String id;
+    private final String sensorType;
+    private final String measurementUnit;
+    private final SysfsAttribute attribute;
+
+    /* The raw attribute value is multiplied by this, for example to convert
+     * millidegrees to degrees. */
+    private final double scale;
+
+    private volatile double value;
+    private final List<ValueListener> valueListeners;
+
+    HwmonSensor(String name, String id, String sensorType, String measurementUnit, SysfsAttribute attribute, double scale) {
+        this.name = name;
+        this.id = id;
+        this.sensorType = sensorType;
+        this.measurementUnit = measurementUnit;
+        this.attribute = attribute;
+        this.scale = scale;
+        this.value = Double.NaN;
+        this.valueListeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getSensorType() {
+        return sensorType;
+    }
+
+    @Override
+    public String getMeasurementUnit() {
+        return measurementUnit;
+    }
+
+    @Override
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public void addValueListener(ValueListener listener) {
+        valueListeners.add(listener);
+    }
+
+    @Override
+    public void removeValueListener(ValueListener listener) {
+        valueListeners.remove(listener);
+    }
+
+    SysfsAttribute getAttribute() {
+        return attribute;
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    /* Called by the manager with a freshly read value. NaN means the
+     * attribute could not be read. */
+    void setValue(double value) {
+        double oldValue = this.value;
+        this.value = value;
+        if (Double.doubleToLongBits(oldValue) != Double.doubleToLongBits(value)) {
+            for (ValueListener listener : valueListeners) {
+                listener.valueChanged(oldValue, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwmon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One integer attribute file of sysfs, such as {@code temp1_input}. The file
+ * is opened once and read with positional reads, which make sysfs produce a
+ * fresh value every time. The caller provides the buffer, so reading and
+ * writing do not allocate anything.
+ *
+ * @author Tuupertunut
+ */
+class SysfsAttribute implements Closeable {
+
+    /* Enough for any 64-bit integer, a sign and a newline. */
+    static final int BUFFER_SIZE = 32;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean writable;
+
+    private SysfsAttribute(Path path, FileChannel channel, boolean writable) {
+        this.path = path;
+        this.channel = channel;
+        this.writable = writable;
+    }
+
+    /**
+     * Opens an attribute for reading.
+     *
+     * @param path the attribute file.
+     * @return the opened attribute.
+     * @throws IOException
+     */
+    static SysfsAttribute openReadable(Path path) throws IOException {
+        return new SysfsAttribute(path, FileChannel.open(path, StandardOpenOption.READ), false);
+    }
+
+    /**
+     * Opens an attribute for reading and writing, or only for reading if
+     * writing is not permitted.
+     *
+     * @param path the attribute file.
+     * @return the opened attribute.
+     * @throws IOException
+     */
+    static SysfsAttribute openWritable(Path path) throws IOException {
+        try {
+            return new SysfsAttribute(path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), true);
+        } catch (AccessDeniedException ex) {
+            return openReadable(path);
+        }
+    }
+
+    /**
+     * Reads the value of the attribute. Parsing stops at the first character
+     * that is not a digit, such as the trailing newline.
+     *
+     * @param buffer a direct buffer of at least {@link #BUFFER_SIZE} bytes.
+     * @return the value.
+     * @throws IOException if the file can't be read or it does not start
+     * with an integer.
+     */
+    long read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit(BUFFER_SIZE);
+        int length = 0;
+        int read;
+        while (length < BUFFER_SIZE && (read = channel.read(buffer, length)) > 0) {
+            length += read;
+        }
+
+        int i = 0;
+        boolean negative = length > 0 && buffer.get(0) == '-';
+        if (negative) {
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < length) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            i++;
+        }
+        if (i == digitsStart) {
+            throw new IOException("Not an integer attribute: " + path);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Writes a value to the attribute, followed by a newline.
+     *
+     * @param buffer a direct buffer of at least {@link #BUFFER_SIZE} bytes.
+     * @param value the value to write.
+     * @throws IOException
+     */
+    void write(ByteBuffer buffer, long value) throws IOException {
+        buffer.clear();
+        buffer.limit(BUFFER_SIZE);
+
+        /* Digits are written from the end of the buffer backwards. */
+        int pos = BUFFER_SIZE;
+        buffer.put(--pos, (byte) '\n');
+        long remaining = Math.abs(value);
+        do {
+            buffer.put(--pos, (byte) ('0' + remaining % 10));
+            remaining /= 10;
+        } while (remaining > 0);
+        if (value < 0) {
+            buffer.put(--pos, (byte) '-');
+        }
+
+        buffer.position(pos);
+        long offset = 0;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    boolean isWritable() {
+        return writable;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+/**
+ * Calculating the value of a fan from its fan curve and sensor value. Created
+ * with {@link FlightRecorderEvents#newCurveEvaluationEvent()}.
+ *
+ * @author Tuupertunut
+ */
+public interface CurveEvaluationEvent {
+
+    /**
+     * Starts timing the event.
+     */
+    void begin();
+
+    /**
+     * Stops timing the event.
+     */
+    void end();
+
+    /**
+     * Commits the event if a recording is interested in it. Nothing is set
+     * otherwise.
+     *
+     * @param sensorId the id of the sensor of the fan curve.
+     * @param sensorValue the value of the sensor.
+     * @param fanId the id of the fan of the fan curve.
+     * @param fanValue the calculated fan value, NaN if the fan is given back
+     * to the hardware.
+     */
+    void commit(String sensorId, double sensorValue, String fanId, double fanValue);
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+/**
+ * Setting the controlled value of a fan on the hardware. Created with
+ * {@link FlightRecorderEvents#newFanActuationEvent()}.
+ *
+ * @author Tuupertunut
+ */
+public interface FanActuationEvent {
+
+    /**
+     * Starts timing the event.
+     */
+    void begin();
+
+    /**
+     * Stops timing the event.
+     */
+    void end();
+
+    /**
+     * Commits the event if a recording is interested in it. Nothing is set
+     * otherwise.
+     *
+     * @param fanId the id of the fan.
+     * @param value the new value, NaN if the fan is given back to the
+     * hardware.
+     * @param success whether the hardware accepted the value.
+     */
+    void commit(String fanId, double value, boolean success);
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+/**
+ * Creates the Java Flight Recorder events of the control loop. The events
+ * extend jdk.jfr.Event, which exists in JDK 11 and later and in OpenJDK 8u272
+ * and later. Their implementations are in a separate source folder that is
+ * only compiled when the build JDK has the event API, so this package itself
+ * does not depend on it. If the implementations are missing or the JVM does
+ * not have the event API, no events are created. Because {@link #AVAILABLE}
+ * is a constant, the check costs nothing after the code has been compiled.
+ *
+ * When no recording is running, an event only checks that it is disabled and
+ * does not set its fields, so the events are practically free in production.
+ *
+ * @author Tuupertunut
+ */
+public final class FlightRecorderEvents {
+
+    /**
+     * Creates the events. Implemented by the flight recorder source folder.
+     */
+    public interface Factory {
+
+        TickEvent newTickEvent();
+
+        SensorRefreshEvent newSensorRefreshEvent();
+
+        CurveEvaluationEvent newCurveEvaluationEvent();
+
+        FanActuationEvent newFanActuationEvent();
+    }
+
+    private static final String FACTORY_CLASS = "com.github.tuupertunut.fanning.jfr.JfrEventFactory";
+    private static final Factory FACTORY = loadFactory();
+
+    /**
+     * True if flight recorder events can be created.
+     */
+    public static final boolean AVAILABLE = FACTORY != null;
+
+    private FlightRecorderEvents() {
+    }
+
+    private static Factory loadFactory() {
+        ClassLoader classLoader = FlightRecorderEvents.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.Event", false, classLoader);
+            return (Factory) Class.forName(FACTORY_CLASS, true, classLoader).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a new event, or null if events are not available.
+     */
+    public static TickEvent newTickEvent() {
+        return AVAILABLE ? FACTORY.newTickEvent() : null;
+    }
+
+    /**
+     * @return a new event, or null if events are not available.
+     */
+    public static SensorRefreshEvent newSensorRefreshEvent() {
+        return AVAILABLE ? FACTORY.newSensorRefreshEvent() : null;
+    }
+
+    /**
+     * @return a new event, or null if events are not available.
+     */
+    public static CurveEvaluationEvent newCurveEvaluationEvent() {
+        return AVAILABLE ? FACTORY.newCurveEvaluationEvent() : null;
+    }
+
+    /**
+     * @return a new event, or null if events are not available.
+     */
+    public static FanActuationEvent newFanActuationEvent() {
+        return AVAILABLE ? FACTORY.newFanActuationEvent() : null;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+/**
+ * One update of the fan control loop, from reading the sensors to setting
+ * the fans. Created with {@link FlightRecorderEvents#newTickEvent()}.
+ *
+ * @author Tuupertunut
+ */
+public interface TickEvent {
+
+    /**
+     * Starts timing the event.
+     */
+    void begin();
+
+    /**
+     * Stops timing the event.
+     */
+    void end();
+
+    /**
+     * Commits the event if a recording is interested in it. Nothing is set
+     * otherwise.
+     *
+     * @param trigger what started the update: poll, adaptive poll or
+     * recalculation.
+     * @param changedSensors how many sensors changed by more than the
+     * deadband.
+     */
+    void commit(String trigger, int changedSensors);
+}
@@ -24,9 +24,10 @@
 package com.github.tuupertunut.fanning.mockhardware;
 
 import com.github.tuupertunut.fanning.hwinterface.Sensor;
-import java.util.OptionalDouble;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
+import com.github.tuupertunut.fanning.hwinterface.ValueListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import com.github.tuupertunut.fanning.hwinterface.FanController;
 
 /**
@@ -39,7 +40,11 @@ public class MockFanController implements FanController {
     String id;
     double minControlledValue;
     double maxControlledValue;
-    ObjectProperty<OptionalDouble> controlledValue;
+    List<ValueListener> controlledValueListeners;
+
+    /* The raw bits of the controlled value as a double, NaN if not
+     * controlled. */
+    AtomicLong controlledValueBits;
 
     public MockFanController(Sensor sensor, String id, double minControlledValue, double maxControlledValue) {
         this.sensor = sensor;
@@ -47,7 +52,8 @@ public class MockFanController implements FanController {
         this.minControlledValue = minControlledValue;
         this.maxControlledValue = maxControlledValue;
 
-        controlledValue = new SimpleObjectProperty<>(OptionalDouble.empty());
+        controlledValueListeners = new CopyOnWriteArrayList<>();
+        controlledValueBits = new AtomicLong(Double.doubleToLongBits(Double.NaN));
     }
 
     @Override
@@ -71,7 +77,36 @@ public class MockFanController implements FanController {
     }
 
     @Override
-    public ObjectProperty<OptionalDouble> controlledValueProperty() {
-        return controlledValue;
+    public double getControlledValue() {
+        return Double.longBitsToDouble(controlledValueBits.get());
+    }
+
+    @Override
+    public boolean setControlledValue(double value) {
+        long newBits = Double.doubleToLongBits(value);
+        long oldBits;
+        do {
+            oldBits = controlledValueBits.get();
+            if (oldBits == newBits) {
+                return false;
+            }
+        } while (!controlledValueBits.compareAndSet(oldBits, newBits));
+
+        /* This is where a real fan controller would write to the hardware. */
+        double oldValue = Double.longBitsToDouble(oldBits);
+        for (ValueListener listener : controlledValueListeners) {
+            listener.valueChanged(oldValue, value);
+        }
+        return true;
+    }
+
+    @Override
+    public void addControlledValueListener(ValueListener listener) {
+        controlledValueListeners.add(listener);
+    }
+
+    @Override
+    public void removeControlledValueListener(ValueListener listener) {
+        controlledValueListeners.remove(listener);
     }
 }
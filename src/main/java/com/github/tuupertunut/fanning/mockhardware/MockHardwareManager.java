@@ -23,24 +23,32 @@
  */
 package com.github.tuupertunut.fanning.mockhardware;
 
+import com.github.tuupertunut.fanning.hwinterface.AbstractHardwareManager;
 import com.github.tuupertunut.fanning.hwinterface.FanController;
 import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
 import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
 import com.github.tuupertunut.fanning.hwinterface.Sensor;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *
  * @author Tuupertunut
  */
-public class MockHardwareManager implements HardwareManager {
+public class MockHardwareManager extends AbstractHardwareManager {
 
     HardwareItem hwRoot;
+    Map<Sensor, FanController> fansBySensor;
 
     public MockHardwareManager(HardwareItem hwRoot) {
         this.hwRoot = hwRoot;
+        initIndex();
     }
 
     public MockHardwareManager() {
@@ -59,18 +67,46 @@ public class MockHardwareManager implements HardwareManager {
         MockHardwareItem hb = new MockHardwareItem(Arrays.asList(), Arrays.asList(sf, sg, sh), Arrays.asList(fb), "fake gpu", "hg");
 
         hwRoot = new MockHardwareItem(Arrays.asList(ha, hb), Arrays.asList(), Arrays.asList(), "computer", "c");
+        initIndex();
+    }
+
+    private void initIndex() {
+        fansBySensor = new HashMap<>();
+        for (FanController fan : getAllFanControllers()) {
+            fansBySensor.putIfAbsent(fan.getSensor(), fan);
+        }
     }
 
     @Override
     public void updateHardwareTree() {
-        for (Sensor sensor : getAllSensors()) {
-            Optional<FanController> sensorFanController = getAllFanControllers().stream().filter((FanController c) -> c.getSensor().equals(sensor)).findFirst();
-            if (sensorFanController.isPresent() && sensorFanController.get().controlledValueProperty().get().isPresent()) {
-                ((MockSensor) sensor).value.set(sensorFanController.get().controlledValueProperty().get().getAsDouble());
+        updateSensors(getAllSensors(), 0);
+    }
+
+    @Override
+    public Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+        Set<Sensor> changed = null;
+        for (Sensor sensor : sensors) {
+            MockSensor mockSensor = (MockSensor) sensor;
+
+            double newValue;
+            FanController sensorFanController = fansBySensor.get(sensor);
+            if (sensorFanController != null && !Double.isNaN(sensorFanController.getControlledValue())) {
+                newValue = sensorFanController.getControlledValue();
             } else {
-                ((MockSensor) sensor).value.set(ThreadLocalRandom.current().nextInt(30, 50));
+                newValue = ThreadLocalRandom.current().nextInt(30, 50);
+            }
+
+            /* Values within the deadband are not set, so no change events are
+             * fired for them. */
+            if (HardwareManager.isChange(mockSensor.getValue(), newValue, deadband)) {
+                mockSensor.setValue(newValue);
+                if (changed == null) {
+                    changed = new HashSet<>();
+                }
+                changed.add(sensor);
             }
         }
+        return changed != null ? changed : Collections.emptySet();
     }
 
     @Override
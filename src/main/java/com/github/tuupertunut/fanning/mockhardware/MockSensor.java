@@ -24,9 +24,9 @@
 package com.github.tuupertunut.fanning.mockhardware;
 
 import com.github.tuupertunut.fanning.hwinterface.Sensor;
-import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.value.ObservableDoubleValue;
+import com.github.tuupertunut.fanning.hwinterface.ValueListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
@@ -38,7 +38,8 @@ public class MockSensor implements Sensor {
     String id;
     String sensorType;
     String measurementUnit;
-    DoubleProperty value;
+    volatile double value;
+    List<ValueListener> valueListeners;
 
     public MockSensor(String name, String id, String sensorType, String measurementUnit) {
         this.name = name;
@@ -46,7 +47,8 @@ public class MockSensor implements Sensor {
         this.sensorType = sensorType;
         this.measurementUnit = measurementUnit;
 
-        value = new SimpleDoubleProperty();
+        value = 0;
+        valueListeners = new CopyOnWriteArrayList<>();
     }
 
     @Override
@@ -70,7 +72,34 @@ public class MockSensor implements Sensor {
     }
 
     @Override
-    public ObservableDoubleValue valueProperty() {
+    public double getValue() {
         return value;
     }
+
+    @Override
+    public void addValueListener(ValueListener listener) {
+        valueListeners.add(listener);
+    }
+
+    @Override
+    public void removeValueListener(ValueListener listener) {
+        valueListeners.remove(listener);
+    }
+
+    /**
+     * Sets the value of the sensor, as if the hardware had reported it.
+     *
+     * @param value the new value.
+     */
+    public void setValue(double value) {
+        double oldValue = this.value;
+        this.value = value;
+
+        /* Like a property, listeners are only notified of actual changes. */
+        if (Double.doubleToLongBits(oldValue) != Double.doubleToLongBits(value)) {
+            for (ValueListener listener : valueListeners) {
+                listener.valueChanged(oldValue, value);
+            }
+        }
+    }
 }
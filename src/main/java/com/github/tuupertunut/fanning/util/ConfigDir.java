@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locations of the configuration files of the software.
+ *
+ * @author Tuupertunut
+ */
+public class ConfigDir {
+
+    private ConfigDir() {
+    }
+
+    /**
+     * Returns the OS specific user config directory.
+     *
+     * @return the user config directory.
+     */
+    public static Path getPlatformSpecificConfigDir() {
+        /* Apache commons says this is a valid way to detect the operating
+         * system.
+         * https://github.com/apache/commons-lang/blob/LANG_3_7/src/main/java/org/apache/commons/lang3/SystemUtils.java */
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return Paths.get(System.getProperty("user.home")).resolve("AppData/Local");
+        } else if (System.getProperty("os.name").startsWith("Mac OS X")) {
+            return Paths.get(System.getProperty("user.home")).resolve("Library/Application Support");
+        } else {
+            return Paths.get(System.getProperty("user.home")).resolve(".config");
+        }
+    }
+
+    /**
+     * Returns the default path of the fan curve file.
+     *
+     * @return the path of the fan curve file.
+     */
+    public static Path getDefaultProfilePath() {
+        return getPlatformSpecificConfigDir().resolve("Fanning/fanCurves.json");
+    }
+
+    /**
+     * Returns the default directory of the sensor history files.
+     *
+     * @return the directory of the sensor history files.
+     */
+    public static Path getDefaultHistoryDir() {
+        return getPlatformSpecificConfigDir().resolve("Fanning/history");
+    }
+
+    /**
+     * Returns the default path of the file where the sensor values are shared
+     * with other processes. On Linux it is in /dev/shm, so it is never
+     * written to a disk. Elsewhere it is in the temporary directory.
+     *
+     * @return the path of the shared snapshot file.
+     */
+    public static Path getDefaultSnapshotExportPath() {
+        Path sharedMemoryDir = Paths.get("/dev/shm");
+        if (Files.isDirectory(sharedMemoryDir)) {
+            return sharedMemoryDir.resolve("fanning-snapshot");
+        } else {
+            return Paths.get(System.getProperty("java.io.tmpdir")).resolve("fanning-snapshot");
+        }
+    }
+}
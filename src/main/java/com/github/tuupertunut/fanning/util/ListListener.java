@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.util;
+
+import java.util.List;
+
+/**
+ * A listener that is notified when the elements of a {@link ListenableList}
+ * change. Every change is one contiguous range of the list, where some
+ * elements were removed and some were added in their place.
+ *
+ * @author Tuupertunut
+ * @param <E> the element type of the list.
+ */
+@FunctionalInterface
+public interface ListListener<E> {
+
+    /**
+     * Called after the list has changed. The added list is a view of the
+     * changed list, so it is only valid during this call.
+     *
+     * @param from the index of the first changed element.
+     * @param removed the elements that were removed from the index.
+     * @param added the elements that were added to the index.
+     */
+    void onChanged(int from, List<? extends E> removed, List<? extends E> added);
+}
@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A list that notifies its listeners whenever its elements change. This is a
+ * lightweight replacement for the JavaFX observable list, so the core does not
+ * depend on JavaFX. Like the JavaFX list, this is not thread safe, so it should
+ * only be modified from one thread at a time. Listeners are called on the
+ * thread that modified the list.
+ *
+ * @author Tuupertunut
+ * @param <E> the element type of the list.
+ */
+public class ListenableList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final ArrayList<E> elements;
+    private final List<ListListener<? super E>> listeners;
+
+    /**
+     * Creates a new empty list.
+     */
+    public ListenableList() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Creates a new list with the given elements.
+     *
+     * @param elements the initial elements of the list.
+     */
+    public ListenableList(Collection<? extends E> elements) {
+        this.elements = new ArrayList<>(elements);
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Adds a listener that is notified after every change of this list.
+     *
+     * @param listener the listener to add.
+     */
+    public void addListener(ListListener<? super E> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Removes a listener that was added with
+     * {@link #addListener(ListListener)}.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeListener(ListListener<? super E> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E old = elements.set(index, element);
+        fireChange(index, Collections.singletonList(old), 1);
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        elements.add(index, element);
+        modCount++;
+        fireChange(index, Collections.emptyList(), 1);
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = elements.remove(index);
+        modCount++;
+        fireChange(index, Collections.singletonList(old), 0);
+        return old;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        return addAll(elements.size(), c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        int oldSize = elements.size();
+        elements.addAll(index, c);
+        int addedCount = elements.size() - oldSize;
+        if (addedCount == 0) {
+            return false;
+        }
+        modCount++;
+        fireChange(index, Collections.emptyList(), addedCount);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        List<E> range = elements.subList(fromIndex, toIndex);
+        List<E> removed = new ArrayList<>(range);
+        range.clear();
+        modCount++;
+        fireChange(fromIndex, removed, 0);
+    }
+
+    /**
+     * Replaces all elements of this list with the given elements. Listeners
+     * are notified once of the whole change.
+     *
+     * @param c the new elements.
+     */
+    public void setAll(Collection<? extends E> c) {
+        List<E> removed = new ArrayList<>(elements);
+        elements.clear();
+        elements.addAll(c);
+        if (removed.isEmpty() && elements.isEmpty()) {
+            return;
+        }
+        modCount++;
+        fireChange(0, removed, elements.size());
+    }
+
+    /**
+     * Replaces all elements of this list with the given elements.
+     *
+     * @param elements the new elements.
+     */
+    @SafeVarargs
+    public final void setAll(E... elements) {
+        /* The elements are copied instead of wrapping the array, so that the
+         * varargs array never leaves this method. */
+        List<E> list = new ArrayList<>(elements.length);
+        for (E element : elements) {
+            list.add(element);
+        }
+        setAll(list);
+    }
+
+    /**
+     * Adds the given elements to the end of this list.
+     *
+     * @param elements the elements to add.
+     * @return true if the list changed.
+     */
+    @SafeVarargs
+    public final boolean addAll(E... elements) {
+        List<E> list = new ArrayList<>(elements.length);
+        for (E element : elements) {
+            list.add(element);
+        }
+        return addAll(list);
+    }
+
+    private void fireChange(int from, List<E> removed, int addedCount) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        List<E> added = Collections.unmodifiableList(elements.subList(from, from + addedCount));
+        List<E> unmodifiableRemoved = Collections.unmodifiableList(removed);
+        for (ListListener<? super E> listener : listeners) {
+            listener.onChanged(from, unmodifiableRemoved, added);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder implementation of {@link FanActuationEvent}.
+ *
+ * @author Tuupertunut
+ */
+@Name("com.github.tuupertunut.fanning.FanActuation")
+@Label("Fan Actuation")
+@Category({"Fanning", "Hardware"})
+@Description("Setting the controlled value of a fan")
+@StackTrace(false)
+public class JfrFanActuationEvent extends jdk.jfr.Event implements FanActuationEvent {
+
+    @Label("Fan Id")
+    public String fanId;
+
+    @Label("Value")
+    @Description("The new value, NaN if the fan is given back to the hardware")
+    public double value;
+
+    @Label("Success")
+    public boolean success;
+
+    @Override
+    public void commit(String fanId, double value, boolean success) {
+        if (shouldCommit()) {
+            this.fanId = fanId;
+            this.value = value;
+            this.success = success;
+            commit();
+        }
+    }
+}
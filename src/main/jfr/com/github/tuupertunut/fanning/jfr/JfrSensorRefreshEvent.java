@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder implementation of {@link SensorRefreshEvent}.
+ *
+ * @author Tuupertunut
+ */
+@Name("com.github.tuupertunut.fanning.SensorRefresh")
+@Label("Sensor Refresh")
+@Category({"Fanning", "Hardware"})
+@Description("Fetching new sensor values of one hardware item")
+@StackTrace(false)
+public class JfrSensorRefreshEvent extends jdk.jfr.Event implements SensorRefreshEvent {
+
+    @Label("Hardware Id")
+    public String hardwareId;
+
+    @Label("Sensors")
+    @Description("How many sensors were fetched")
+    public int sensors;
+
+    @Label("Changed Sensors")
+    @Description("How many sensors changed by more than the deadband")
+    public int changedSensors;
+
+    @Label("Failed")
+    public boolean failed;
+
+    @Override
+    public void commit(String hardwareId, int sensors, int changedSensors, boolean failed) {
+        if (shouldCommit()) {
+            this.hardwareId = hardwareId;
+            this.sensors = sensors;
+            this.changedSensors = changedSensors;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder implementation of {@link TickEvent}.
+ *
+ * @author Tuupertunut
+ */
+@Name("com.github.tuupertunut.fanning.Tick")
+@Label("Control Loop Tick")
+@Category({"Fanning", "Control Loop"})
+@Description("One update of the fan control loop")
+@StackTrace(false)
+public class JfrTickEvent extends jdk.jfr.Event implements TickEvent {
+
+    @Label("Trigger")
+    @Description("What started the update: poll, adaptive poll or recalculation")
+    public String trigger;
+
+    @Label("Changed Sensors")
+    @Description("How many sensors changed by more than the deadband")
+    public int changedSensors;
+
+    @Override
+    public void commit(String trigger, int changedSensors) {
+        if (shouldCommit()) {
+            this.trigger = trigger;
+            this.changedSensors = changedSensors;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class AdaptivePollerTest {
+
+    MockHardwareManager hwManager;
+    MockSensor sct1;
+    MockSensor sgp;
+    MockFanController fg;
+    AdaptivePoller poller;
+
+    @Before
+    public void setUp() {
+        sct1 = new MockSensor("fake cpu core1 temp", "sct1", "Temperature", "°C");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc");
+
+        sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        fg = new MockFanController(sgp, "fg", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(fg), "fake gpu", "hg");
+
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+
+        hwManager = new MockHardwareManager(root);
+
+        poller = new AdaptivePoller(hwManager, new ReportedValues(hwManager), 100, 800);
+    }
+
+    @Test
+    public void testNewSensorsAreDueImmediately() {
+        poller.setSensors(Arrays.asList(sct1), 0);
+        Assert.assertEquals(0, poller.nanosUntilNextPoll(0));
+        sct1.setValue(-Double.MAX_VALUE);
+        Assert.assertTrue(poller.pollDue(0, 0).contains(sct1));
+    }
+
+    @Test
+    public void testSensorsAreNotPolledBeforeDue() {
+        poller.setSensors(Arrays.asList(sct1), 0);
+        poller.pollDue(0, 0);
+        sct1.setValue(-Double.MAX_VALUE);
+        Assert.assertTrue(poller.pollDue(50, 0).isEmpty());
+        Assert.assertEquals(-Double.MAX_VALUE, sct1.getValue(), 0);
+        Assert.assertEquals(50, poller.nanosUntilNextPoll(50));
+    }
+
+    @Test
+    public void testSensorsCanBeChangedDuringPoll() throws InterruptedException {
+        CountDownLatch polling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MockHardwareManager blockingManager = new MockHardwareManager(hwManager.getHardwareRoot()) {
+            @Override
+            public Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+                polling.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.updateSensors(sensors, deadband);
+            }
+        };
+        AdaptivePoller blockingPoller = new AdaptivePoller(blockingManager, new ReportedValues(blockingManager), 100, 800);
+        blockingPoller.setSensors(Arrays.asList(sct1), 0);
+
+        Thread poll = new Thread(() -> blockingPoller.pollDue(0, 0));
+        poll.start();
+        Assert.assertTrue(polling.await(5, TimeUnit.SECONDS));
+
+        /* The hardware read does not block changing the sensors. A sensor
+         * removed during the poll is not scheduled again. */
+        blockingPoller.setSensors(Arrays.asList(sgp), 0);
+        Assert.assertEquals(0, blockingPoller.nanosUntilNextPoll(0));
+        release.countDown();
+        poll.join(5000);
+
+        Assert.assertEquals(-1, blockingPoller.getIntervalNanos(sct1));
+        Assert.assertEquals(100, blockingPoller.getIntervalNanos(sgp));
+    }
+
+    @Test
+    public void testStableSensorBacksOff() {
+        /* The controlled fan makes its sensor stable. */
+        fg.setControlledValue(50);
+        poller.setSensors(Arrays.asList(sgp), 0);
+
+        long now = 0;
+        poller.pollDue(now, 0);
+        Assert.assertEquals(100, poller.getIntervalNanos(sgp));
+        for (long expected : new long[]{200, 400, 800, 800}) {
+            now += poller.nanosUntilNextPoll(now);
+            poller.pollDue(now, 0);
+            Assert.assertEquals(expected, poller.getIntervalNanos(sgp));
+        }
+    }
+
+    @Test
+    public void testChangingSensorReturnsToMinimumInterval() {
+        fg.setControlledValue(50);
+        poller.setSensors(Arrays.asList(sgp), 0);
+        poller.pollDue(0, 0);
+        poller.pollDue(100, 0);
+        Assert.assertEquals(200, poller.getIntervalNanos(sgp));
+
+        fg.setControlledValue(60);
+        poller.pollDue(300, 0);
+        Assert.assertEquals(100, poller.getIntervalNanos(sgp));
+    }
+
+    @Test
+    public void testRemovedSensorsAreNotPolled() {
+        poller.setSensors(Arrays.asList(sct1), 0);
+        poller.setSensors(Arrays.asList(), 0);
+        Assert.assertEquals(-1, poller.getIntervalNanos(sct1));
+        Assert.assertTrue(poller.pollDue(0, 0).isEmpty());
+        Assert.assertEquals(800, poller.nanosUntilNextPoll(0));
+    }
+}
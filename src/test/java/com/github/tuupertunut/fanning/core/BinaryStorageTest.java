@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class BinaryStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockHardwareManager hwManager;
+    Path filePath;
+    BinaryStorage storage;
+
+    @Before
+    public void setUp() {
+        MockSensor sct1 = new MockSensor("fake cpu core1 temp", "sct1", "Temperature", "°C");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc");
+
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        MockFanController fg = new MockFanController(sgp, "fg", 0, 100);
+        MockSensor sgp2 = new MockSensor("fake gpu fan 2 percent", "sgp2", "Control", "%");
+        MockFanController fg2 = new MockFanController(sgp2, "fg2", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp, sgp2), Arrays.asList(fg, fg2), "fake gpu", "hg");
+
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+
+        hwManager = new MockHardwareManager(root);
+
+        filePath = folder.getRoot().toPath().resolve("fanCurves.bin");
+        storage = new BinaryStorage(hwManager, filePath);
+    }
+
+    private List<FanCurve> createFanCurves() {
+        return Arrays.asList(
+                new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList(new Mapping(5.0, 6.5), new Mapping(40, 100))),
+                new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg2").get(), Arrays.asList()));
+    }
+
+    private static void assertSameFanCurves(List<FanCurve> expected, List<FanCurve> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertSame(expected.get(i).getSensor(), actual.get(i).getSensor());
+            Assert.assertSame(expected.get(i).getFanController(), actual.get(i).getFanController());
+
+            List<Mapping> expectedChangePoints = expected.get(i).getChangePoints();
+            List<Mapping> actualChangePoints = actual.get(i).getChangePoints();
+            Assert.assertEquals(expectedChangePoints.size(), actualChangePoints.size());
+            for (int j = 0; j < expectedChangePoints.size(); j++) {
+                Assert.assertEquals(expectedChangePoints.get(j).key, actualChangePoints.get(j).key, 0);
+                Assert.assertEquals(expectedChangePoints.get(j).value, actualChangePoints.get(j).value, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        List<FanCurve> fanCurves = createFanCurves();
+        storage.store(fanCurves);
+
+        assertSameFanCurves(fanCurves, storage.load());
+    }
+
+    @Test
+    public void testLoadWithoutFile() throws IOException {
+        Assert.assertTrue(storage.load().isEmpty());
+    }
+
+    @Test
+    public void testIdsAreInterned() throws IOException {
+        storage.store(createFanCurves());
+
+        /* Header, 3 ids ("sct1", "fg", "fg2"), curve count, 2 curve headers
+         * and 2 change points. */
+        long expectedSize = 12 + (2 + 4) + (2 + 2) + (2 + 3) + 4 + 2 * 12 + 2 * 16;
+        Assert.assertEquals(expectedSize, Files.size(filePath));
+    }
+
+    @Test
+    public void testConvertFromJsonAndBack() throws IOException, JsonException {
+        List<FanCurve> fanCurves = createFanCurves();
+        JsonStorage jsonStorage = new JsonStorage(hwManager, folder.getRoot().toPath().resolve("fanCurves.json"));
+        jsonStorage.store(fanCurves);
+
+        jsonStorage.copyTo(storage);
+        assertSameFanCurves(fanCurves, storage.load());
+
+        JsonStorage convertedBack = new JsonStorage(hwManager, folder.getRoot().toPath().resolve("converted.json"));
+        storage.copyTo(convertedBack);
+        assertSameFanCurves(fanCurves, convertedBack.load());
+    }
+
+    @Test
+    public void testCopyKeepsUnboundFanCurves() throws IOException, JsonException {
+        Path jsonPath = folder.getRoot().toPath().resolve("fanCurves.json");
+        Files.write(jsonPath, "[{\"sensor\":\"sct1\",\"fanController\":\"missing\",\"changePoints\":[{\"key\":5.0,\"value\":6.5}]}]".getBytes(StandardCharsets.UTF_8));
+        JsonStorage jsonStorage = new JsonStorage(hwManager, jsonPath);
+
+        jsonStorage.copyTo(storage);
+        Assert.assertTrue(storage.load().isEmpty());
+        Assert.assertEquals(1, storage.getUnboundFanCurves().size());
+        Assert.assertEquals("missing", storage.getUnboundFanCurves().get(0).getFanControllerId());
+
+        JsonStorage convertedBack = new JsonStorage(hwManager, folder.getRoot().toPath().resolve("converted.json"));
+        storage.copyTo(convertedBack);
+        Assert.assertEquals(1, convertedBack.getUnboundFanCurves().size());
+        Assert.assertEquals(6.5, convertedBack.getUnboundFanCurves().get(0).getChangePoints().get(0).value, 0);
+    }
+
+    @Test
+    public void testInvalidFiles() {
+        ByteBuffer valid = storage.toBinary(createFanCurves());
+        byte[] validBytes = new byte[valid.remaining()];
+        valid.get(validBytes);
+
+        List<byte[]> invalids = Arrays.asList(
+                new byte[0],
+                Arrays.copyOf(validBytes, validBytes.length - 1),
+                Arrays.copyOf(validBytes, validBytes.length + 1),
+                "{\"sensor\"}".getBytes(),
+                versionChanged(validBytes));
+        for (byte[] invalid : invalids) {
+            try {
+                storage.fromBinary(ByteBuffer.wrap(invalid));
+                Assert.fail();
+            } catch (IOException ex) {
+                /* This should happen. */
+            }
+        }
+    }
+
+    private static byte[] versionChanged(byte[] bytes) {
+        byte[] changed = bytes.clone();
+        ByteBuffer.wrap(changed).putInt(4, BinaryStorage.VERSION + 1);
+        return changed;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class DebouncedStorageTest {
+
+    List<List<FanCurve>> writes;
+    List<List<FanCurve>> changeWrites;
+    List<Set<String>> removalWrites;
+    IOException writeFailure;
+    DebouncedStorage storage;
+    FanCurve fanCurve;
+
+    @Before
+    public void setUp() {
+        writes = new ArrayList<>();
+        changeWrites = new ArrayList<>();
+        removalWrites = new ArrayList<>();
+        writeFailure = null;
+
+        Storage countingStorage = new Storage() {
+            @Override
+            public List<FanCurve> load() throws IOException, JsonException {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) throws IOException {
+                synchronized (writes) {
+                    if (writeFailure != null) {
+                        throw writeFailure;
+                    }
+                    writes.add(fanCurves);
+                }
+            }
+
+            @Override
+            public void storeChanges(List<FanCurve> fanCurves, List<FanCurve> changedFanCurves, Set<String> removedFanControllerIds) throws IOException {
+                if (writeFailure != null) {
+                    throw writeFailure;
+                }
+                changeWrites.add(changedFanCurves);
+                removalWrites.add(removedFanControllerIds);
+            }
+        };
+
+        /* Long enough that the tests flush before any scheduled write. */
+        storage = new DebouncedStorage(countingStorage, Duration.ofMinutes(1));
+
+        MockSensor s = new MockSensor("fake sensor", "s", "Temperature", "°C");
+        MockSensor sf = new MockSensor("fake fan percent", "sf", "Control", "%");
+        MockFanController f = new MockFanController(sf, "f", 0, 100);
+        fanCurve = new FanCurve(s, f, Arrays.asList(new Mapping(30, 40)));
+    }
+
+    @Test
+    public void testStoresAreCoalesced() throws IOException {
+        storage.store(Arrays.asList(fanCurve));
+        fanCurve.getChangePoints().add(new Mapping(50, 60));
+        storage.store(Arrays.asList(fanCurve));
+        storage.flush();
+
+        Assert.assertEquals(1, writes.size());
+        Assert.assertEquals(2, writes.get(0).get(0).getChangePoints().size());
+    }
+
+    @Test
+    public void testStoreTakesCopy() throws IOException {
+        storage.store(Arrays.asList(fanCurve));
+        fanCurve.getChangePoints().clear();
+        storage.flush();
+
+        Assert.assertEquals(1, writes.get(0).get(0).getChangePoints().size());
+    }
+
+    @Test
+    public void testUnboundFanCurvesAreDelegated() {
+        List<UnboundFanCurve> unbound = new ArrayList<>();
+        storage = new DebouncedStorage(new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+
+            @Override
+            public List<UnboundFanCurve> getUnboundFanCurves() {
+                return new ArrayList<>(unbound);
+            }
+
+            @Override
+            public void setUnboundFanCurves(List<UnboundFanCurve> unboundFanCurves) {
+                unbound.clear();
+                unbound.addAll(unboundFanCurves);
+            }
+        }, Duration.ofMinutes(1));
+
+        storage.setUnboundFanCurves(Arrays.asList(new UnboundFanCurve("s", "missing", Arrays.asList())));
+        Assert.assertEquals(1, unbound.size());
+        Assert.assertEquals("missing", storage.getUnboundFanCurves().get(0).getFanControllerId());
+    }
+
+    @Test
+    public void testFlushWithoutStores() throws IOException {
+        storage.flush();
+
+        Assert.assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void testScheduledWrite() throws IOException, InterruptedException {
+        storage = new DebouncedStorage(new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+                synchronized (writes) {
+                    writes.add(fanCurves);
+                    writes.notifyAll();
+                }
+            }
+        }, Duration.ofMillis(10));
+
+        storage.store(Arrays.asList(fanCurve));
+
+        synchronized (writes) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writes.isEmpty() && System.currentTimeMillis() < deadline) {
+                writes.wait(100);
+            }
+        }
+        Assert.assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void testFailureIsThrownLater() throws IOException {
+        writeFailure = new IOException("disk full");
+        storage.store(Arrays.asList(fanCurve));
+
+        try {
+            storage.flush();
+            Assert.fail();
+        } catch (IOException ex) {
+            Assert.assertEquals("disk full", ex.getMessage());
+        }
+
+        /* The failure is reported only once. */
+        writeFailure = null;
+        storage.store(Arrays.asList(fanCurve));
+        storage.flush();
+        Assert.assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() throws IOException {
+        writeFailure = new IOException("disk full");
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+
+        try {
+            storage.flush();
+            Assert.fail();
+        } catch (IOException ex) {
+            Assert.assertEquals("disk full", ex.getMessage());
+        }
+
+        /* The failed batch is written with the next flush as a full store. */
+        writeFailure = null;
+        storage.flush();
+        Assert.assertEquals(1, writes.size());
+        Assert.assertEquals(1, writes.get(0).get(0).getChangePoints().size());
+        Assert.assertTrue(changeWrites.isEmpty());
+    }
+
+    @Test
+    public void testStoreAfterFailureIsNotLost() throws IOException {
+        writeFailure = new IOException("disk full");
+        storage.store(Arrays.asList(fanCurve));
+        try {
+            storage.flush();
+            Assert.fail();
+        } catch (IOException ex) {
+        }
+
+        /* New changes are written together with the failed batch. */
+        writeFailure = null;
+        fanCurve.getChangePoints().add(new Mapping(50, 60));
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        storage.flush();
+
+        Assert.assertEquals(1, writes.size());
+        Assert.assertEquals(2, writes.get(0).get(0).getChangePoints().size());
+    }
+
+    @Test
+    public void testChangesAreMerged() throws IOException {
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        storage.storeChanges(Arrays.asList(), Arrays.asList(), Collections.singleton("f"));
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        storage.flush();
+
+        Assert.assertTrue(writes.isEmpty());
+        Assert.assertEquals(1, changeWrites.size());
+        Assert.assertEquals(1, changeWrites.get(0).size());
+        Assert.assertEquals(Collections.singleton("f"), removalWrites.get(0));
+    }
+
+    @Test
+    public void testStoreOverridesChanges() throws IOException {
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        storage.store(Arrays.asList(fanCurve));
+        storage.flush();
+
+        Assert.assertEquals(1, writes.size());
+        Assert.assertTrue(changeWrites.isEmpty());
+    }
+}
@@ -27,7 +27,9 @@ import com.github.tuupertunut.fanning.mockhardware.MockFanController;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
 import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.OptionalDouble;
 import org.junit.Assert;
 import org.junit.Before;
@@ -75,7 +77,47 @@ public class FanCurveTest {
 
     @Test
     public void testGetFanValueAtOnEmptyCurve() {
-        fanCurve.changePointsProperty().clear();
+        fanCurve.getChangePoints().clear();
         Assert.assertEquals(OptionalDouble.empty(), fanCurve.getFanValueAt(5));
     }
+
+    @Test
+    public void testGetFanValueAtExactlyOnChangePoint() {
+        Assert.assertEquals(10, fanCurve.getFanValueAt(8).getAsDouble(), 0);
+    }
+
+    @Test
+    public void testGetFanValueAtWithUnsortedChangePoints() {
+        fanCurve.getChangePoints().setAll(new Mapping(8.0, 10), new Mapping(2.0, 3), new Mapping(5.0, 6.5));
+        Assert.assertEquals(3, fanCurve.getFanValueAt(1).getAsDouble(), 0);
+        Assert.assertEquals(6.5, fanCurve.getFanValueAt(7).getAsDouble(), 0);
+        Assert.assertEquals(10, fanCurve.getFanValueAt(100).getAsDouble(), 0);
+    }
+
+    @Test
+    public void testGetFanValueAtFollowsChangePointEdits() {
+        fanCurve.getChangePoints().add(new Mapping(6.0, 8));
+        Assert.assertEquals(8, fanCurve.getFanValueAt(7).getAsDouble(), 0);
+        fanCurve.getChangePoints().remove(2);
+        Assert.assertEquals(6.5, fanCurve.getFanValueAt(7).getAsDouble(), 0);
+    }
+
+    @Test
+    public void testGetFanValueAtWithManyChangePoints() {
+        List<Mapping> changePoints = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            changePoints.add(new Mapping(i, i * 2));
+        }
+        fanCurve.getChangePoints().setAll(changePoints);
+        Assert.assertEquals(0, fanCurve.getFanValueAt(-5).getAsDouble(), 0);
+        Assert.assertEquals(1000, fanCurve.getFanValueAt(500.5).getAsDouble(), 0);
+        Assert.assertEquals(1998, fanCurve.getFanValueAt(5000).getAsDouble(), 0);
+    }
+
+    @Test
+    public void testGetFanValueAtOrElse() {
+        Assert.assertEquals(6.5, fanCurve.getFanValueAtOrElse(6, Double.NaN), 0);
+        fanCurve.getChangePoints().clear();
+        Assert.assertTrue(Double.isNaN(fanCurve.getFanValueAtOrElse(6, Double.NaN)));
+    }
 }
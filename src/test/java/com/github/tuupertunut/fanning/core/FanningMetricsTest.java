@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class FanningMetricsTest {
+
+    FanningMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new FanningMetrics();
+    }
+
+    @Test
+    public void testOverrunTicks() {
+        metrics.setTickSchedule(100, 100);
+
+        metrics.recordTick(1000, 1050, -1);
+        metrics.recordTick(1100, 1250, -1);
+
+        Assert.assertEquals(2, metrics.getTickCount());
+        Assert.assertEquals(1, metrics.getOverrunTicks());
+        Assert.assertEquals(150, metrics.getTickTimes().getMax());
+    }
+
+    @Test
+    public void testSkippedTicks() {
+        metrics.setTickSchedule(100, 100);
+
+        metrics.recordTick(1000, 1010, -1);
+        metrics.recordTick(1100, 1110, -1);
+        metrics.recordTick(1450, 1460, -1);
+        metrics.recordTick(1460, 1470, -1);
+
+        Assert.assertEquals(2, metrics.getSkippedTicks());
+    }
+
+    @Test
+    public void testNothingIsCountedWithoutSchedule() {
+        metrics.recordTick(1000, 5000, -1);
+        metrics.recordTick(100000, 100010, -1);
+
+        Assert.assertEquals(0, metrics.getOverrunTicks());
+        Assert.assertEquals(0, metrics.getSkippedTicks());
+    }
+
+    @Test
+    public void testDeviceAndFanTimesById() {
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        MockFanController fg = new MockFanController(sgp, "fg", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(fg), "fake gpu", "hg");
+
+        metrics.recordDeviceRead(hg, 200);
+        metrics.recordDeviceRead(hg, 400);
+        metrics.recordFanWrite(fg, 50);
+
+        Assert.assertEquals(2, metrics.getDeviceReadTimes().get("hg").getCount());
+        Assert.assertEquals(400, metrics.getDeviceReadTimes().get("hg").getMax());
+        Assert.assertEquals(1, metrics.getFanWriteTimes().get("fg").getCount());
+    }
+
+    @Test
+    public void testRegisteredAsMXBean() throws JMException {
+        metrics.setTickSchedule(100, 100);
+        metrics.recordTick(1000, 1200, -1);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(FanningMetrics.OBJECT_NAME);
+        metrics.register();
+        try {
+            Assert.assertEquals(1L, server.getAttribute(name, "OverrunTicks"));
+            CompositeData tickTimes = (CompositeData) server.getAttribute(name, "TickTimes");
+            Assert.assertEquals(200L, tickTimes.get("max"));
+        } finally {
+            metrics.unregister();
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+}
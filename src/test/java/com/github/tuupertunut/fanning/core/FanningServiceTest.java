@@ -24,14 +24,25 @@
 package com.github.tuupertunut.fanning.core;
 
 import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.tuupertunut.fanning.hwinterface.AbstractHardwareManager;
+import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
+import com.github.tuupertunut.fanning.hwinterface.HardwareManager;
 import com.github.tuupertunut.fanning.mockhardware.MockFanController;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
 import com.github.tuupertunut.fanning.mockhardware.MockSensor;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,6 +57,8 @@ public class FanningServiceTest {
     MockSensor sct1;
     MockFanController fg;
     FanningService fanningService;
+    List<FanCurve> storedChanges;
+    Set<String> storedRemovals;
 
     @Before
     public void setUp() {
@@ -70,6 +83,12 @@ public class FanningServiceTest {
             @Override
             public void store(List<FanCurve> fanCurves) throws IOException {
             }
+
+            @Override
+            public void storeChanges(List<FanCurve> fanCurves, List<FanCurve> changedFanCurves, Set<String> removedFanControllerIds) throws IOException {
+                storedChanges = changedFanCurves;
+                storedRemovals = removedFanControllerIds;
+            }
         };
 
         fanningService = new FanningService(hwManager, storage);
@@ -77,32 +96,421 @@ public class FanningServiceTest {
 
     @Test
     public void testLoadFromStorage() throws IOException, JsonException {
-        Assert.assertTrue(fanningService.fanCurvesProperty().isEmpty());
+        Assert.assertTrue(fanningService.getFanCurves().isEmpty());
         fanningService.loadFromStorage();
-        Assert.assertEquals(1, fanningService.fanCurvesProperty().size());
+        Assert.assertEquals(1, fanningService.getFanCurves().size());
+    }
+
+    @Test
+    public void testStoreToStorageStoresOnlyChanges() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.storeToStorage();
+        Assert.assertTrue(storedChanges.isEmpty());
+        Assert.assertTrue(storedRemovals.isEmpty());
+
+        FanCurve fanCurve = fanningService.getFanCurves().get(0);
+        fanCurve.getChangePoints().add(new Mapping(50, 100));
+        fanningService.storeToStorage();
+        Assert.assertEquals(Arrays.asList(fanCurve), storedChanges);
+        Assert.assertTrue(storedRemovals.isEmpty());
+
+        fanningService.getFanCurves().remove(fanCurve);
+        fanningService.storeToStorage();
+        Assert.assertTrue(storedChanges.isEmpty());
+        Assert.assertEquals(Collections.singleton("fg"), storedRemovals);
+
+        /* Editing a removed curve doesn't make it stored again. */
+        fanCurve.getChangePoints().add(new Mapping(60, 100));
+        fanningService.storeToStorage();
+        Assert.assertTrue(storedChanges.isEmpty());
+    }
+
+    @Test
+    public void testStoreToStorageStoresAddedCurves() throws IOException, JsonException {
+        FanCurve fanCurve = new FanCurve(sct1, fg, Arrays.asList());
+        fanningService.getFanCurves().add(fanCurve);
+        fanningService.storeToStorage();
+        Assert.assertEquals(Arrays.asList(fanCurve), storedChanges);
     }
 
     @Test
     public void testFindCurveOfFan() throws IOException, JsonException {
         fanningService.loadFromStorage();
-        Assert.assertEquals(fanningService.fanCurvesProperty().get(0), fanningService.findCurveOfFan(fg).get());
+        Assert.assertEquals(fanningService.getFanCurves().get(0), fanningService.findCurveOfFan(fg).get());
+    }
+
+    @Test
+    public void testFindCurveOfFanAfterRemovingCurve() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.getFanCurves().remove(0);
+        Assert.assertFalse(fanningService.findCurveOfFan(fg).isPresent());
+    }
+
+    @Test
+    public void testFindCurveOfFanAfterReplacingCurves() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        FanCurve replacement = new FanCurve(sct1, fg, Arrays.asList());
+        fanningService.getFanCurves().setAll(replacement);
+        Assert.assertEquals(replacement, fanningService.findCurveOfFan(fg).get());
+    }
+
+    @Test
+    public void testFindCurveOfFanPrefersFirstCurveOfFan() throws IOException, JsonException {
+        FanCurve first = new FanCurve(sct1, fg, Arrays.asList());
+        FanCurve second = new FanCurve(sct1, fg, Arrays.asList());
+        fanningService.getFanCurves().addAll(first, second);
+        Assert.assertEquals(first, fanningService.findCurveOfFan(fg).get());
+        fanningService.getFanCurves().remove(first);
+        Assert.assertEquals(second, fanningService.findCurveOfFan(fg).get());
     }
 
     @Test
     public void testUpdateMakesFanFollowFanCurve() throws IOException, JsonException {
         fanningService.loadFromStorage();
-        Assert.assertEquals(OptionalDouble.empty(), fg.controlledValueProperty().get());
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
         fanningService.update();
-        Assert.assertNotEquals(OptionalDouble.empty(), fg.controlledValueProperty().get());
-        fanningService.fanCurvesProperty().clear();
+        Assert.assertFalse(Double.isNaN(fg.getControlledValue()));
+        fanningService.getFanCurves().clear();
         fanningService.update();
-        Assert.assertEquals(OptionalDouble.empty(), fg.controlledValueProperty().get());
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+    }
+
+    @Test
+    public void testUpdateIsMeasured() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.update();
+        fanningService.setSensorDeadband(Double.POSITIVE_INFINITY);
+        fanningService.update();
+
+        FanningMetrics metrics = fanningService.getMetrics();
+        Assert.assertEquals(2, metrics.getTickCount());
+        Assert.assertEquals(2, metrics.getHardwareReadTimes().getCount());
+        Assert.assertEquals(1, metrics.getFanWriteTimes().get("fg").getCount());
     }
 
     @Test
     public void testUpdateDoesNotMakeFanFollowEmptyFanCurve() throws IOException, JsonException {
-        fanningService.fanCurvesProperty().add(new FanCurve(sct1, fg, Arrays.asList()));
+        fanningService.getFanCurves().add(new FanCurve(sct1, fg, Arrays.asList()));
+        fanningService.update();
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+    }
+
+    @Test
+    public void testUpdateSkipsFansWhenNothingChanged() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.update();
+        fanningService.setSensorDeadband(Double.POSITIVE_INFINITY);
+        fg.setControlledValue(Double.NaN);
+        fanningService.update();
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+    }
+
+    @Test
+    public void testUpdateFollowsChangePointEdits() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.setSensorDeadband(Double.POSITIVE_INFINITY);
+        fanningService.update();
+        fanningService.getFanCurves().get(0).getChangePoints().setAll(new Mapping(0, 42));
+        fanningService.update();
+        Assert.assertEquals(42, fg.getControlledValue(), 0);
+    }
+
+    @Test
+    public void testEventDrivenUpdaterFollowsSensorChanges() throws InterruptedException {
+        fanningService.getFanCurves().add(new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 10), new Mapping(100, 90))));
+        fanningService.initEventDrivenUpdater(Duration.ofHours(1));
+        waitUntil(() -> fg.getControlledValue() == 10);
+
+        /* The hardware is not queried again within an hour, so only the
+         * sensor change can update the fan. */
+        sct1.setValue(150);
+        waitUntil(() -> fg.getControlledValue() == 90);
+    }
+
+    @Test
+    public void testSlowDriftIsReported() throws IOException, JsonException {
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc");
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(fg.getSensor()), Arrays.asList(fg), "fake gpu", "hg");
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+
+        /* Every update drifts the value by less than the deadband, and the
+         * default implementation of updateSensors is used. */
+        HardwareManager driftingManager = new AbstractHardwareManager() {
+            @Override
+            public void updateHardwareTree() {
+                sct1.setValue(sct1.getValue() + 0.4);
+            }
+
+            @Override
+            public HardwareItem getHardwareRoot() {
+                return root;
+            }
+        };
+        fanningService = new FanningService(driftingManager, new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+        });
+        fanningService.getFanCurves().add(new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 10), new Mapping(1, 20))));
+        fanningService.setSensorDeadband(1);
+
+        fanningService.update();
+        fanningService.update();
+        fanningService.update();
+        Assert.assertEquals(10, fg.getControlledValue(), 0);
+
+        /* In total the value has now drifted further than the deadband. */
+        fanningService.update();
+        Assert.assertEquals(20, fg.getControlledValue(), 0);
+    }
+
+    @Test
+    public void testEventDrivenUpdaterReportsSlowDrift() throws InterruptedException {
+        FanCurve fanCurve = new FanCurve(sct1, fg, Arrays.asList());
+        fanningService.getFanCurves().add(fanCurve);
+        fanningService.setSensorDeadband(1);
+        fanningService.initEventDrivenUpdater(Duration.ofHours(1));
+        waitUntil(() -> sct1.getValue() != 0);
+
+        double start = sct1.getValue();
+        fanCurve.getChangePoints().setAll(new Mapping(0, 10), new Mapping(start + 1, 20));
+        waitUntil(() -> fg.getControlledValue() == 10);
+
+        sct1.setValue(start + 0.6);
+        sct1.setValue(start + 1.2);
+        waitUntil(() -> fg.getControlledValue() == 20);
+    }
+
+    @Test
+    public void testPollDoesNotCauseEmptyRecalculation() throws InterruptedException {
+        fanningService.getFanCurves().add(new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 10), new Mapping(100, 90))));
+        fanningService.initEventDrivenUpdater(Duration.ofHours(1));
+        waitUntil(() -> fg.getControlledValue() == 10);
+
+        /* The sensor changes of the first poll were handled by the poll, so
+         * the recalculation they scheduled is not a tick. */
+        Thread.sleep(100);
+        Assert.assertEquals(1, fanningService.getMetrics().getTickCount());
+    }
+
+    @Test
+    public void testEventDrivenUpdaterFollowsChangePointEdits() throws InterruptedException {
+        FanCurve fanCurve = new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 10)));
+        fanningService.getFanCurves().add(fanCurve);
+        fanningService.initEventDrivenUpdater(Duration.ofHours(1));
+        waitUntil(() -> fg.getControlledValue() == 10);
+
+        fanCurve.getChangePoints().setAll(new Mapping(0, 20));
+        waitUntil(() -> fg.getControlledValue() == 20);
+    }
+
+    @Test
+    public void testAdaptiveUpdaterFollowsSensorChanges() throws InterruptedException {
+        fanningService.getFanCurves().add(new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 10), new Mapping(100, 90))));
+        fanningService.initAdaptiveUpdater(Duration.ofMillis(10), Duration.ofMillis(100));
+        waitUntil(() -> fg.getControlledValue() == 10);
+    }
+
+    @Test
+    public void testUpdatePublishesSnapshot() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        AtomicReference<HardwareSnapshot> published = new AtomicReference<>();
+        fanningService.addSnapshotListener(published::set);
+        fanningService.update();
+
+        HardwareSnapshot snapshot = fanningService.getSnapshot();
+        Assert.assertSame(snapshot, published.get());
+        Assert.assertEquals(sct1.getValue(), snapshot.getSensorValue(sct1), 0);
+        Assert.assertEquals(6.5, snapshot.getControlledValue(fg), 0);
+    }
+
+    @Test
+    public void testSnapshotIsNotPublishedWhenNothingChanged() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        fanningService.update();
+        long sequence = fanningService.getSnapshot().getSequence();
+        fanningService.setSensorDeadband(Double.POSITIVE_INFINITY);
+        fanningService.update();
+        Assert.assertEquals(sequence, fanningService.getSnapshot().getSequence());
+    }
+
+    /* Waits for the updater thread to reach the given state. */
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                Assert.fail("Timed out waiting for the updater");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testReloadDuringUpdatesRunsOnUpdaterThread() throws Exception {
+        fanningService.loadFromStorage();
+        Set<Thread> updateThreads = ConcurrentHashMap.newKeySet();
+        Set<Thread> editThreads = ConcurrentHashMap.newKeySet();
+        fanningService.addSnapshotListener((HardwareSnapshot snapshot) -> updateThreads.add(Thread.currentThread()));
+        fanningService.initUpdater(Duration.ofMillis(1));
+
+        /* Reloads like the profile watcher does, while the updater runs. */
+        CountDownLatch lastEdit = new CountDownLatch(1);
+        for (int i = 0; i < 200; i++) {
+            List<FanCurve> profile = Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(i, 50))));
+            fanningService.editFanCurves(() -> {
+                editThreads.add(Thread.currentThread());
+                fanningService.applyProfile(profile, Collections.emptyList());
+            });
+        }
+        fanningService.editFanCurves(lastEdit::countDown);
+        Assert.assertTrue(lastEdit.await(10, TimeUnit.SECONDS));
+        waitUntil(() -> !updateThreads.isEmpty());
+        fanningService.stopUpdater();
+
+        Assert.assertEquals(updateThreads, editThreads);
+        Assert.assertEquals(1, fanningService.getFanCurves().size());
+        Assert.assertEquals(199, fanningService.getFanCurves().get(0).getChangePoints().get(0).key, 0);
+    }
+
+    @Test
+    public void testUnboundCurveIsBoundWhenHardwareAppears() throws IOException, JsonException, InterruptedException {
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        MockFanController hotplugged = new MockFanController(sgp, "fhot", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(hotplugged), "hot-plugged gpu", "hhot");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc");
+
+        AtomicReference<HardwareItem> root = new AtomicReference<>(new MockHardwareItem(Arrays.asList(hc), Arrays.asList(), Arrays.asList(), "computer", "c"));
+        AbstractHardwareManager hotplugManager = new AbstractHardwareManager() {
+            @Override
+            public void updateHardwareTree() {
+            }
+
+            @Override
+            public HardwareItem getHardwareRoot() {
+                return root.get();
+            }
+        };
+
+        fanningService = new FanningService(hotplugManager, new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+
+            @Override
+            public List<UnboundFanCurve> getUnboundFanCurves() {
+                return Arrays.asList(new UnboundFanCurve("sct1", "fhot", Arrays.asList(new Mapping(0, 70))));
+            }
+        });
+        /* The test thread runs the updates, so edits are made on it too. */
+        fanningService.setFanCurveExecutor(Runnable::run);
+        fanningService.loadFromStorage();
+        Assert.assertEquals(1, fanningService.getUnboundCurves().size());
+
+        fanningService.update();
+        Assert.assertTrue(fanningService.getFanCurves().isEmpty());
+
+        root.set(new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c"));
+        hotplugManager.invalidateHardwareIndex();
+        fanningService.update();
+        Assert.assertEquals(1, fanningService.getFanCurves().size());
+        Assert.assertSame(hotplugged, fanningService.getFanCurves().get(0).getFanController());
+        Assert.assertTrue(fanningService.getUnboundCurves().isEmpty());
+
+        /* The next update controls the new fan. */
+        fanningService.update();
+        Assert.assertEquals(70, hotplugged.getControlledValue(), 0);
+    }
+
+    @Test
+    public void testUnboundCurvesAreNotBoundOnEveryUpdate() throws IOException, JsonException, InterruptedException {
+        fanningService = new FanningService(hwManager, new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+
+            @Override
+            public List<UnboundFanCurve> getUnboundFanCurves() {
+                return Arrays.asList(new UnboundFanCurve("sct1", "fhot", Arrays.asList(new Mapping(0, 70))));
+            }
+        });
+        AtomicInteger edits = new AtomicInteger();
+        fanningService.setFanCurveExecutor((Runnable edit) -> {
+            edits.incrementAndGet();
+            edit.run();
+        });
+        fanningService.loadFromStorage();
+
+        /* The hardware does not change, so there is nothing new to bind. */
+        fanningService.update();
+        fanningService.update();
+        Assert.assertEquals(0, edits.get());
+
+        hwManager.invalidateHardwareIndex();
+        Assert.assertEquals(1, edits.get());
+        Assert.assertEquals(1, fanningService.getUnboundCurves().size());
+    }
+
+    @Test
+    public void testApplyProfileChangesOnlyDifferingCurves() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        FanCurve live = fanningService.getFanCurves().get(0);
+
+        /* Same content, nothing changes. */
+        fanningService.applyProfile(Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(5.0, 6.5)))), Arrays.asList());
+        Assert.assertSame(live, fanningService.getFanCurves().get(0));
+        Assert.assertEquals(1, live.getChangePoints().size());
+
+        /* Different points with the same sensor are edited in place. */
+        fanningService.applyProfile(Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(1, 2), new Mapping(3, 4)))), Arrays.asList());
+        Assert.assertSame(live, fanningService.getFanCurves().get(0));
+        Assert.assertEquals(2, live.getChangePoints().size());
+
+        /* Applied changes are already in the storage. */
+        fanningService.storeToStorage();
+        Assert.assertTrue(storedChanges.isEmpty());
+
+        fanningService.applyProfile(Arrays.asList(), Arrays.asList());
+        Assert.assertTrue(fanningService.getFanCurves().isEmpty());
+        fanningService.storeToStorage();
+        Assert.assertTrue(storedRemovals.isEmpty());
+    }
+
+    @Test
+    public void testApplyProfileKeepsLocalEdits() throws IOException, JsonException {
+        fanningService.loadFromStorage();
+        FanCurve live = fanningService.getFanCurves().get(0);
+        live.getChangePoints().add(new Mapping(50, 100));
+
+        fanningService.applyProfile(Arrays.asList(new FanCurve(sct1, fg, Arrays.asList())), Arrays.asList());
+        Assert.assertSame(live, fanningService.getFanCurves().get(0));
+        Assert.assertEquals(2, live.getChangePoints().size());
+
+        fanningService.storeToStorage();
+        Assert.assertEquals(Arrays.asList(live), storedChanges);
+    }
+
+    @Test
+    public void testApplyProfileIsUsedByUpdater() throws IOException, JsonException {
+        fanningService.update();
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+
+        fanningService.applyProfile(Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(0, 42)))), Arrays.asList());
         fanningService.update();
-        Assert.assertEquals(OptionalDouble.empty(), fg.controlledValueProperty().get());
+        Assert.assertEquals(42, fg.getControlledValue(), 0);
     }
 }
@@ -30,12 +30,28 @@ import com.github.tuupertunut.fanning.mockhardware.MockFanController;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
 import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
 import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -43,6 +59,9 @@ import org.junit.Test;
  */
 public class JsonStorageTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     MockHardwareManager hwManager;
     JsonStorage storage;
 
@@ -91,9 +110,9 @@ public class JsonStorageTest {
         Assert.assertEquals(1, fanCurves.size());
         Assert.assertEquals("sct1", fanCurves.get(0).getSensor().getId());
         Assert.assertEquals("fg", fanCurves.get(0).getFanController().getId());
-        Assert.assertEquals(1, fanCurves.get(0).changePointsProperty().size());
-        Assert.assertEquals(5.0, fanCurves.get(0).changePointsProperty().get(0).key, 0);
-        Assert.assertEquals(6.5, fanCurves.get(0).changePointsProperty().get(0).value, 0);
+        Assert.assertEquals(1, fanCurves.get(0).getChangePoints().size());
+        Assert.assertEquals(5.0, fanCurves.get(0).getChangePoints().get(0).key, 0);
+        Assert.assertEquals(6.5, fanCurves.get(0).getChangePoints().get(0).value, 0);
     }
 
     @Test
@@ -108,4 +127,231 @@ public class JsonStorageTest {
             /* This should happen. */
         }
     }
+
+    @Test
+    public void testFromJsonWithWhitespaceAndUnknownMembers() throws JsonException {
+        String json = "[ {\n \"comment\" : [1, {\"a\": null}, true],\n \"sensor\": \"sct1\", \"fanController\": \"fg\",\n \"changePoints\": [ {\"key\": -2.5e1, \"extra\": \"x\\\"y\", \"value\": 100} ]\n} ]\n";
+        List<FanCurve> fanCurves = storage.fromJson(json);
+
+        Assert.assertEquals(1, fanCurves.size());
+        Assert.assertEquals(1, fanCurves.get(0).getChangePoints().size());
+        Assert.assertEquals(-25.0, fanCurves.get(0).getChangePoints().get(0).key, 0);
+        Assert.assertEquals(100.0, fanCurves.get(0).getChangePoints().get(0).value, 0);
+    }
+
+    @Test
+    public void testJsonRoundTripKeepsExactValues() throws JsonException {
+        Random random = new Random(42);
+        List<Mapping> changePoints = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            changePoints.add(new Mapping(random.nextDouble() * 100, random.nextGaussian() * 1e-5));
+        }
+        changePoints.add(new Mapping(0.1, 1e300));
+        List<FanCurve> fanCurves = Arrays.asList(new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), changePoints));
+
+        List<FanCurve> loaded = storage.fromJson(storage.toJson(fanCurves));
+
+        List<Mapping> loadedChangePoints = loaded.get(0).getChangePoints();
+        Assert.assertEquals(changePoints.size(), loadedChangePoints.size());
+        for (int i = 0; i < changePoints.size(); i++) {
+            Assert.assertEquals(changePoints.get(i).key, loadedChangePoints.get(i).key, 0);
+            Assert.assertEquals(changePoints.get(i).value, loadedChangePoints.get(i).value, 0);
+        }
+    }
+
+    @Test
+    public void testFromJsonWithMalformedJson() {
+        List<String> jsons = Arrays.asList(
+                "[{\"sensor\":\"sct1\",}]",
+                "[{\"sensor\" \"sct1\"}]",
+                "[1 2]",
+                "[{\"sensor\":\"sct1\",\"fanController\":\"fg\",\"changePoints\":[{\"key\":5.,\"value\":6}]}]",
+                "[] []");
+        for (String json : jsons) {
+            try {
+                storage.fromJson(json);
+                Assert.fail(json);
+            } catch (JsonException ex) {
+                /* This should happen. */
+            }
+        }
+    }
+
+    @Test
+    public void testStoreReplacesFile() throws IOException, JsonException {
+        Path filePath = folder.getRoot().toPath().resolve("config/fanCurves.json");
+        storage = new JsonStorage(hwManager, filePath);
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList(new Mapping(5.0, 6.5)));
+        storage.store(Arrays.asList(fanCurve, fanCurve));
+        storage.store(Arrays.asList(fanCurve));
+
+        Assert.assertEquals(1, storage.load().size());
+
+        /* No temporary files are left behind. */
+        try (Stream<Path> files = Files.list(filePath.getParent())) {
+            Assert.assertEquals(Arrays.asList(filePath), files.collect(Collectors.toList()));
+        }
+    }
+
+    private JsonStorage createFileStorage() {
+        return new JsonStorage(hwManager, folder.getRoot().toPath().resolve("fanCurves.json"));
+    }
+
+    @Test
+    public void testStoreKeepsFilePermissions() throws IOException {
+        Path filePath = folder.getRoot().toPath().resolve("fanCurves.json");
+        Files.write(filePath, "[]".getBytes(StandardCharsets.UTF_8));
+        Assume.assumeTrue(Files.getFileStore(filePath).supportsFileAttributeView(PosixFileAttributeView.class));
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+        Files.setPosixFilePermissions(filePath, permissions);
+
+        createFileStorage().store(Arrays.asList());
+        Assert.assertEquals(permissions, Files.getPosixFilePermissions(filePath));
+    }
+
+    @Test
+    public void testStoreChangesAppendsToJournal() throws IOException, JsonException {
+        storage = createFileStorage();
+        Path filePath = folder.getRoot().toPath().resolve("fanCurves.json");
+        Path journalPath = folder.getRoot().toPath().resolve("fanCurves.json.journal");
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList(new Mapping(5.0, 6.5)));
+        storage.store(Arrays.asList(fanCurve));
+        byte[] storedJson = Files.readAllBytes(filePath);
+
+        fanCurve.getChangePoints().add(new Mapping(50, 100));
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+
+        /* The JSON file is not rewritten. */
+        Assert.assertArrayEquals(storedJson, Files.readAllBytes(filePath));
+        Assert.assertTrue(Files.exists(journalPath));
+
+        List<FanCurve> loaded = createFileStorage().load();
+        Assert.assertEquals(1, loaded.size());
+        Assert.assertEquals(2, loaded.get(0).getChangePoints().size());
+
+        storage.storeChanges(Arrays.asList(), Arrays.asList(), Collections.singleton("fg"));
+        Assert.assertTrue(createFileStorage().load().isEmpty());
+
+        /* A full store clears the journal. */
+        storage.store(Arrays.asList(fanCurve));
+        Assert.assertFalse(Files.exists(journalPath));
+        Assert.assertEquals(1, createFileStorage().load().size());
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws IOException, JsonException {
+        storage = createFileStorage();
+        Path journalPath = folder.getRoot().toPath().resolve("fanCurves.json.journal");
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList());
+        storage.store(Arrays.asList(fanCurve));
+
+        for (int i = 0; i < 100; i++) {
+            fanCurve.getChangePoints().add(new Mapping(i, i));
+            storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+
+            /* The header and at most 32 entries. */
+            if (Files.exists(journalPath)) {
+                Assert.assertTrue(Files.readAllLines(journalPath).size() <= 33);
+            }
+        }
+
+        Assert.assertEquals(100, createFileStorage().load().get(0).getChangePoints().size());
+    }
+
+    @Test
+    public void testIncompleteJournalEntryIsIgnored() throws IOException, JsonException {
+        storage = createFileStorage();
+        Path journalPath = folder.getRoot().toPath().resolve("fanCurves.json.journal");
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList());
+        storage.store(Arrays.asList(fanCurve));
+        fanCurve.getChangePoints().add(new Mapping(1, 1));
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+
+        /* Simulating a crash in the middle of an append. */
+        Files.write(journalPath, "{\"remove\":\"f".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        JsonStorage reopened = createFileStorage();
+        Assert.assertEquals(1, reopened.load().get(0).getChangePoints().size());
+
+        /* The next change is not appended after the incomplete entry. */
+        fanCurve.getChangePoints().add(new Mapping(2, 2));
+        reopened.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        Assert.assertEquals(2, createFileStorage().load().get(0).getChangePoints().size());
+    }
+
+    @Test
+    public void testStaleJournalIsIgnored() throws IOException, JsonException {
+        storage = createFileStorage();
+        Path journalPath = folder.getRoot().toPath().resolve("fanCurves.json.journal");
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList());
+        storage.store(Arrays.asList(fanCurve));
+        storage.storeChanges(Arrays.asList(), Arrays.asList(), Collections.singleton("fg"));
+        byte[] journal = Files.readAllBytes(journalPath);
+
+        /* Simulating a crash after a compaction wrote the JSON file but before
+         * it deleted the journal. */
+        fanCurve.getChangePoints().add(new Mapping(1, 1));
+        storage.store(Arrays.asList(fanCurve));
+        Files.write(journalPath, journal);
+
+        Assert.assertEquals(1, createFileStorage().load().size());
+    }
+
+    @Test
+    public void testStoreWithSameContentDeletesJournalFirst() throws IOException, JsonException {
+        storage = createFileStorage();
+        Path journalPath = folder.getRoot().toPath().resolve("fanCurves.json.journal");
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList());
+        storage.store(Arrays.asList(fanCurve));
+        storage.storeChanges(Arrays.asList(), Arrays.asList(), Collections.singleton("fg"));
+
+        /* The curve is added back, so the new JSON file is identical to the
+         * old one and the journal would still match it. */
+        storage.store(Arrays.asList(fanCurve));
+        Assert.assertFalse(Files.exists(journalPath));
+        Assert.assertEquals(1, createFileStorage().load().size());
+    }
+
+    @Test
+    public void testFromJsonKeepsCurvesOfMissingHardware() throws JsonException {
+        String json = "[{\"sensor\":\"sct1\",\"fanController\":\"missing\",\"changePoints\":[{\"key\":5.0,\"value\":6.5}]},"
+                + "{\"sensor\":\"sct1\",\"fanController\":\"fg\",\"changePoints\":[]}]";
+        List<FanCurve> fanCurves = storage.fromJson(json);
+
+        Assert.assertEquals(1, fanCurves.size());
+        Assert.assertEquals("fg", fanCurves.get(0).getFanController().getId());
+
+        List<UnboundFanCurve> unbound = storage.getUnboundFanCurves();
+        Assert.assertEquals(1, unbound.size());
+        Assert.assertEquals("missing", unbound.get(0).getFanControllerId());
+        Assert.assertEquals(6.5, unbound.get(0).getChangePoints().get(0).value, 0);
+
+        /* The unbound curve is not lost when storing. */
+        List<FanCurve> reloaded = storage.fromJson(storage.toJson(fanCurves));
+        Assert.assertEquals(1, reloaded.size());
+        Assert.assertEquals(1, storage.getUnboundFanCurves().size());
+    }
+
+    @Test
+    public void testStoringBoundCurveReplacesUnboundCurve() throws IOException, JsonException {
+        storage = createFileStorage();
+        Files.write(folder.getRoot().toPath().resolve("fanCurves.json"), "[{\"sensor\":\"missing\",\"fanController\":\"fg\",\"changePoints\":[]}]".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertTrue(storage.load().isEmpty());
+        Assert.assertEquals(1, storage.getUnboundFanCurves().size());
+
+        FanCurve fanCurve = new FanCurve(hwManager.findSensorById("sct1").get(), hwManager.findFanControllerById("fg").get(), Arrays.asList());
+        storage.storeChanges(Arrays.asList(fanCurve), Arrays.asList(fanCurve), Collections.emptySet());
+        Assert.assertTrue(storage.getUnboundFanCurves().isEmpty());
+
+        JsonStorage reopened = createFileStorage();
+        Assert.assertEquals("sct1", reopened.load().get(0).getSensor().getId());
+        Assert.assertTrue(reopened.getUnboundFanCurves().isEmpty());
+    }
 }
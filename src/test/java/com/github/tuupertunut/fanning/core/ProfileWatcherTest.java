@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class ProfileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockHardwareManager hwManager;
+    Path filePath;
+    JsonStorage storage;
+    FanningService fanningService;
+    ProfileWatcher profileWatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        MockSensor sct1 = new MockSensor("fake cpu core1 temp", "sct1", "Temperature", "°C");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc");
+
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        MockFanController fg = new MockFanController(sgp, "fg", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(fg), "fake gpu", "hg");
+
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+
+        hwManager = new MockHardwareManager(root);
+
+        filePath = folder.getRoot().toPath().resolve("fanCurves.json");
+        storage = new JsonStorage(hwManager, filePath);
+        storage.store(Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(5.0, 6.5)))));
+
+        fanningService = new FanningService(hwManager, storage);
+        fanningService.loadFromStorage();
+
+        /* The test thread only reads the fan curves, so they are edited
+         * under the service's lock. */
+        fanningService.setFanCurveExecutor((Runnable edit) -> {
+            synchronized (fanningService) {
+                edit.run();
+            }
+        });
+        profileWatcher = new ProfileWatcher(fanningService, new JsonStorage(hwManager, filePath), filePath);
+        profileWatcher.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        profileWatcher.close();
+    }
+
+    private int changePointCount() {
+        synchronized (fanningService) {
+            return fanningService.getFanCurves().isEmpty() ? -1 : fanningService.getFanCurves().get(0).getChangePoints().size();
+        }
+    }
+
+    @Test
+    public void testReloadsChangedFile() throws Exception {
+        Path pushed = folder.getRoot().toPath().resolve("pushed.json");
+        Files.write(pushed, "[{\"sensor\":\"sct1\",\"fanController\":\"fg\",\"changePoints\":[{\"key\":1,\"value\":2},{\"key\":3,\"value\":4}]}]".getBytes(StandardCharsets.UTF_8));
+        Files.move(pushed, filePath, StandardCopyOption.REPLACE_EXISTING);
+
+        waitUntil(() -> changePointCount() == 2);
+    }
+
+    @Test
+    public void testInvalidFileKeepsCurves() throws Exception {
+        Exception[] error = new Exception[1];
+        profileWatcher.setErrorHandler((Exception ex) -> {
+            synchronized (error) {
+                error[0] = ex;
+            }
+        });
+
+        Files.write(filePath, "[{".getBytes(StandardCharsets.UTF_8));
+
+        waitUntil(() -> {
+            synchronized (error) {
+                return error[0] != null;
+            }
+        });
+        Assert.assertEquals(1, changePointCount());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                Assert.fail("Timed out waiting for the profile watcher");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
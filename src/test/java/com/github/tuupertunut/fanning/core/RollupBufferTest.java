@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class RollupBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TimeSeriesRange readAll(RollupBuffer rollups) {
+        TimeSeriesRange range = new TimeSeriesRange(rollups.getResolution(), rollups.getCapacity());
+        rollups.read(Long.MIN_VALUE, Long.MAX_VALUE, range);
+        return range;
+    }
+
+    @Test
+    public void testBucketsHaveMinMaxAndAverage() {
+        RollupBuffer rollups = RollupBuffer.allocate(10, 10);
+        rollups.add(0, 4);
+        rollups.add(5, 2);
+        rollups.add(9, 6);
+        rollups.add(12, 1);
+        rollups.add(25, 0);
+
+        TimeSeriesRange range = readAll(rollups);
+        Assert.assertEquals(2, range.size());
+        Assert.assertEquals(0, range.getTimestamp(0));
+        Assert.assertEquals(2, range.getMin(0), 0);
+        Assert.assertEquals(6, range.getMax(0), 0);
+        Assert.assertEquals(4, range.getAverage(0), 0);
+        Assert.assertEquals(3, range.getCount(0));
+        Assert.assertEquals(10, range.getTimestamp(1));
+        Assert.assertEquals(1, range.getAverage(1), 0);
+    }
+
+    @Test
+    public void testCurrentBucketIsNotReadable() {
+        RollupBuffer rollups = RollupBuffer.allocate(10, 10);
+        rollups.add(0, 4);
+        Assert.assertEquals(0, rollups.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, rollups.getOldestTimestamp());
+    }
+
+    @Test
+    public void testNaNSamplesAndEmptyBucketsAreSkipped() {
+        RollupBuffer rollups = RollupBuffer.allocate(10, 10);
+        rollups.add(0, Double.NaN);
+        rollups.add(10, 3);
+        rollups.add(11, Double.NaN);
+        rollups.add(20, 1);
+
+        TimeSeriesRange range = readAll(rollups);
+        Assert.assertEquals(1, range.size());
+        Assert.assertEquals(10, range.getTimestamp(0));
+        Assert.assertEquals(1, range.getCount(0));
+    }
+
+    @Test
+    public void testOldestBucketsAreOverwritten() {
+        RollupBuffer rollups = RollupBuffer.allocate(10, 3);
+        for (int i = 0; i <= 10; i++) {
+            rollups.add(i * 10, i);
+        }
+
+        TimeSeriesRange range = readAll(rollups);
+        Assert.assertEquals(3, range.size());
+        Assert.assertEquals(70, range.getTimestamp(0));
+        Assert.assertEquals(70, rollups.getOldestTimestamp());
+        Assert.assertEquals(9, range.getMax(2), 0);
+        Assert.assertEquals(2, rollups.count(75, 100));
+    }
+
+    @Test
+    public void testMappedBufferSurvivesReopening() throws IOException {
+        Path filePath = folder.getRoot().toPath().resolve("rollups");
+        RollupBuffer rollups = RollupBuffer.open(filePath, 10, 10);
+        rollups.add(0, 4);
+        rollups.add(10, 2);
+        rollups.add(15, 6);
+
+        /* The bucket that was being accumulated is continued. */
+        RollupBuffer reopened = RollupBuffer.open(filePath, 10, 10);
+        Assert.assertEquals(15, reopened.getLatestTimestamp());
+        reopened.add(19, 1);
+        reopened.add(20, 0);
+
+        TimeSeriesRange range = readAll(reopened);
+        Assert.assertEquals(2, range.size());
+        Assert.assertEquals(4, range.getAverage(0), 0);
+        Assert.assertEquals(1, range.getMin(1), 0);
+        Assert.assertEquals(6, range.getMax(1), 0);
+        Assert.assertEquals(3, range.getCount(1));
+    }
+
+    @Test
+    public void testMappedBufferOfOtherResolutionIsStartedOver() throws IOException {
+        Path filePath = folder.getRoot().toPath().resolve("rollups");
+        RollupBuffer rollups = RollupBuffer.open(filePath, 10, 10);
+        rollups.add(0, 4);
+        rollups.add(10, 2);
+
+        RollupBuffer reopened = RollupBuffer.open(filePath, 20, 10);
+        Assert.assertEquals(0, reopened.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(Long.MIN_VALUE, reopened.getLatestTimestamp());
+    }
+
+    @Test
+    public void testRangeSummary() {
+        RollupBuffer rollups = RollupBuffer.allocate(10, 10);
+        rollups.add(0, 1);
+        rollups.add(1, 3);
+        rollups.add(10, 8);
+        rollups.add(20, 0);
+
+        TimeSeriesRange range = readAll(rollups);
+        Assert.assertEquals(1, range.getMin(), 0);
+        Assert.assertEquals(8, range.getMax(), 0);
+        Assert.assertEquals(4, range.getAverage(), 0);
+    }
+}
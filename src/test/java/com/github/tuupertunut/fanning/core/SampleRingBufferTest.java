@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class SampleRingBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    long[] timestamps = new long[10];
+    double[] values = new double[10];
+
+    @Test
+    public void testReadRange() {
+        SampleRingBuffer buffer = SampleRingBuffer.allocate(10);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(1000 + i, i * 10);
+        }
+
+        Assert.assertEquals(2, buffer.read(1001, 1003, timestamps, values));
+        Assert.assertEquals(1001, timestamps[0]);
+        Assert.assertEquals(10, values[0], 0);
+        Assert.assertEquals(1002, timestamps[1]);
+        Assert.assertEquals(20, values[1], 0);
+
+        Assert.assertEquals(5, buffer.read(Long.MIN_VALUE, Long.MAX_VALUE, timestamps, values));
+        Assert.assertEquals(0, buffer.read(2000, 3000, timestamps, values));
+    }
+
+    @Test
+    public void testOldestSamplesAreOverwritten() {
+        SampleRingBuffer buffer = SampleRingBuffer.allocate(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i, i);
+        }
+
+        Assert.assertEquals(4, buffer.size());
+        Assert.assertEquals(4, buffer.read(Long.MIN_VALUE, Long.MAX_VALUE, timestamps, values));
+        Assert.assertEquals(6, timestamps[0]);
+        Assert.assertEquals(9, values[3], 0);
+    }
+
+    @Test
+    public void testReadIsLimitedToArrayLength() {
+        SampleRingBuffer buffer = SampleRingBuffer.allocate(10);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i, i);
+        }
+
+        long[] fewTimestamps = new long[3];
+        double[] fewValues = new double[3];
+        Assert.assertEquals(3, buffer.read(2, 10, fewTimestamps, fewValues));
+        Assert.assertEquals(2, fewTimestamps[0]);
+        Assert.assertEquals(4, fewValues[2], 0);
+    }
+
+    @Test
+    public void testEarlierTimestampIsClamped() {
+        SampleRingBuffer buffer = SampleRingBuffer.allocate(10);
+        buffer.add(100, 1);
+        buffer.add(50, 2);
+
+        Assert.assertEquals(2, buffer.read(100, 101, timestamps, values));
+        Assert.assertEquals(100, timestamps[1]);
+    }
+
+    @Test
+    public void testMappedBufferSurvivesReopening() throws IOException {
+        Path filePath = folder.getRoot().toPath().resolve("sensor.hist");
+        SampleRingBuffer buffer = SampleRingBuffer.open(filePath, 4);
+        for (int i = 0; i < 6; i++) {
+            buffer.add(i, i);
+        }
+        buffer.force();
+
+        SampleRingBuffer reopened = SampleRingBuffer.open(filePath, 4);
+        Assert.assertEquals(4, reopened.size());
+        reopened.add(3, 6);
+        Assert.assertEquals(4, reopened.read(Long.MIN_VALUE, Long.MAX_VALUE, timestamps, values));
+        Assert.assertEquals(3, timestamps[0]);
+        Assert.assertEquals(5, timestamps[3]);
+        Assert.assertEquals(6, values[3], 0);
+    }
+
+    @Test
+    public void testFileOfOtherCapacityIsStartedOver() throws IOException {
+        Path filePath = folder.getRoot().toPath().resolve("sensor.hist");
+        SampleRingBuffer buffer = SampleRingBuffer.open(filePath, 4);
+        buffer.add(1, 1);
+
+        SampleRingBuffer reopened = SampleRingBuffer.open(filePath, 8);
+        Assert.assertEquals(0, reopened.size());
+        Assert.assertEquals(8, reopened.getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacityIsRejected() {
+        SampleRingBuffer.allocate(0);
+    }
+}
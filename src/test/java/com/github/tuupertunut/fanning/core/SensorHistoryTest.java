@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class SensorHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockSensor sct1;
+    MockSensor sct2;
+    FanningService fanningService;
+
+    long[] timestamps = new long[10];
+    double[] values = new double[10];
+
+    @Before
+    public void setUp() {
+        sct1 = new MockSensor("fake cpu core1 temp", "/hc/sct1", "Temperature", "°C");
+        sct2 = new MockSensor("fake cpu core2 temp", "/hc/sct2", "Temperature", "°C");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1, sct2), Arrays.asList(), "fake cpu", "hc");
+        MockHardwareManager hwManager = new MockHardwareManager(hc);
+
+        fanningService = new FanningService(hwManager, new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+        });
+    }
+
+    private HardwareSnapshot snapshotOf(double sct1Value, double sct2Value) {
+        sct1.setValue(sct1Value);
+        sct2.setValue(sct2Value);
+        return HardwareSnapshot.of(fanningService.getHardwareManager().getHardwareIndex(), 0);
+    }
+
+    @Test
+    public void testRecordsEverySensor() {
+        SensorHistory history = new SensorHistory(fanningService, 10);
+        history.record(snapshotOf(40, 50), 1000);
+        history.record(snapshotOf(41, 51), 2000);
+
+        Assert.assertEquals(2, history.getHistory(sct1).get().getSamples().read(0, 3000, timestamps, values));
+        Assert.assertEquals(41, values[1], 0);
+        Assert.assertEquals(2, history.getHistory(sct2).get().getSamples().read(0, 3000, timestamps, values));
+        Assert.assertEquals(50, values[0], 0);
+        Assert.assertEquals(2000, timestamps[1]);
+    }
+
+    @Test
+    public void testNothingRecordedBeforeFirstSample() {
+        SensorHistory history = new SensorHistory(fanningService, 10);
+        Assert.assertFalse(history.getHistory(sct1).isPresent());
+    }
+
+    @Test
+    public void testHistorySurvivesRestart() throws IOException {
+        Path dir = folder.getRoot().toPath().resolve("history");
+        SensorHistory history = new SensorHistory(fanningService, 10, dir);
+        history.record(snapshotOf(40, 50), 1000);
+        history.close();
+
+        SensorHistory restarted = new SensorHistory(fanningService, 10, dir);
+        restarted.record(snapshotOf(42, 52), 2000);
+        Assert.assertEquals(2, restarted.getHistory(sct1).get().getSamples().read(0, 3000, timestamps, values));
+        Assert.assertEquals(40, values[0], 0);
+        Assert.assertEquals(42, values[1], 0);
+    }
+
+    @Test
+    public void testRollupsSurviveRestart() throws IOException {
+        Path dir = folder.getRoot().toPath().resolve("history");
+        SensorHistory history = new SensorHistory(fanningService, 10, dir);
+        for (int i = 0; i < 30; i++) {
+            history.record(snapshotOf(i, 0), i * 1000L);
+        }
+        history.close();
+
+        /* The samples still in the sample buffer are not rolled up twice. */
+        SensorHistory restarted = new SensorHistory(fanningService, 10, dir);
+        restarted.record(snapshotOf(30, 0), 30_000);
+        TimeSeriesRange range = restarted.getHistory(sct1).get().query(0, 40_000, 5);
+        Assert.assertEquals(10_000, range.getResolution());
+        Assert.assertEquals(3, range.size());
+        Assert.assertEquals(0, range.getMin(0), 0);
+        Assert.assertEquals(10, range.getCount(2));
+        Assert.assertEquals(24.5, range.getAverage(2), 0);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class SensorTimeSeriesTest {
+
+    /* One sample per second for the given number of seconds. */
+    private static SensorTimeSeries createSeries(int sampleCapacity, int seconds) {
+        SensorTimeSeries series = new SensorTimeSeries(SampleRingBuffer.allocate(sampleCapacity));
+        for (int i = 0; i < seconds; i++) {
+            series.add(i * 1000L, i % 60);
+        }
+        return series;
+    }
+
+    @Test
+    public void testShortRangeUsesSamples() {
+        SensorTimeSeries series = createSeries(120, 600);
+
+        TimeSeriesRange range = series.query(550_000, 600_000, 100);
+        Assert.assertEquals(0, range.getResolution());
+        Assert.assertEquals(50, range.size());
+        Assert.assertEquals(550_000, range.getTimestamp(0));
+        Assert.assertEquals(10, range.getMin(0), 0);
+    }
+
+    @Test
+    public void testRangeOlderThanSamplesUsesRollups() {
+        SensorTimeSeries series = createSeries(120, 600);
+
+        TimeSeriesRange range = series.query(0, 600_000, 1000);
+        Assert.assertEquals(10_000, range.getResolution());
+        Assert.assertEquals(59, range.size());
+        Assert.assertEquals(0, range.getMin(), 0);
+        Assert.assertEquals(59, range.getMax(), 0);
+    }
+
+    @Test
+    public void testTooManyPointsUsesCoarserRollups() {
+        SensorTimeSeries series = createSeries(1000, 600);
+
+        TimeSeriesRange range = series.query(0, 600_000, 20);
+        Assert.assertEquals(60_000, range.getResolution());
+        Assert.assertEquals(9, range.size());
+        Assert.assertEquals(29.5, range.getAverage(0), 1e-4);
+    }
+
+    @Test
+    public void testExistingSamplesAreRolledUp() {
+        SampleRingBuffer samples = SampleRingBuffer.allocate(100);
+        for (int i = 0; i < 30; i++) {
+            samples.add(i * 1000L, i);
+        }
+
+        SensorTimeSeries series = new SensorTimeSeries(samples);
+        Assert.assertEquals(2, series.getTenSecondRollups().count(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+}
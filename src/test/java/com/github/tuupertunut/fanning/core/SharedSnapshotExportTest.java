@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class SharedSnapshotExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockSensor sct1;
+    MockSensor sct2;
+    MockSensor sgp;
+    MockFanController fg;
+    HardwareIndex index;
+    FanningService fanningService;
+    Path filePath;
+
+    @Before
+    public void setUp() throws IOException {
+        sct1 = new MockSensor("fake cpu core1 temp", "/hc/sct1", "Temperature", "°C");
+        sct2 = new MockSensor("fake cpu core2 temp", "/hc/sct2", "Temperature", "°C");
+        sgp = new MockSensor("fake gpu fan percent", "/hg/sgp", "Control", "%");
+        fg = new MockFanController(sgp, "/hg/fg", 0, 100);
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1, sct2), Arrays.asList(), "fake cpu", "hc");
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(fg), "fake gpu", "hg");
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+        MockHardwareManager hwManager = new MockHardwareManager(root);
+        index = hwManager.getHardwareIndex();
+
+        fanningService = new FanningService(hwManager, new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+        });
+        filePath = folder.getRoot().toPath().resolve("snapshot");
+    }
+
+    private HardwareSnapshot snapshotOf(double sct1Value, double sct2Value, long sequence) {
+        sct1.setValue(sct1Value);
+        sct2.setValue(sct2Value);
+        return HardwareSnapshot.of(index, sequence);
+    }
+
+    @Test
+    public void testReaderSeesPublishedSnapshot() throws IOException {
+        SharedSnapshotExport export = new SharedSnapshotExport(fanningService, filePath);
+        fg.setControlledValue(60);
+        export.write(snapshotOf(40, 50, 7), 1000);
+
+        SharedSnapshotReader.Snapshot snapshot = SharedSnapshotReader.open(filePath).read();
+
+        Assert.assertEquals(7, snapshot.getSequence());
+        Assert.assertEquals(1000, snapshot.getTimestamp());
+        Assert.assertEquals(Arrays.asList("/hc/sct1", "/hc/sct2", "/hg/sgp"), snapshot.getSensorIds());
+        Assert.assertEquals(40, snapshot.getSensorValue(0), 0);
+        Assert.assertEquals(50, snapshot.getSensorValue(1), 0);
+        Assert.assertEquals(Arrays.asList("/hg/fg"), snapshot.getFanControllerIds());
+        Assert.assertEquals(60, snapshot.getControlledValue(0), 0);
+        export.close();
+    }
+
+    @Test
+    public void testStartPublishesLatestSnapshot() throws IOException {
+        SharedSnapshotExport export = new SharedSnapshotExport(fanningService, filePath);
+        export.start();
+
+        SharedSnapshotReader.Snapshot snapshot = SharedSnapshotReader.open(filePath).read();
+
+        Assert.assertEquals(fanningService.getSnapshot().getSequence(), snapshot.getSequence());
+        Assert.assertEquals(3, snapshot.getSensorIds().size());
+        export.close();
+    }
+
+    @Test
+    public void testReaderFollowsHardwareChanges() throws IOException {
+        SharedSnapshotExport export = new SharedSnapshotExport(fanningService, filePath);
+        HardwareIndex smallIndex = new HardwareIndex(new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1), Arrays.asList(), "fake cpu", "hc"));
+        export.write(HardwareSnapshot.of(smallIndex, 1), 1000);
+        SharedSnapshotReader reader = SharedSnapshotReader.open(filePath);
+        Assert.assertEquals(Arrays.asList("/hc/sct1"), reader.read().getSensorIds());
+
+        /* The file has to grow for the bigger hardware tree. */
+        export.write(snapshotOf(40, 50, 2), 2000);
+        SharedSnapshotReader.Snapshot snapshot = reader.read();
+
+        Assert.assertEquals(Arrays.asList("/hc/sct1", "/hc/sct2", "/hg/sgp"), snapshot.getSensorIds());
+        Assert.assertEquals(50, snapshot.getSensorValue(1), 0);
+        export.close();
+    }
+
+    @Test
+    public void testNewExportReplacesIdsOfPreviousRun() throws IOException {
+        SharedSnapshotExport export = new SharedSnapshotExport(fanningService, filePath);
+        export.write(snapshotOf(40, 50, 1), 1000);
+        export.close();
+        SharedSnapshotReader reader = SharedSnapshotReader.open(filePath);
+        Assert.assertEquals(3, reader.read().getSensorIds().size());
+
+        SharedSnapshotExport newExport = new SharedSnapshotExport(fanningService, filePath);
+        HardwareIndex smallIndex = new HardwareIndex(new MockHardwareItem(Arrays.asList(), Arrays.asList(sct2), Arrays.asList(), "fake cpu", "hc"));
+        newExport.write(HardwareSnapshot.of(smallIndex, 1), 2000);
+
+        Assert.assertEquals(Arrays.asList("/hc/sct2"), reader.read().getSensorIds());
+        newExport.close();
+    }
+
+    @Test
+    public void testConcurrentReadsAreConsistent() throws IOException, InterruptedException {
+        SharedSnapshotExport export = new SharedSnapshotExport(fanningService, filePath);
+        export.write(snapshotOf(0, 0, 0), 0);
+        SharedSnapshotReader reader = SharedSnapshotReader.open(filePath);
+
+        /* Every snapshot has the same value in both sensors, so a torn read
+         * would show different values. */
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            try {
+                for (long i = 1; running.get(); i++) {
+                    export.write(snapshotOf(i, i, i), i);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        writer.start();
+
+        long lastSequence = 0;
+        try {
+            for (int i = 0; i < 20000; i++) {
+                SharedSnapshotReader.Snapshot snapshot = reader.read();
+                Assert.assertEquals(snapshot.getSensorValue(0), snapshot.getSensorValue(1), 0);
+                Assert.assertEquals(snapshot.getSequence(), snapshot.getSensorValue(0), 0);
+                Assert.assertTrue(snapshot.getSequence() >= lastSequence);
+                lastSequence = snapshot.getSequence();
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        export.close();
+    }
+}
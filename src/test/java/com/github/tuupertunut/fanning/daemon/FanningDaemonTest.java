@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.daemon;
+
+import com.github.tuupertunut.fanning.core.SharedSnapshotReader;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class FanningDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockHardwareManager hwManager;
+    MockFanController fg;
+    Path profilePath;
+
+    @Before
+    public void setUp() throws Exception {
+        MockSensor sct1 = new MockSensor("fake cpu core1 temp", "sct1", "Temperature", "°C");
+        MockSensor sct2 = new MockSensor("fake cpu core2 temp", "sct2", "Temperature", "°C");
+        MockHardwareItem hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1, sct2), Arrays.asList(), "fake cpu", "hc");
+
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        fg = new MockFanController(sgp, "fg", 0, 100);
+        MockHardwareItem hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgp), Arrays.asList(fg), "fake gpu", "hg");
+
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+
+        hwManager = new MockHardwareManager(root);
+
+        profilePath = folder.getRoot().toPath().resolve("profile/fanCurves.json");
+        Files.createDirectories(profilePath.getParent());
+        Files.write(profilePath, "[{\"sensor\":\"sct1\",\"fanController\":\"fg\",\"changePoints\":[{\"key\":0,\"value\":55}]}]".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testControlsFansUntilStopped() throws Exception {
+        FanningDaemon daemon = new FanningDaemon(hwManager, profilePath);
+        Assert.assertEquals(1, daemon.getFanningService().getFanCurves().size());
+
+        daemon.start();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (Double.isNaN(fg.getControlledValue())) {
+            if (System.nanoTime() > deadline) {
+                Assert.fail("Timed out waiting for the updater");
+            }
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(55, fg.getControlledValue(), 0);
+
+        daemon.stop();
+        daemon.awaitStop();
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+    }
+
+    @Test
+    public void testExportsSensorsWithoutFanCurve() throws Exception {
+        Path exportPath = folder.getRoot().toPath().resolve("snapshot");
+        FanningDaemon daemon = new FanningDaemon(hwManager, profilePath);
+        daemon.setPollingIntervals(Duration.ofMillis(10), Duration.ofMillis(100));
+        daemon.setSnapshotExportPath(exportPath);
+        daemon.start();
+
+        /* The mock hardware reports values from 30 to 50, so the initial zero
+         * of sct2 is replaced once it is polled. */
+        SharedSnapshotReader reader = SharedSnapshotReader.open(exportPath);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (true) {
+            SharedSnapshotReader.Snapshot snapshot = reader.read();
+            int position = snapshot.getSensorIds().indexOf("sct2");
+            if (position >= 0 && snapshot.getSensorValue(position) >= 30) {
+                break;
+            }
+            if (System.nanoTime() > deadline) {
+                Assert.fail("Timed out waiting for the export");
+            }
+            Thread.sleep(10);
+        }
+
+        daemon.stop();
+    }
+
+    @Test
+    public void testStartsWithoutProfile() throws Exception {
+        FanningDaemon daemon = new FanningDaemon(hwManager, folder.getRoot().toPath().resolve("new/fanCurves.json"));
+        Assert.assertTrue(daemon.getFanningService().getFanCurves().isEmpty());
+
+        daemon.start();
+        daemon.stop();
+    }
+}
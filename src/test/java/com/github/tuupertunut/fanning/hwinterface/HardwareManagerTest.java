@@ -84,4 +84,42 @@ public class HardwareManagerTest {
     public void testFindFanControllerById() {
         Assert.assertEquals(fg, hwManager.findFanControllerById("fg").get());
     }
+
+    @Test
+    public void testFindSensorByIdWithUnknownId() {
+        Assert.assertFalse(hwManager.findSensorById("unknown").isPresent());
+    }
+
+    @Test
+    public void testFindFanControllerByIdWithUnknownId() {
+        Assert.assertFalse(hwManager.findFanControllerById("unknown").isPresent());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAllSensorsIsUnmodifiable() {
+        hwManager.getAllSensors().clear();
+    }
+
+    @Test
+    public void testIndexOfSensor() {
+        HardwareIndex index = hwManager.getHardwareIndex();
+        Assert.assertEquals(sgf, index.getAllSensors().get(index.indexOfSensor(sgf)));
+        Assert.assertEquals(-1, index.indexOfSensor(new MockSensor("other", "o", "Temperature", "°C")));
+    }
+
+    @Test
+    public void testHardwareIndexIsCached() {
+        HardwareIndex index = hwManager.getHardwareIndex();
+        Assert.assertSame(index, hwManager.getHardwareIndex());
+
+        hwManager.invalidateHardwareIndex();
+        Assert.assertNotSame(index, hwManager.getHardwareIndex());
+        Assert.assertSame(hwManager.getHardwareIndex(), hwManager.getHardwareIndex());
+    }
+
+    @Test
+    public void testIndexOfFanController() {
+        HardwareIndex index = hwManager.getHardwareIndex();
+        Assert.assertEquals(1, index.indexOfFanController(fg));
+    }
 }
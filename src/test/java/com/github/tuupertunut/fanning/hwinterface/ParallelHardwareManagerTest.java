@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwinterface;
+
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class ParallelHardwareManagerTest {
+
+    MockSensor sct;
+    MockSensor sgt;
+    MockHardwareItem hc;
+    MockHardwareItem hg;
+    MockHardwareItem root;
+    CountDownLatch gpuGate;
+    ParallelHardwareManager parallelManager;
+
+    @Before
+    public void setUp() {
+        sct = new MockSensor("fake cpu temp", "sct", "Temperature", "°C");
+        hc = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct), Arrays.asList(), "fake cpu", "hc");
+        sgt = new MockSensor("fake gpu temp", "sgt", "Temperature", "°C");
+        hg = new MockHardwareItem(Arrays.asList(), Arrays.asList(sgt), Arrays.asList(), "fake gpu", "hg");
+        root = new MockHardwareItem(Arrays.asList(hc, hg), Arrays.asList(), Arrays.asList(), "computer", "c");
+        gpuGate = new CountDownLatch(0);
+
+        /* Every update adds one to the values. Updating the gpu waits for the
+         * gate. */
+        HardwareManager slowManager = new AbstractHardwareManager() {
+
+            @Override
+            public void updateHardwareTree() {
+                updateSensors(getAllSensors(), 0);
+            }
+
+            @Override
+            public Set<Sensor> updateSensors(Collection<Sensor> sensors, double deadband) {
+                if (sensors.contains(sgt)) {
+                    try {
+                        gpuGate.await();
+                    } catch (InterruptedException ex) {
+                        return Collections.emptySet();
+                    }
+                }
+                for (Sensor sensor : sensors) {
+                    MockSensor mockSensor = (MockSensor) sensor;
+                    mockSensor.setValue(mockSensor.getValue() + 1);
+                }
+                return new HashSet<>(sensors);
+            }
+
+            @Override
+            public HardwareItem getHardwareRoot() {
+                return root;
+            }
+        };
+        parallelManager = new ParallelHardwareManager(slowManager, 2, Duration.ofMillis(100));
+    }
+
+    @After
+    public void tearDown() {
+        gpuGate.countDown();
+        parallelManager.close();
+    }
+
+    @Test
+    public void testUpdatesAllHardware() {
+        sct.setValue(0);
+        sgt.setValue(0);
+
+        Set<Sensor> changed = parallelManager.updateSensors(Arrays.asList(sct, sgt), 0);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(sct, sgt)), changed);
+        Assert.assertEquals(1, sct.getValue(), 0);
+        Assert.assertEquals(1, sgt.getValue(), 0);
+        Assert.assertTrue(parallelManager.getStaleHardware().isEmpty());
+    }
+
+    @Test
+    public void testSlowHardwareIsStale() {
+        sct.setValue(0);
+        sgt.setValue(0);
+        gpuGate = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        Set<Sensor> changed = parallelManager.updateSensors(Arrays.asList(sct, sgt), 0);
+        long elapsed = System.nanoTime() - start;
+
+        Assert.assertEquals(Collections.singleton(sct), changed);
+        Assert.assertEquals(1, sct.getValue(), 0);
+        Assert.assertEquals(0, sgt.getValue(), 0);
+        Assert.assertEquals(Collections.singleton(hg), parallelManager.getStaleHardware());
+        Assert.assertTrue(elapsed < Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    public void testStuckHardwareIsNotUpdatedAgain() {
+        sct.setValue(0);
+        sgt.setValue(0);
+        gpuGate = new CountDownLatch(1);
+
+        parallelManager.updateSensors(Arrays.asList(sct, sgt), 0);
+        Set<Sensor> changed = parallelManager.updateSensors(Arrays.asList(sct, sgt), 0);
+
+        Assert.assertEquals(Collections.singleton(sct), changed);
+        Assert.assertEquals(2, sct.getValue(), 0);
+        Assert.assertEquals(Collections.singleton(hg), parallelManager.getStaleHardware());
+    }
+
+    @Test
+    public void testLateChangesAreReportedByNextUpdate() throws InterruptedException {
+        sct.setValue(0);
+        sgt.setValue(0);
+        gpuGate = new CountDownLatch(1);
+
+        parallelManager.updateSensors(Arrays.asList(sct, sgt), 0);
+        gpuGate.countDown();
+        while (sgt.getValue() == 0) {
+            Thread.sleep(1);
+        }
+        /* Giving the late update time to return. */
+        Thread.sleep(50);
+        Set<Sensor> changed = parallelManager.updateSensors(Arrays.asList(sct), 0);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(sct, sgt)), changed);
+        Assert.assertTrue(parallelManager.getStaleHardware().isEmpty());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.hwmon;
+
+import com.github.tuupertunut.fanning.hwinterface.FanController;
+import com.github.tuupertunut.fanning.hwinterface.HardwareIndex;
+import com.github.tuupertunut.fanning.hwinterface.HardwareItem;
+import com.github.tuupertunut.fanning.hwinterface.Sensor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class HwmonHardwareManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path hwmonDir;
+    HwmonHardwareManager hwManager;
+
+    @Before
+    public void setUp() throws IOException {
+        hwmonDir = folder.getRoot().toPath();
+
+        Path cpu = Files.createDirectories(hwmonDir.resolve("hwmon0"));
+        writeAttribute(cpu, "name", "coretemp");
+        writeAttribute(cpu, "temp1_input", "45000");
+        writeAttribute(cpu, "temp1_label", "Package id 0");
+        writeAttribute(cpu, "temp2_input", "-5500");
+
+        Path board = Files.createDirectories(hwmonDir.resolve("hwmon10"));
+        writeAttribute(board, "name", "nct6775");
+        writeAttribute(board, "fan1_input", "1200");
+        writeAttribute(board, "pwm1", "255");
+        writeAttribute(board, "pwm1_enable", "2");
+
+        Path empty = Files.createDirectories(hwmonDir.resolve("hwmon2"));
+        writeAttribute(empty, "name", "acpitz");
+
+        hwManager = new HwmonHardwareManager(hwmonDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        hwManager.close();
+    }
+
+    private static void writeAttribute(Path dir, String name, String value) throws IOException {
+        Files.write(dir.resolve(name), (value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readAttribute(Path dir, String name) throws IOException {
+        return new String(Files.readAllBytes(dir.resolve(name)), StandardCharsets.UTF_8);
+    }
+
+    private Sensor sensor(String id) {
+        return hwManager.findSensorById(id).get();
+    }
+
+    @Test
+    public void testDevicesAreEnumerated() {
+        HardwareItem root = hwManager.getHardwareRoot();
+        Assert.assertEquals(2, root.getSubHardware().size());
+        Assert.assertEquals("coretemp", root.getSubHardware().get(0).getName());
+        Assert.assertEquals("nct6775", root.getSubHardware().get(1).getName());
+
+        Assert.assertEquals(4, hwManager.getAllSensors().size());
+        Assert.assertEquals("Package id 0", sensor("/hwmon/coretemp/hwmon0/temp1").getName());
+        Assert.assertEquals("temp2", sensor("/hwmon/coretemp/hwmon0/temp2").getName());
+        Assert.assertEquals("RPM", sensor("/hwmon/nct6775/hwmon10/fan1").getMeasurementUnit());
+        Assert.assertEquals(1, hwManager.getAllFanControllers().size());
+    }
+
+    @Test
+    public void testValuesAreScaled() {
+        Assert.assertEquals(45, sensor("/hwmon/coretemp/hwmon0/temp1").getValue(), 1e-9);
+        Assert.assertEquals(-5.5, sensor("/hwmon/coretemp/hwmon0/temp2").getValue(), 1e-9);
+        Assert.assertEquals(1200, sensor("/hwmon/nct6775/hwmon10/fan1").getValue(), 0);
+        Assert.assertEquals(100, sensor("/hwmon/nct6775/hwmon10/pwm1").getValue(), 1e-9);
+    }
+
+    @Test
+    public void testUpdateRereadsOnlyGivenSensors() throws IOException {
+        writeAttribute(hwmonDir.resolve("hwmon0"), "temp1_input", "50000");
+        writeAttribute(hwmonDir.resolve("hwmon10"), "fan1_input", "900");
+
+        Sensor temp1 = sensor("/hwmon/coretemp/hwmon0/temp1");
+        Set<Sensor> changed = hwManager.updateSensors(Arrays.asList(temp1), 0);
+        Assert.assertEquals(Collections.singleton(temp1), changed);
+        Assert.assertEquals(50, temp1.getValue(), 1e-9);
+        Assert.assertEquals(1200, sensor("/hwmon/nct6775/hwmon10/fan1").getValue(), 0);
+    }
+
+    @Test
+    public void testChangeWithinDeadbandIsIgnored() throws IOException {
+        writeAttribute(hwmonDir.resolve("hwmon0"), "temp1_input", "45500");
+
+        Sensor temp1 = sensor("/hwmon/coretemp/hwmon0/temp1");
+        Assert.assertTrue(hwManager.updateSensors(Arrays.asList(temp1), 1).isEmpty());
+        Assert.assertEquals(45, temp1.getValue(), 1e-9);
+    }
+
+    @Test
+    public void testUnreadableAttributeIsNaN() throws IOException {
+        writeAttribute(hwmonDir.resolve("hwmon0"), "temp1_input", "");
+
+        hwManager.updateHardwareTree();
+        Assert.assertTrue(Double.isNaN(sensor("/hwmon/coretemp/hwmon0/temp1").getValue()));
+    }
+
+    @Test
+    public void testControllingWritesPwmAndManualMode() throws IOException {
+        FanController fan = hwManager.getAllFanControllers().get(0);
+        Path board = hwmonDir.resolve("hwmon10");
+
+        Assert.assertTrue(fan.setControlledValue(40));
+        Assert.assertEquals("102\n", readAttribute(board, "pwm1").substring(0, 4));
+        Assert.assertEquals("1\n", readAttribute(board, "pwm1_enable"));
+
+        hwManager.updateHardwareTree();
+        Assert.assertEquals(40, fan.getMeasuredValue(), 0.5);
+
+        Assert.assertTrue(fan.setControlledValue(Double.NaN));
+        Assert.assertEquals("2\n", readAttribute(board, "pwm1_enable"));
+        Assert.assertFalse(fan.setControlledValue(Double.NaN));
+    }
+
+    @Test
+    public void testFailedPwmWriteRestoresMode() throws IOException {
+        FanController fan = hwManager.getAllFanControllers().get(0);
+        Path board = hwmonDir.resolve("hwmon10");
+        ((HwmonSensor) fan.getSensor()).getAttribute().close();
+
+        Assert.assertFalse(fan.setControlledValue(40));
+        Assert.assertTrue(Double.isNaN(fan.getControlledValue()));
+        Assert.assertEquals("2\n", readAttribute(board, "pwm1_enable"));
+    }
+
+    @Test
+    public void testRescanFindsNewDevice() throws IOException {
+        AtomicInteger structureChanges = new AtomicInteger();
+        hwManager.addStructureListener(structureChanges::incrementAndGet);
+        HardwareIndex oldIndex = hwManager.getHardwareIndex();
+        Sensor temp1 = sensor("/hwmon/coretemp/hwmon0/temp1");
+
+        Assert.assertFalse(hwManager.rescan());
+        Assert.assertEquals(0, structureChanges.get());
+
+        Path gpu = Files.createDirectories(hwmonDir.resolve("hwmon3"));
+        writeAttribute(gpu, "name", "amdgpu");
+        writeAttribute(gpu, "temp1_input", "60000");
+        writeAttribute(gpu, "pwm1", "128");
+
+        Assert.assertTrue(hwManager.rescan());
+        Assert.assertEquals(1, structureChanges.get());
+        Assert.assertNotSame(oldIndex, hwManager.getHardwareIndex());
+        Assert.assertEquals(3, hwManager.getHardwareRoot().getSubHardware().size());
+        Assert.assertEquals(2, hwManager.getAllFanControllers().size());
+
+        /* The old devices keep their sensors. */
+        Assert.assertSame(temp1, sensor("/hwmon/coretemp/hwmon0/temp1"));
+
+        hwManager.updateHardwareTree();
+        Assert.assertEquals(60, sensor("/hwmon/amdgpu/hwmon3/temp1").getValue(), 1e-9);
+    }
+
+    @Test
+    public void testRescanDropsRemovedDevice() throws IOException {
+        Path cpu = hwmonDir.resolve("hwmon0");
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cpu)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(cpu);
+
+        Assert.assertTrue(hwManager.rescan());
+        Assert.assertEquals(1, hwManager.getHardwareRoot().getSubHardware().size());
+        Assert.assertFalse(hwManager.findSensorById("/hwmon/coretemp/hwmon0/temp1").isPresent());
+    }
+
+    @Test
+    public void testCloseReleasesFans() throws IOException {
+        hwManager.getAllFanControllers().get(0).setControlledValue(40);
+        hwManager.close();
+        Assert.assertEquals("2\n", readAttribute(hwmonDir.resolve("hwmon10"), "pwm1_enable"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.mockhardware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class MockFanControllerTest {
+
+    MockFanController fg;
+
+    @Before
+    public void setUp() {
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        fg = new MockFanController(sgp, "fg", 0, 100);
+    }
+
+    @Test
+    public void testNotControlledByDefault() {
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+    }
+
+    @Test
+    public void testSetControlledValue() {
+        Assert.assertTrue(fg.setControlledValue(40));
+        Assert.assertEquals(40, fg.getControlledValue(), 0);
+        Assert.assertEquals(40, fg.getControlledValue(), 0);
+    }
+
+    @Test
+    public void testSetSameControlledValueDoesNothing() {
+        fg.setControlledValue(40);
+        Assert.assertFalse(fg.setControlledValue(40));
+    }
+
+    @Test
+    public void testSetNaNReleasesControl() {
+        fg.setControlledValue(40);
+        Assert.assertTrue(fg.setControlledValue(Double.NaN));
+        Assert.assertTrue(Double.isNaN(fg.getControlledValue()));
+        Assert.assertFalse(fg.setControlledValue(Double.NaN));
+    }
+
+    @Test
+    public void testSettingPropertyChangesControlledValue() {
+        fg.setControlledValue(30);
+        Assert.assertEquals(30, fg.getControlledValue(), 0);
+    }
+}
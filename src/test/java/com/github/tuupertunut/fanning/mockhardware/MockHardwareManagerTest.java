@@ -24,7 +24,7 @@
 package com.github.tuupertunut.fanning.mockhardware;
 
 import java.util.Arrays;
-import java.util.OptionalDouble;
+import java.util.Collections;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -55,18 +55,44 @@ public class MockHardwareManagerTest {
 
     @Test
     public void testUpdateHardwareTree() {
-        sct1.value.set(-Double.MAX_VALUE);
+        sct1.setValue(-Double.MAX_VALUE);
         hwManager.updateHardwareTree();
-        Assert.assertNotEquals(-Double.MAX_VALUE, sct1.value.get(), 0);
+        Assert.assertNotEquals(-Double.MAX_VALUE, sct1.getValue(), 0);
     }
 
     @Test
     public void testControllingChangesSensorValue() {
-        fg.controlledValueProperty().set(OptionalDouble.of(-Double.MAX_VALUE));
+        fg.setControlledValue(-Double.MAX_VALUE);
         hwManager.updateHardwareTree();
-        Assert.assertEquals(-Double.MAX_VALUE, fg.getSensor().valueProperty().get(), 0);
-        fg.controlledValueProperty().set(OptionalDouble.empty());
+        Assert.assertEquals(-Double.MAX_VALUE, fg.getSensor().getValue(), 0);
+        fg.setControlledValue(Double.NaN);
         hwManager.updateHardwareTree();
-        Assert.assertNotEquals(-Double.MAX_VALUE, fg.getSensor().valueProperty().get(), 0);
+        Assert.assertNotEquals(-Double.MAX_VALUE, fg.getSensor().getValue(), 0);
+    }
+
+    @Test
+    public void testHardwareIndexIsCached() {
+        Assert.assertSame(hwManager.getHardwareIndex(), hwManager.getHardwareIndex());
+        Assert.assertSame(hwManager.getAllSensors(), hwManager.getAllSensors());
+    }
+
+    @Test
+    public void testUpdateSensorsUpdatesOnlyGivenSensors() {
+        sct1.setValue(-Double.MAX_VALUE);
+        hwManager.updateSensors(Arrays.asList(fg.getSensor()), 0);
+        Assert.assertEquals(-Double.MAX_VALUE, sct1.getValue(), 0);
+    }
+
+    @Test
+    public void testUpdateSensorsReportsChangedSensors() {
+        sct1.setValue(-Double.MAX_VALUE);
+        Assert.assertEquals(Collections.singleton(sct1), hwManager.updateSensors(Arrays.asList(sct1), 0));
+    }
+
+    @Test
+    public void testUpdateSensorsIgnoresChangesWithinDeadband() {
+        sct1.setValue(40);
+        Assert.assertTrue(hwManager.updateSensors(Arrays.asList(sct1), 100).isEmpty());
+        Assert.assertEquals(40, sct1.getValue(), 0);
     }
 }
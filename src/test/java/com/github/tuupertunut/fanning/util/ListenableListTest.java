@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class ListenableListTest {
+
+    ListenableList<String> list;
+    List<String> changes;
+    ListListener<String> listener;
+
+    @Before
+    public void setUp() {
+        list = new ListenableList<>(Arrays.asList("a", "b", "c"));
+        changes = new ArrayList<>();
+        listener = (int from, List<? extends String> removed, List<? extends String> added) -> {
+            changes.add(from + " " + removed + " " + added);
+        };
+        list.addListener(listener);
+    }
+
+    @Test
+    public void testAddFiresChange() {
+        list.add("d");
+        list.add(0, "e");
+        Assert.assertEquals(Arrays.asList("e", "a", "b", "c", "d"), list);
+        Assert.assertEquals(Arrays.asList("3 [] [d]", "0 [] [e]"), changes);
+    }
+
+    @Test
+    public void testRemoveFiresChange() {
+        list.remove("b");
+        Assert.assertEquals(Arrays.asList("a", "c"), list);
+        Assert.assertEquals(Arrays.asList("1 [b] []"), changes);
+    }
+
+    @Test
+    public void testSetFiresReplace() {
+        list.set(2, "d");
+        Assert.assertEquals(Arrays.asList("2 [c] [d]"), changes);
+    }
+
+    @Test
+    public void testBulkChangesFireOnce() {
+        list.addAll(Arrays.asList("d", "e"));
+        list.subList(0, 2).clear();
+        list.setAll(Arrays.asList("f"));
+        list.clear();
+        Assert.assertTrue(list.isEmpty());
+        Assert.assertEquals(Arrays.asList("3 [] [d, e]", "0 [a, b] []", "0 [c, d, e] [f]", "0 [f] []"), changes);
+    }
+
+    @Test
+    public void testEmptyChangesAreNotFired() {
+        list.addAll(Arrays.asList());
+        list.subList(1, 1).clear();
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testRemovedListenerIsNotNotified() {
+        list.removeListener(listener);
+        list.add("d");
+        Assert.assertTrue(changes.isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 Tuupertunut.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.tuupertunut.fanning.core;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.tuupertunut.fanning.jfr.FlightRecorderEvents;
+import com.github.tuupertunut.fanning.mockhardware.MockFanController;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareItem;
+import com.github.tuupertunut.fanning.mockhardware.MockHardwareManager;
+import com.github.tuupertunut.fanning.mockhardware.MockSensor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tuupertunut
+ */
+public class FanningServiceFlightRecorderTest {
+
+    MockFanController fg;
+    FanningService fanningService;
+
+    @Before
+    public void setUp() {
+        MockSensor sct1 = new MockSensor("fake cpu core1 temp", "sct1", "Temperature", "°C");
+        MockSensor sgp = new MockSensor("fake gpu fan percent", "sgp", "Control", "%");
+        fg = new MockFanController(sgp, "fg", 0, 100);
+        MockHardwareItem root = new MockHardwareItem(Arrays.asList(), Arrays.asList(sct1, sgp), Arrays.asList(fg), "computer", "c");
+
+        fanningService = new FanningService(new MockHardwareManager(root), new Storage() {
+            @Override
+            public List<FanCurve> load() {
+                return Arrays.asList(new FanCurve(sct1, fg, Arrays.asList(new Mapping(5.0, 6.5))));
+            }
+
+            @Override
+            public void store(List<FanCurve> fanCurves) {
+            }
+        });
+    }
+
+    @Test
+    public void testUpdateEmitsFlightRecorderEvents() throws IOException, JsonException {
+        Assume.assumeTrue(FlightRecorderEvents.AVAILABLE);
+        fanningService.loadFromStorage();
+
+        Path dump = Files.createTempFile("fanning", ".jfr");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.github.tuupertunut.fanning.Tick");
+            recording.enable("com.github.tuupertunut.fanning.CurveEvaluation");
+            recording.enable("com.github.tuupertunut.fanning.FanActuation");
+            recording.start();
+            fanningService.update();
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        } finally {
+            Files.delete(dump);
+        }
+
+        RecordedEvent tick = events.stream().filter((RecordedEvent event) -> event.getEventType().getName().endsWith(".Tick")).findFirst().get();
+        Assert.assertEquals("poll", tick.getString("trigger"));
+        RecordedEvent evaluation = events.stream().filter((RecordedEvent event) -> event.getEventType().getName().endsWith(".CurveEvaluation")).findFirst().get();
+        Assert.assertEquals("sct1", evaluation.getString("sensorId"));
+        Assert.assertEquals("fg", evaluation.getString("fanId"));
+        RecordedEvent actuation = events.stream().filter((RecordedEvent event) -> event.getEventType().getName().endsWith(".FanActuation")).findFirst().get();
+        Assert.assertEquals("fg", actuation.getString("fanId"));
+        Assert.assertEquals(fg.getControlledValue(), actuation.getDouble("value"), 0);
+    }
+}